@@ -70,6 +70,10 @@ public final class R {
     }
     public static final class string {
         public static final int app_name=0x7f040000;
+        public static final int brush_airbrush=0x7f04003b;
+        public static final int brush_chalk=0x7f04003c;
+        public static final int brush_marker=0x7f04003d;
+        public static final int brush_pen=0x7f04003a;
         public static final int button_add_drawing=0x7f040011;
         public static final int button_add_picture=0x7f04000f;
         public static final int button_add_video=0x7f040012;
@@ -97,14 +101,23 @@ public final class R {
         public static final int label_green=0x7f040025;
         public static final int label_red=0x7f040024;
         public static final int menuitem_add_image=0x7f04002b;
+        public static final int menuitem_brush=0x7f040039;
         public static final int menuitem_clear=0x7f040027;
         public static final int menuitem_color=0x7f040007;
         public static final int menuitem_erase=0x7f040028;
+        public static final int menuitem_fill=0x7f04003e;
+        public static final int menuitem_save_large_image=0x7f04003f;
+        public static final int menuitem_lasso=0x7f040035;
         public static final int menuitem_line_width=0x7f040029;
         public static final int menuitem_negative=0x7f040009;
         public static final int menuitem_new_slideshow=0x7f040006;
+        public static final int menuitem_pressure_width=0x7f040038;
+        public static final int menuitem_redo=0x7f040034;
+        public static final int menuitem_render_thread=0x7f040037;
         public static final int menuitem_save_image=0x7f04002a;
         public static final int menuitem_sepia=0x7f040008;
+        public static final int menuitem_show_photo=0x7f040036;
+        public static final int menuitem_undo=0x7f040033;
         public static final int message_added=0x7f040019;
         public static final int message_erase=0x7f04002c;
         public static final int message_error_reading=0x7f04001b;
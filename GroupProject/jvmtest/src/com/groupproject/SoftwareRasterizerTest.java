@@ -0,0 +1,187 @@
+// SoftwareRasterizerTest.java
+// Checks SoftwareRasterizer's output pixel by pixel: a few pixels whose
+// values follow from the geometry are checked directly, and every image
+// is compared with the expected image stored in data/rasterizer. Run with
+// -Dgolden.update=true to rewrite the stored images after an intended
+// change to the output.
+package com.groupproject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class SoftwareRasterizerTest {
+	private static final int SIZE = 64; // width and height of each image
+	private static final int WHITE = 0xFFFFFFFF;
+	private static final int BLACK = 0xFF000000;
+	private static final int BLUE = 0xFF0000FF;
+
+	// a lone point is a round dot as wide as the stroke
+	@Test
+	public void dotIsRound() throws IOException {
+		SoftwareRasterizer rasterizer = render(1, stroke(20, BLACK, 32, 32));
+
+		assertEquals(BLACK, pixel(rasterizer, 32 + 8, 32));
+		assertEquals(BLACK, pixel(rasterizer, 32, 32 - 9));
+		assertEquals(WHITE, pixel(rasterizer, 32 + 11, 32));
+		assertEquals(WHITE, pixel(rasterizer, 32 + 8, 32 + 8)); // no corner
+		assertMatchesExpected("dot", rasterizer);
+	} // end method dotIsRound
+
+	// a line reaches half its width past its ends, rounded off
+	@Test
+	public void lineHasRoundCaps() throws IOException {
+		SoftwareRasterizer rasterizer = render(1, line(12, BLACK, 10, 32,
+				54, 32));
+
+		assertEquals(BLACK, pixel(rasterizer, 54 + 4, 32));
+		assertEquals(BLACK, pixel(rasterizer, 10 - 5, 32));
+		assertEquals(WHITE, pixel(rasterizer, 54 + 7, 32));
+		assertEquals(WHITE, pixel(rasterizer, 54 + 5, 32 + 5)); // no corner
+		assertEquals(BLACK, pixel(rasterizer, 32, 32 + 5)); // full width
+		assertMatchesExpected("caps", rasterizer);
+	} // end method lineHasRoundCaps
+
+	// a pixel whose center is half a pixel outside the line's edge is
+	// half covered, and blends halfway to the line's color
+	@Test
+	public void edgesAreAntiAliased() throws IOException {
+		// 3 pixels wide around y = 32: rows 31 and 32 are fully inside,
+		// rows 30 and 33 half covered
+		SoftwareRasterizer rasterizer = render(1, line(3, BLACK, 8, 32, 56,
+				32));
+
+		assertEquals(WHITE, pixel(rasterizer, 32, 29));
+		assertEquals(0xFF808080, pixel(rasterizer, 32, 30));
+		assertEquals(BLACK, pixel(rasterizer, 32, 31));
+		assertEquals(BLACK, pixel(rasterizer, 32, 32));
+		assertEquals(0xFF808080, pixel(rasterizer, 32, 33));
+		assertEquals(WHITE, pixel(rasterizer, 32, 34));
+
+		// a thin diagonal line has partly covered pixels along its sides
+		rasterizer = render(1, line(1.5f, BLACK, 8, 8, 56, 40));
+		int partial = 0;
+
+		for (int color : rasterizer.getPixels())
+			if (color != WHITE && color != BLACK)
+				++partial;
+
+		assertTrue("too few blended pixels: " + partial, partial > 48);
+		assertMatchesExpected("antialiased", rasterizer);
+	} // end method edgesAreAntiAliased
+
+	// the curve passes through the midpoints between samples, using each
+	// sample as a control point, so it cuts the corner a sample makes
+	@Test
+	public void curveIsSmoothedThroughMidpoints() throws IOException {
+		// from (10, 56) the curve runs straight to the midpoint (21, 33),
+		// then bends through (32, 21.5) to the midpoint (43, 33)
+		SoftwareRasterizer rasterizer = render(1, stroke(4, BLUE, 10, 56,
+				32, 10, 54, 56));
+
+		assertEquals(BLUE, pixel(rasterizer, 32, 21));
+		assertEquals(BLUE, pixel(rasterizer, 15, 45));
+		assertEquals(WHITE, pixel(rasterizer, 32, 14)); // sample not reached
+		assertEquals(WHITE, pixel(rasterizer, 50, 47)); // last half not drawn
+		assertMatchesExpected("curve", rasterizer);
+	} // end method curveIsSmoothedThroughMidpoints
+
+	// a stroke with a width at each point widens between them
+	@Test
+	public void variedWidthTapers() throws IOException {
+		float[] xy = { 8, 32, 32, 32, 56, 32, 56, 32 };
+		float[] widths = { 2, 12, 24, 24 };
+		SoftwareRasterizer rasterizer = render(1, new StrokeRecord(xy,
+				widths, 4, BLACK));
+
+		assertEquals(WHITE, pixel(rasterizer, 12, 32 + 3));
+		assertEquals(BLACK, pixel(rasterizer, 40, 32 + 3));
+		assertMatchesExpected("tapered", rasterizer);
+	} // end method variedWidthTapers
+
+	// rendering at scale 2 makes strokes and fills twice as large
+	@Test
+	public void scaleEnlargesStrokesAndFills() throws IOException {
+		int[] spans = { 20, 4, 12, 21, 4, 12, 22, 6, 10 };
+		StrokeRecord fill = new StrokeRecord(4, 20, BLUE, spans, 3);
+		SoftwareRasterizer rasterizer = render(2, fill, line(4, BLACK, 4, 4,
+				28, 4));
+
+		assertEquals(BLUE, pixel(rasterizer, 8, 40));
+		assertEquals(BLUE, pixel(rasterizer, 23, 43));
+		assertEquals(WHITE, pixel(rasterizer, 24, 40));
+		assertEquals(BLUE, pixel(rasterizer, 12, 45));
+		assertEquals(WHITE, pixel(rasterizer, 11, 45));
+		assertEquals(WHITE, pixel(rasterizer, 12, 46));
+		assertEquals(BLACK, pixel(rasterizer, 32, 8 + 3));
+		assertMatchesExpected("scaled", rasterizer);
+	} // end method scaleEnlargesStrokesAndFills
+
+	// return a round-capped stroke through the x, y pairs in xy; like
+	// DoodleView's, its curve stops at the midpoint of the last two
+	private static StrokeRecord stroke(float width, int color, float... xy) {
+		return new StrokeRecord(xy, xy.length / 2, color, width,
+				StrokeRecord.CAP_ROUND);
+	} // end method stroke
+
+	// return a straight stroke from (x0, y0) all the way to (x1, y1), which
+	// needs the last sample twice
+	private static StrokeRecord line(float width, int color, float x0,
+			float y0, float x1, float y1) {
+		return stroke(width, color, x0, y0, x1, y1, x1, y1);
+	} // end method line
+
+	// render strokes over white at scale
+	private static SoftwareRasterizer render(float scale,
+			StrokeRecord... strokes) {
+		SoftwareRasterizer rasterizer = new SoftwareRasterizer(SIZE, SIZE);
+		rasterizer.setScale(scale);
+		rasterizer.fill(WHITE);
+
+		for (StrokeRecord stroke : strokes)
+			rasterizer.render(stroke);
+
+		return rasterizer;
+	} // end method render
+
+	// return the pixel at (x, y)
+	private static int pixel(SoftwareRasterizer rasterizer, int x, int y) {
+		return rasterizer.getPixels()[y * rasterizer.getWidth() + x];
+	} // end method pixel
+
+	// fail unless rasterizer's pixels are exactly those stored as name, or
+	// store them if the expected images are being updated
+	private static void assertMatchesExpected(String name,
+			SoftwareRasterizer rasterizer) throws IOException {
+		int width = rasterizer.getWidth();
+		int height = rasterizer.getHeight();
+		File file = new File(System.getProperty("data.dir", "data"),
+				"rasterizer/" + name + ".png");
+
+		if (Boolean.getBoolean("golden.update")) {
+			BufferedImage image = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_ARGB);
+			image.setRGB(0, 0, width, height, rasterizer.getPixels(), 0,
+					width);
+			ImageIO.write(image, "png", file);
+			return;
+		} // end if
+
+		BufferedImage image = ImageIO.read(file);
+		assertTrue("missing expected image " + file, image != null);
+		assertEquals(width, image.getWidth());
+		assertEquals(height, image.getHeight());
+		int[] expected = image.getRGB(0, 0, width, height, null, 0, width);
+		SoftwareRasterizer.Comparison comparison = SoftwareRasterizer
+				.compare(expected, rasterizer.getPixels(), 0);
+		assertEquals(name + " differs from " + file + ": " + comparison, 0,
+				comparison.differingPixels);
+	} // end method assertMatchesExpected
+} // end class SoftwareRasterizerTest
@@ -0,0 +1,239 @@
+// StrokeDocumentTest.java
+// Checks that every kind of stroke StrokeDocumentWriter writes is read
+// back unchanged by StrokeDocumentReader, that documents written by
+// earlier versions still read, and that damaged documents are rejected.
+package com.groupproject;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StrokeDocumentTest {
+	private static final String URI = "content://media/external/images/media/7";
+
+	// pen, varied-width, stamped and fill strokes come back as written
+	@Test
+	public void roundTripsEveryKindOfStroke() throws IOException {
+		List<StrokeRecord> strokes = drawing(new Random(7), 200);
+		StrokeDocumentReader reader = new StrokeDocumentReader(
+				new ByteArrayInputStream(write(strokes, URI)));
+
+		assertEquals(320, reader.getWidth());
+		assertEquals(480, reader.getHeight());
+		assertEquals(URI, reader.getOverlayUri());
+
+		for (int i = 0; i < strokes.size(); i++)
+			assertSameStroke("stroke " + i, strokes.get(i), reader.read());
+
+		assertNull(reader.read());
+		assertNull(reader.read()); // stays at the end
+	} // end method roundTripsEveryKindOfStroke
+
+	// a document with no photo and no strokes is read as such
+	@Test
+	public void roundTripsEmptyDocument() throws IOException {
+		StrokeDocumentReader reader = new StrokeDocumentReader(
+				new ByteArrayInputStream(write(new ArrayList<StrokeRecord>(),
+						null)));
+
+		assertNull(reader.getOverlayUri());
+		assertNull(reader.read());
+	} // end method roundTripsEmptyDocument
+
+	// a version 1 document, written before varied widths, stamps and fills
+	// existed, still reads
+	@Test
+	public void readsVersion1Document() throws IOException {
+		File file = new File(System.getProperty("data.dir", "data"),
+				"documents/version1.doodle");
+		StrokeDocumentReader reader = new StrokeDocumentReader(
+				new FileInputStream(file));
+
+		try {
+			assertEquals(320, reader.getWidth());
+			assertEquals(480, reader.getHeight());
+			assertEquals(URI, reader.getOverlayUri());
+			assertSameStroke("first", stroke(0xFFFF0000, 5,
+					StrokeRecord.CAP_ROUND, 10, 20, 12.25f, 21.5f, 15, 25),
+					reader.read());
+			assertSameStroke("second", stroke(0x800000FF, 12.5f,
+					StrokeRecord.CAP_BUTT, 100, 50), reader.read());
+			assertSameStroke("third", stroke(0xFFFF0000, 5,
+					StrokeRecord.CAP_SQUARE, 0, 0, -3.75f, 2), reader.read());
+			assertNull(reader.read());
+		} // end try
+		finally {
+			reader.close();
+		} // end finally
+	} // end method readsVersion1Document
+
+	// newer versions, cut-off documents and out-of-range fields fail with
+	// an IOException rather than anything else
+	@Test
+	public void rejectsDamagedDocuments() throws IOException {
+		List<StrokeRecord> strokes = drawing(new Random(11), 20);
+		byte[] document = write(strokes, URI);
+
+		byte[] newer = document.clone();
+		newer[4] = StrokeDocumentWriter.VERSION + 1;
+		assertRejected("newer version", newer);
+
+		byte[] notDoodle = document.clone();
+		notDoodle[0] = 'X';
+		assertRejected("bad magic", notDoodle);
+
+		for (int length = 1; length < document.length; length += 7)
+			assertRejected("cut at " + length, Arrays.copyOf(document,
+					length));
+
+		// a stroke whose color index was never defined
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StrokeDocumentWriter writer = new StrokeDocumentWriter(out, 10, 10,
+				null);
+		writer.finish();
+		byte[] header = out.toByteArray();
+		byte[] undefined = Arrays.copyOf(header, header.length + 5);
+		undefined[header.length - 1] = StrokeDocumentWriter.TAG_STROKE;
+		assertRejected("undefined color", undefined);
+	} // end method rejectsDamagedDocuments
+
+	// return strokes written as a 320 x 480 document over uri
+	private static byte[] write(List<StrokeRecord> strokes, String uri)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StrokeDocumentWriter writer = new StrokeDocumentWriter(out, 320, 480,
+				uri);
+
+		for (StrokeRecord stroke : strokes)
+			writer.write(stroke);
+
+		writer.close();
+		assertEquals(strokes.size(), writer.getStrokeCount());
+		return out.toByteArray();
+	} // end method write
+
+	// fail unless reading document, to its end, throws an IOException
+	private static void assertRejected(String what, byte[] document) {
+		try {
+			StrokeDocumentReader reader = new StrokeDocumentReader(
+					new ByteArrayInputStream(document));
+
+			while (reader.read() != null)
+				continue;
+		} // end try
+		catch (IOException e) {
+			return; // rejected
+		} // end catch
+
+		fail(what + " was read");
+	} // end method assertRejected
+
+	// return a constant-width stroke through the x, y pairs in xy
+	private static StrokeRecord stroke(int color, float width, int cap,
+			float... xy) {
+		return new StrokeRecord(xy, xy.length / 2, color, width, cap);
+	} // end method stroke
+
+	// return count strokes of every kind, with coordinates and widths on
+	// the document's 1/SCALE pixel grid so they are stored exactly; colors
+	// and widths repeat, as they do in drawings
+	private static List<StrokeRecord> drawing(Random random, int count) {
+		int[] colors = { 0xFF000000, 0xFFFF0000, 0x8000FF00, 0x00000000,
+				0xFFFFFFFF };
+		List<StrokeRecord> strokes = new ArrayList<StrokeRecord>();
+
+		for (int i = 0; i < count; i++) {
+			int color = colors[random.nextInt(colors.length)];
+			int points = 1 + random.nextInt(40);
+			float[] xy = new float[points * 2];
+			float[] widths = new float[points];
+
+			for (int p = 0; p < points; p++) {
+				xy[p * 2] = onGrid(random, -20, 340);
+				xy[p * 2 + 1] = onGrid(random, -20, 500);
+				widths[p] = onGrid(random, 0.25f, 60);
+			} // end for
+
+			switch (i % 4) {
+			case 0:
+				strokes.add(new StrokeRecord(xy, points, color, 1 + random
+						.nextInt(8), random.nextInt(3)));
+				break;
+			case 1:
+				strokes.add(new StrokeRecord(xy, widths, points, color));
+				break;
+			case 2:
+				strokes.add(new StrokeRecord(xy, points, color, widths[0],
+						StrokeRecord.CAP_ROUND, 1 + random
+								.nextInt(StampBrush.BRUSH_COUNT - 1)));
+				break;
+			default:
+				strokes.add(fill(random, color));
+			} // end switch
+		} // end for
+
+		return strokes;
+	} // end method drawing
+
+	// return a fill of runs in rows that go up and down, as a fill's do
+	private static StrokeRecord fill(Random random, int color) {
+		int runs = 1 + random.nextInt(50);
+		int[] spans = new int[runs * 3];
+		int y = random.nextInt(480);
+
+		for (int r = 0; r < runs; r++) {
+			y = Math.max(0, Math.min(479, y + random.nextInt(5) - 2));
+			int first = random.nextInt(300);
+			spans[r * 3] = y;
+			spans[r * 3 + 1] = first;
+			spans[r * 3 + 2] = first + 1 + random.nextInt(320 - first);
+		} // end for
+
+		return new StrokeRecord(spans[1], spans[0], color, spans, runs);
+	} // end method fill
+
+	// return a random multiple of 1/SCALE from low up to high
+	private static float onGrid(Random random, float low, float high) {
+		int steps = (int) ((high - low) * StrokeDocumentWriter.SCALE);
+		return low + (float) random.nextInt(steps + 1)
+				/ StrokeDocumentWriter.SCALE;
+	} // end method onGrid
+
+	// fail unless actual has every stored property of expected
+	private static void assertSameStroke(String what, StrokeRecord expected,
+			StrokeRecord actual) {
+		if (actual == null)
+			fail(what + " missing");
+
+		assertEquals(what, expected.getColor(), actual.getColor());
+		assertEquals(what, expected.isFill(), actual.isFill());
+		assertEquals(what, expected.hasWidths(), actual.hasWidths());
+		assertEquals(what, expected.getBrush(), actual.getBrush());
+		assertEquals(what, expected.getPointCount(), actual.getPointCount());
+		assertEquals(what, expected.getWidth(), actual.getWidth(), 0);
+
+		for (int i = 0; i < expected.getPointCount(); i++) {
+			assertEquals(what, expected.getX(i), actual.getX(i), 0);
+			assertEquals(what, expected.getY(i), actual.getY(i), 0);
+			assertEquals(what, expected.getWidth(i), actual.getWidth(i), 0);
+		} // end for
+
+		if (expected.isFill())
+			assertArrayEquals(what, expected.getSpans(), actual.getSpans());
+		else
+			assertEquals(what, expected.getCap(), actual.getCap());
+	} // end method assertSameStroke
+} // end class StrokeDocumentTest
@@ -0,0 +1,115 @@
+// TileRendererTest.java
+// Checks that TileRenderer's image, rendered tile by tile on any number
+// of threads and at any scale, is exactly what one SoftwareRasterizer
+// renders for the whole image.
+package com.groupproject;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TileRendererTest {
+	private static final int WIDTH = 300; // drawing size, not a tile multiple
+	private static final int HEIGHT = 200;
+	private static final int WHITE = 0xFFFFFFFF;
+	private static final int[] THREADS = { 1, 3, 8 };
+
+	@Test
+	public void matchesOneRasterizerAtScale1() throws InterruptedException {
+		assertMatches(1);
+	} // end method matchesOneRasterizerAtScale1
+
+	@Test
+	public void matchesOneRasterizerEnlarged() throws InterruptedException {
+		assertMatches(2);
+		assertMatches(1.5f);
+	} // end method matchesOneRasterizerEnlarged
+
+	@Test
+	public void matchesOneRasterizerReduced() throws InterruptedException {
+		assertMatches(0.5f);
+	} // end method matchesOneRasterizerReduced
+
+	// fail unless every thread count renders the drawing at scale exactly
+	// as a single rasterizer does
+	private static void assertMatches(float scale)
+			throws InterruptedException {
+		List<StrokeRecord> strokes = drawing(new Random(42));
+		int width = Math.round(WIDTH * scale);
+		int height = Math.round(HEIGHT * scale);
+
+		SoftwareRasterizer rasterizer = new SoftwareRasterizer(width, height);
+		rasterizer.setScale(scale);
+		rasterizer.fill(WHITE);
+
+		for (StrokeRecord stroke : strokes)
+			rasterizer.render(stroke);
+
+		for (int threads : THREADS) {
+			TileRenderer renderer = new TileRenderer(strokes, width, height,
+					scale);
+			SoftwareRasterizer.Comparison comparison = SoftwareRasterizer
+					.compare(rasterizer.getPixels(), renderer.render(WHITE,
+							threads), 0);
+			assertEquals("scale " + scale + ", " + threads + " threads: "
+					+ comparison, 0, comparison.differingPixels);
+		} // end for
+	} // end method assertMatches
+
+	// return a drawing of pen strokes, varied-width strokes and fills, some
+	// reaching past the edges, in random colors with some translucent
+	private static List<StrokeRecord> drawing(Random random) {
+		List<StrokeRecord> strokes = new ArrayList<StrokeRecord>();
+
+		for (int i = 0; i < 60; i++) {
+			int color = random.nextInt() | (i % 3 == 0 ? 0x80000000
+					: 0xFF000000);
+
+			if (i % 10 == 9)
+				strokes.add(fill(random, color));
+			else {
+				int count = 1 + random.nextInt(12);
+				float[] xy = new float[count * 2];
+				float[] widths = new float[count];
+				float x = random.nextInt(WIDTH);
+				float y = random.nextInt(HEIGHT);
+
+				for (int p = 0; p < count; p++) {
+					xy[p * 2] = x;
+					xy[p * 2 + 1] = y;
+					widths[p] = 1 + random.nextFloat() * 20;
+					x += random.nextFloat() * 80 - 40;
+					y += random.nextFloat() * 80 - 40;
+				} // end for
+
+				if (i % 2 == 0)
+					strokes.add(new StrokeRecord(xy, widths, count, color));
+				else
+					strokes.add(new StrokeRecord(xy, count, color,
+							widths[0], StrokeRecord.CAP_ROUND));
+			} // end else
+		} // end for
+
+		return strokes;
+	} // end method drawing
+
+	// return a fill of a few rows of random runs
+	private static StrokeRecord fill(Random random, int color) {
+		int rows = 1 + random.nextInt(60);
+		int top = random.nextInt(HEIGHT - rows);
+		int[] spans = new int[rows * 3];
+
+		for (int r = 0; r < rows; r++) {
+			int first = random.nextInt(WIDTH - 1);
+			spans[r * 3] = top + r;
+			spans[r * 3 + 1] = first;
+			spans[r * 3 + 2] = first + 1 + random.nextInt(WIDTH - first);
+		} // end for
+
+		return new StrokeRecord(spans[1], top, color, spans, rows);
+	} // end method fill
+} // end class TileRendererTest
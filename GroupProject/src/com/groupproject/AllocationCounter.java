@@ -0,0 +1,64 @@
+// AllocationCounter.java
+// Counts the objects allocated while touch events are handled, from the
+// VM's own per-thread allocation counts, so every allocation on the touch
+// path shows up whatever class makes it. The work for one event may be
+// measured in several sections, on more than one thread.
+package com.groupproject;
+
+import android.os.Debug;
+
+public class AllocationCounter {
+	private final String name; // shown in reports
+	private long allocations; // objects allocated in measured sections
+	private int events; // touch events handled
+	private int allocatingSections; // sections that allocated anything
+	private int maxSection; // most objects allocated in one section
+
+	// AllocationCounter constructor; starts the VM's allocation counting,
+	// which stays on for the life of the process
+	public AllocationCounter(String name) {
+		this.name = name;
+		Debug.startAllocCounting();
+	} // end AllocationCounter constructor
+
+	// start measuring a section on the calling thread and return the
+	// value to pass to end
+	public int begin() {
+		return Debug.getThreadAllocCount();
+	} // end method begin
+
+	// finish a section begun on the calling thread; never allocates
+	public synchronized void end(int start) {
+		int count = Debug.getThreadAllocCount() - start;
+		allocations += count;
+
+		if (count > 0)
+			++allocatingSections;
+
+		if (count > maxSection)
+			maxSection = count;
+	} // end method end
+
+	// count one touch event handled
+	public synchronized void countEvent() {
+		++events;
+	} // end method countEvent
+
+	// forget everything counted so far
+	public synchronized void reset() {
+		allocations = 0;
+		events = 0;
+		allocatingSections = 0;
+		maxSection = 0;
+	} // end method reset
+
+	// return the allocations per event and how they were spread
+	@Override
+	public synchronized String toString() {
+		float perEvent = events == 0 ? 0 : (float) allocations / events;
+		return name + ": " + allocations + " objects in " + events
+				+ " events, " + perEvent + " per event, "
+				+ allocatingSections + " sections allocated, at most "
+				+ maxSection;
+	} // end method toString
+} // end class AllocationCounter
@@ -0,0 +1,542 @@
+// AutosaveJournal.java
+// Keeps the drawing on disk as it is drawn, so it survives the app being
+// killed, crashing or being left. Each new stroke is appended to a log,
+// and now and then the whole drawing is written out as a stroke document
+// (a snapshot) and the log started again. Reopening reads the snapshot and
+// then the strokes logged after it.
+//
+// Each photo drawn on has a directory of its own, named from a hash of
+// its URI (a blank page's is "none"), so drawings left on different photos
+// are all kept. Files in a journal's directory, n being the generation:
+//   snapshot-n.doodle  stroke document of every stroke before the log
+//   log-n              records: payload length (4 bytes), CRC32 of the
+//                      payload (4 bytes), then the payload, a stroke
+//                      document holding one stroke
+// A new snapshot is written to a temporary file and renamed into place,
+// so the newest complete snapshot and its log are always the drawing;
+// older generations are deleted once a newer one exists. A log is only
+// started after its snapshot, which records the photo drawn on. Clearing
+// the drawing or discarding it once saved as an image writes an empty
+// generation.
+package com.groupproject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+public class AutosaveJournal {
+	private static final String TAG = "AutosaveJournal"; // error logging tag
+
+	// logged strokes are forced to the storage device at most this long
+	// after they are written; until then they survive the app dying but
+	// not the device losing power
+	private static final long FORCE_DELAY_MS = 1000;
+
+	// strokes logged before the drawing is written as a new snapshot
+	private static final int COMPACT_RECORDS = 256;
+
+	// largest log record read back; anything longer is a torn write
+	private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".doodle";
+	private static final String LOG_PREFIX = "log-";
+	private static final String TEMPORARY_FILE = "snapshot.tmp";
+	private static final String BLANK_DIRECTORY = "none"; // no photo
+
+	// receives a recovered drawing on the UI thread
+	public interface Callback {
+		// strokes are oldest first, empty if nothing was saved; width and
+		// height are the size of the area they were drawn on
+		void onRecovered(List<StrokeRecord> strokes, int width, int height);
+	} // end interface Callback
+
+	// a single worker does every journal's file work in order, so a journal
+	// closing and the next one opening never touch the files at once
+	private static final ScheduledExecutorService executor = Executors
+			.newSingleThreadScheduledExecutor();
+
+	private final File directory; // holds the snapshot and log
+	private final String overlayUri; // photo drawn on, or null
+	private final Handler handler; // delivers results on the UI thread
+
+	// changes waiting to be written: a StrokeRecord to append, or a
+	// List<StrokeRecord> that replaces the whole drawing
+	private final ConcurrentLinkedQueue<Object> changes;
+	private final AtomicBoolean writePosted; // true while write is queued
+	private volatile int width; // size of the drawing area
+	private volatile int height;
+
+	// used only by the worker
+	private List<StrokeRecord> strokes; // the drawing as saved
+	private int generation; // number of the current snapshot and log
+	private FileChannel log; // current log, open for appending
+	private int loggedRecords; // records in the current log
+	private boolean forcePosted; // true while a force is scheduled
+	private ByteArrayOutputStream payload; // one stroke's document
+	private ByteBuffer buffer = ByteBuffer.allocate(8192); // records to write
+	private CRC32 crc = new CRC32(); // checks records
+
+	// AutosaveJournal constructor; overlayUri is the photo drawn on, or
+	// null. The journal keeps its files in a directory of root's kept for
+	// that photo
+	public AutosaveJournal(File root, String overlayUri) {
+		this.overlayUri = overlayUri == null ? "" : overlayUri;
+		directory = new File(root, overlayUri == null ? BLANK_DIRECTORY
+				: hash(overlayUri));
+		handler = new Handler(Looper.getMainLooper());
+		changes = new ConcurrentLinkedQueue<Object>();
+		writePosted = new AtomicBoolean();
+		strokes = new ArrayList<StrokeRecord>();
+		payload = new ByteArrayOutputStream();
+	} // end AutosaveJournal constructor
+
+	// read the saved drawing in the background and pass it to callback;
+	// call before anything is appended
+	public void recover(final Callback callback) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				final int[] size = { width, height };
+				long start = System.nanoTime();
+
+				try {
+					read(size);
+				} // end try
+				catch (IOException e) {
+					Log.e(TAG, "could not read the saved drawing", e);
+					startAfresh(size); // rather than not at all
+				} // end catch
+				catch (RuntimeException e) {
+					// a reader bug or a file it could not make sense of
+					Log.e(TAG, "could not read the saved drawing", e);
+					startAfresh(size);
+				} // end catch
+
+				Log.i(TAG, "recovered " + strokes.size() + " strokes, "
+						+ loggedRecords + " from the log, in "
+						+ (System.nanoTime() - start) / 1000000 + " ms");
+
+				final List<StrokeRecord> recovered =
+						new ArrayList<StrokeRecord>(strokes);
+
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						callback.onRecovered(recovered, size[0], size[1]);
+					} // end method run
+				}); // end call to post
+			} // end method run
+		}); // end call to execute
+	} // end method recover
+
+	// forget the strokes read by a failed recovery, so the next change
+	// writes the drawing as a new generation; size receives the area's
+	// current size
+	private void startAfresh(int[] size) {
+		strokes.clear();
+		loggedRecords = 0;
+		size[0] = width;
+		size[1] = height;
+
+		try {
+			if (log != null)
+				log.close();
+		} // end try
+		catch (IOException e) {
+			Log.e(TAG, "could not close the log", e);
+		} // end catch
+
+		log = null;
+	} // end method startAfresh
+
+	// set the size of the drawing area written to snapshots
+	public void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+	} // end method setSize
+
+	// save a stroke just added to the drawing; returns at once, on any
+	// thread, without waiting for the disk
+	public void append(StrokeRecord stroke) {
+		changes.offer(stroke);
+		postWrite();
+	} // end method append
+
+	// save a drawing that changed other than by adding a stroke (undo,
+	// erase, clear); strokes is the whole drawing, and must not change
+	public void replace(List<StrokeRecord> strokes) {
+		changes.offer(strokes);
+		postWrite();
+	} // end method replace
+
+	// save an empty drawing in place of the one kept, e.g. once it has been
+	// saved as an image, so it is not brought back next time
+	public void discard() {
+		replace(new ArrayList<StrokeRecord>());
+	} // end method discard
+
+	// force what has been written to the storage device soon, e.g. when the
+	// app is going into the background
+	public void sync() {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				force();
+			} // end method run
+		}); // end call to execute
+	} // end method sync
+
+	// write any changes still waiting, force them to the device and close
+	// the log; the journal must not be used afterwards
+	public void close() {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				write.run();
+				force();
+
+				try {
+					if (log != null)
+						log.close();
+				} // end try
+				catch (IOException e) {
+					Log.e(TAG, "could not close the log", e);
+				} // end catch
+
+				log = null;
+			} // end method run
+		}); // end call to execute
+	} // end method close
+
+	// queue write unless it is already queued
+	private void postWrite() {
+		if (writePosted.compareAndSet(false, true))
+			executor.execute(write);
+	} // end method postWrite
+
+	// write the changes waiting in the queue
+	private Runnable write = new Runnable() {
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			writePosted.set(false); // later changes need another write
+			List<StrokeRecord> replacement = null;
+			int first = strokes.size(); // first stroke not yet logged
+			Object change;
+
+			while ((change = changes.poll()) != null) {
+				if (change instanceof StrokeRecord)
+					strokes.add((StrokeRecord) change);
+				else {
+					// the list holds every earlier stroke; later ones follow
+					@SuppressWarnings("unchecked")
+					List<StrokeRecord> list = (List<StrokeRecord>) change;
+					replacement = list;
+					strokes = new ArrayList<StrokeRecord>(list);
+				} // end else
+			} // end while
+
+			if (replacement == null && first == strokes.size())
+				return; // nothing changed
+
+			int logged = loggedRecords + strokes.size() - first;
+
+			try {
+				if (replacement != null || log == null
+						|| logged >= COMPACT_RECORDS)
+					compact();
+				else
+					appendRecords(first);
+			} // end try
+			catch (IOException e) {
+				Log.e(TAG, "could not save the drawing", e);
+			} // end catch
+		} // end method run
+	}; // end Runnable write
+
+	// add the strokes from first on to the end of the log
+	private void appendRecords(int first) throws IOException {
+		buffer.clear();
+
+		for (int i = first; i < strokes.size(); i++) {
+			// a stroke document of one stroke; the header costs a few bytes
+			payload.reset();
+			StrokeDocumentWriter writer = new StrokeDocumentWriter(payload,
+					0, 0, null);
+			writer.write(strokes.get(i));
+			writer.finish();
+			byte[] record = payload.toByteArray();
+			crc.reset();
+			crc.update(record);
+
+			if (buffer.remaining() < record.length + 8) {
+				writeBuffer(); // make room, keeping records in order
+				buffer.clear();
+
+				if (buffer.capacity() < record.length + 8)
+					buffer = ByteBuffer.allocate(record.length + 8);
+			} // end if
+
+			buffer.putInt(record.length);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(record);
+			++loggedRecords;
+		} // end for
+
+		writeBuffer();
+		scheduleForce();
+	} // end method appendRecords
+
+	// write buffer's records to the log in one go
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+			log.write(buffer);
+	} // end method writeBuffer
+
+	// force the log to the device after FORCE_DELAY_MS, unless that is
+	// already arranged
+	private void scheduleForce() {
+		if (forcePosted)
+			return;
+
+		forcePosted = true;
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				force();
+			} // end method run
+		}, FORCE_DELAY_MS, TimeUnit.MILLISECONDS); // end call to schedule
+	} // end method scheduleForce
+
+	// make sure everything written to the log is on the device
+	private void force() {
+		forcePosted = false;
+
+		try {
+			if (log != null)
+				log.force(false);
+		} // end try
+		catch (IOException e) {
+			Log.e(TAG, "could not force the log", e);
+		} // end catch
+	} // end method force
+
+	// write every stroke as the next generation's snapshot and start its
+	// empty log; the drawing is saved in full before the old files go
+	private void compact() throws IOException {
+		directory.mkdirs();
+		File temporary = new File(directory, TEMPORARY_FILE);
+		FileOutputStream out = new FileOutputStream(temporary);
+
+		try {
+			StrokeDocumentWriter writer = new StrokeDocumentWriter(out,
+					width, height, overlayUri);
+
+			for (StrokeRecord stroke : strokes)
+				writer.write(stroke);
+
+			writer.finish();
+			out.getFD().sync(); // on the device before it replaces anything
+		} // end try
+		finally {
+			out.close();
+		} // end finally
+
+		if (!temporary.renameTo(snapshotFile(generation + 1)))
+			throw new IOException("could not rename " + temporary);
+
+		// the new snapshot is the drawing now; the old files can go
+		if (log != null)
+			log.close();
+
+		snapshotFile(generation).delete();
+		logFile(generation).delete();
+		openLog(generation + 1);
+		loggedRecords = 0;
+	} // end method compact
+
+	// open generation's log for appending, creating it if necessary
+	private void openLog(int newGeneration) throws IOException {
+		directory.mkdirs();
+		generation = newGeneration;
+		log = new RandomAccessFile(logFile(generation), "rw").getChannel();
+		log.position(log.size());
+	} // end method openLog
+
+	// load strokes from the newest snapshot and its log, keeping the log
+	// open at the end of its last complete record; size receives the
+	// snapshot's width and height
+	private void read(int[] size) throws IOException {
+		strokes.clear();
+		loggedRecords = 0;
+		generation = 0;
+		File[] files = directory.listFiles();
+
+		if (files == null)
+			return; // nothing saved yet
+
+		// the newest complete snapshot is the drawing's starting point
+		for (File file : files) {
+			String name = file.getName();
+
+			if (name.startsWith(SNAPSHOT_PREFIX)
+					&& name.endsWith(SNAPSHOT_SUFFIX)) {
+				try {
+					generation = Math.max(generation, Integer.parseInt(name
+							.substring(SNAPSHOT_PREFIX.length(), name.length()
+									- SNAPSHOT_SUFFIX.length())));
+				} // end try
+				catch (NumberFormatException e) {
+					Log.d(TAG, "ignoring " + name);
+				} // end catch
+			} // end if
+		} // end for
+
+		// anything else was replaced by that generation or never finished
+		for (File file : files)
+			if (!file.equals(snapshotFile(generation))
+					&& !file.equals(logFile(generation)))
+				file.delete();
+
+		File snapshot = snapshotFile(generation);
+
+		if (!snapshot.exists())
+			return; // nothing saved yet
+
+		StrokeDocumentReader reader = new StrokeDocumentReader(
+				new FileInputStream(snapshot));
+
+		try {
+			String uri = reader.getOverlayUri();
+
+			if (!overlayUri.equals(uri == null ? "" : uri))
+				throw new IOException("saved for another photo: " + uri);
+
+			size[0] = reader.getWidth();
+			size[1] = reader.getHeight();
+			StrokeRecord stroke;
+
+			while ((stroke = reader.read()) != null)
+				strokes.add(stroke);
+		} // end try
+		finally {
+			reader.close();
+		} // end finally
+
+		long end = readLog(logFile(generation));
+		openLog(generation);
+		log.truncate(end); // drop a record torn by a crash
+		log.position(end);
+	} // end method read
+
+	// add the strokes of every complete record in file to strokes and
+	// return the length of the log up to the last of them
+	private long readLog(File file) throws IOException {
+		if (!file.exists())
+			return 0;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		long end = 0;
+
+		try {
+			while (true) {
+				int length = in.readInt();
+				int check = in.readInt();
+
+				if (length <= 0 || length > MAX_RECORD_BYTES)
+					break;
+
+				byte[] record = new byte[length];
+				in.readFully(record);
+				crc.reset();
+				crc.update(record);
+
+				if ((int) crc.getValue() != check)
+					break; // written only in part
+
+				readRecord(new ByteArrayInputStream(record));
+				end += 8 + length;
+				++loggedRecords;
+			} // end while
+		} // end try
+		catch (EOFException e) {
+			// the log ends here, possibly partway through a record
+		} // end catch
+		finally {
+			in.close();
+		} // end finally
+
+		return end;
+	} // end method readLog
+
+	// add the strokes of one log record's stroke document to strokes
+	private void readRecord(InputStream in) throws IOException {
+		StrokeDocumentReader reader = new StrokeDocumentReader(in);
+		StrokeRecord stroke;
+
+		while ((stroke = reader.read()) != null)
+			strokes.add(stroke);
+	} // end method readRecord
+
+	// return a name for the directory of the photo at uri, the same every
+	// time and safe as a file name
+	private static String hash(String uri) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					uri.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(digest.length * 2);
+
+			for (byte b : digest)
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(
+						Character.forDigit(b & 0xF, 16));
+
+			return name.toString();
+		} // end try
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every VM has SHA-1
+		} // end catch
+		catch (IOException e) {
+			throw new IllegalStateException(e); // and UTF-8
+		} // end catch
+	} // end method hash
+
+	// return the snapshot file of a generation
+	private File snapshotFile(int number) {
+		return new File(directory, SNAPSHOT_PREFIX + number + SNAPSHOT_SUFFIX);
+	} // end method snapshotFile
+
+	// return the log file of a generation
+	private File logFile(int number) {
+		return new File(directory, LOG_PREFIX + number);
+	} // end method logFile
+} // end class AutosaveJournal
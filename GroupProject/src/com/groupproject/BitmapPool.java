@@ -0,0 +1,226 @@
+// BitmapPool.java
+// Keeps bitmaps that are no longer shown so later allocations of the same
+// size and config can reuse them instead of asking for new pixel memory.
+// Drawing tiles, the line width preview, slideshow images and thumbnails
+// all come from and go back to the one shared pool. On Android 3.0 and
+// later the pooled bitmaps are also decoded into, through
+// BitmapFactory.Options.inBitmap, which this SDK level can only reach by
+// reflection.
+package com.groupproject;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+public class BitmapPool {
+	private static final String TAG = "BitmapPool"; // error logging tag
+
+	// bytes of bitmaps the shared pool keeps for reuse
+	private static final int SHARED_BYTES = 4 * 1024 * 1024;
+
+	// first SDK level that decodes into any large enough bitmap; earlier
+	// ones need the same size and no subsampling
+	private static final int FLEXIBLE_REUSE_SDK = 19;
+
+	// BitmapFactory.Options fields missing before SDK level 11, or null
+	private static final Field IN_BITMAP = findOptionsField("inBitmap");
+	private static final Field IN_MUTABLE = findOptionsField("inMutable");
+
+	private static final BitmapPool shared = new BitmapPool(SHARED_BYTES);
+
+	// decodes an image with the options it is given
+	public interface Decoder {
+		// return the decoded image, or null if it could not be decoded
+		Bitmap decode(BitmapFactory.Options options) throws IOException;
+	} // end interface Decoder
+
+	private final int maxBytes; // bitmaps are dropped beyond this many bytes
+	private final List<Bitmap> free; // bitmaps ready for reuse, oldest first
+	private int bytes; // pixel bytes held by free
+	private int hits; // requests answered from the pool
+	private int misses; // requests that allocated
+	private int evictions; // bitmaps dropped to stay within maxBytes
+
+	// BitmapPool constructor
+	public BitmapPool(int maxBytes) {
+		this.maxBytes = maxBytes;
+		free = new ArrayList<Bitmap>();
+	} // end BitmapPool constructor
+
+	// return the pool shared by the whole app
+	public static BitmapPool getShared() {
+		return shared;
+	} // end method getShared
+
+	// return a mutable, fully transparent bitmap, reusing a pooled one of
+	// the same size and config if there is one; safe on any thread
+	public Bitmap get(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = take(width, height, config);
+
+		if (bitmap == null)
+			return Bitmap.createBitmap(width, height, config);
+
+		bitmap.eraseColor(0); // as a new bitmap starts out
+		return bitmap;
+	} // end method get
+
+	// remove a pooled bitmap of the given size and config and return it,
+	// or return null after counting a miss; the pool holds few enough
+	// bitmaps that a scan is cheaper than an index
+	private synchronized Bitmap take(int width, int height,
+			Bitmap.Config config) {
+		for (int i = free.size() - 1; i >= 0; i--) {
+			Bitmap bitmap = free.get(i);
+
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height
+					&& bitmap.getConfig() == config) {
+				free.remove(i);
+				bytes -= getByteCount(bitmap);
+				++hits;
+				return bitmap;
+			} // end if
+		} // end for
+
+		++misses;
+		return null;
+	} // end method take
+
+	// give back a bitmap nothing draws or shows any more; it is kept for
+	// reuse, or recycled if it cannot be drawn on or the pool is full.
+	// bitmap may be null
+	public void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled())
+			return;
+
+		if (!bitmap.isMutable() || getByteCount(bitmap) > maxBytes) {
+			bitmap.recycle(); // could never be handed out again
+			return;
+		} // end if
+
+		List<Bitmap> evicted = new ArrayList<Bitmap>();
+
+		synchronized (this) {
+			if (free.contains(bitmap))
+				return; // already given back
+
+			free.add(bitmap);
+			bytes += getByteCount(bitmap);
+
+			// drop the bitmaps unused the longest
+			while (bytes > maxBytes) {
+				Bitmap eldest = free.remove(0);
+				bytes -= getByteCount(eldest);
+				evicted.add(eldest);
+				++evictions;
+			} // end while
+		} // end synchronized
+
+		for (Bitmap eldest : evicted)
+			eldest.recycle();
+	} // end method put
+
+	// decode an image with decoder, letting it reuse a pooled bitmap if the
+	// platform can decode into one; width and height are the size the
+	// image is expected to decode to with options. The result may be
+	// mutable, and should be given back with put when it is no longer shown
+	public Bitmap decode(Decoder decoder, BitmapFactory.Options options,
+			int width, int height) throws IOException {
+		if (!canDecodeInto(options))
+			return decoder.decode(options);
+
+		Bitmap.Config config = options.inPreferredConfig;
+		Bitmap reuse = take(width, height,
+				config == null ? Bitmap.Config.ARGB_8888 : config);
+
+		try {
+			setOption(IN_MUTABLE, options, Boolean.TRUE); // poolable later
+			setOption(IN_BITMAP, options, reuse);
+			Bitmap bitmap;
+
+			try {
+				bitmap = decoder.decode(options);
+			} // end try
+			catch (IllegalArgumentException e) {
+				// the image did not fit after all; decode it on its own
+				Log.d(TAG, "could not reuse a bitmap: " + e.getMessage());
+				setOption(IN_BITMAP, options, null);
+				bitmap = decoder.decode(options);
+			} // end catch
+
+			if (reuse != null && bitmap != reuse)
+				put(reuse); // the decoder allocated instead
+
+			return bitmap;
+		} // end try
+		finally {
+			setOption(IN_BITMAP, options, null); // options may be reused
+		} // end finally
+	} // end method decode
+
+	// decode an image whose size is not known in advance; when a pooled
+	// bitmap could be reused, the image's size is read first to pick one
+	public Bitmap decode(Decoder decoder, BitmapFactory.Options options)
+			throws IOException {
+		if (!canDecodeInto(options))
+			return decoder.decode(options);
+
+		options.inJustDecodeBounds = true;
+		decoder.decode(options);
+		options.inJustDecodeBounds = false;
+
+		// the decoder rounds subsampled sizes up
+		int sample = Math.max(1, options.inSampleSize);
+		return decode(decoder, options, (options.outWidth + sample - 1)
+				/ sample, (options.outHeight + sample - 1) / sample);
+	} // end method decode
+
+	// return true if decoding with options can reuse a pooled bitmap
+	private static boolean canDecodeInto(BitmapFactory.Options options) {
+		if (IN_BITMAP == null || IN_MUTABLE == null)
+			return false; // before SDK level 11
+
+		return options.inSampleSize <= 1
+				|| Build.VERSION.SDK_INT >= FLEXIBLE_REUSE_SDK;
+	} // end method canDecodeInto
+
+	// return the number of bytes of pixels bitmap holds
+	private static int getByteCount(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	} // end method getByteCount
+
+	// return the public field of BitmapFactory.Options called name, or
+	// null if this platform does not have it
+	private static Field findOptionsField(String name) {
+		try {
+			return BitmapFactory.Options.class.getField(name);
+		} // end try
+		catch (NoSuchFieldException e) {
+			return null;
+		} // end catch
+	} // end method findOptionsField
+
+	// set an Options field found by findOptionsField
+	private static void setOption(Field field, BitmapFactory.Options options,
+			Object value) {
+		try {
+			field.set(options, value);
+		} // end try
+		catch (IllegalAccessException e) {
+			Log.e(TAG, "could not set " + field.getName(), e);
+		} // end catch
+	} // end method setOption
+
+	// return the pool's size and how well it has been working
+	@Override
+	public synchronized String toString() {
+		return "bitmap pool: " + free.size() + " bitmaps, " + bytes / 1024
+				+ " KB, " + hits + " hits, " + misses + " misses, "
+				+ evictions + " evictions";
+	} // end method toString
+} // end class BitmapPool
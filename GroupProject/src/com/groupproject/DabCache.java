@@ -0,0 +1,76 @@
+// DabCache.java
+// Keeps the dab bitmaps of recently used stamp brushes, least recently
+// used first out once they take more than a fixed number of bytes, so
+// switching back and forth between a few colors and sizes costs nothing.
+package com.groupproject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+public class DabCache {
+	private final int maxBytes; // dabs are dropped beyond this many bytes
+	private final LinkedHashMap<Long, Bitmap> dabs; // in order of use
+	private int bytes; // pixel bytes held by dabs
+	private int hits; // lookups answered from the cache
+	private int misses; // lookups that made a dab
+	private int evictions; // dabs dropped to stay within maxBytes
+
+	// DabCache constructor
+	public DabCache(int maxBytes) {
+		this.maxBytes = maxBytes;
+		dabs = new LinkedHashMap<Long, Bitmap>(16, 0.75f, true);
+	} // end DabCache constructor
+
+	// return the dab of brush in color for a line width, making it on
+	// first use; the bitmap stays valid until the next call
+	public Bitmap get(int brush, int color, float lineWidth) {
+		int size = StampBrush.getDabSize(lineWidth);
+		Long key = Long.valueOf(((long) color << 32) | (brush << 16) | size);
+		Bitmap dab = dabs.get(key);
+
+		if (dab != null) {
+			++hits;
+			return dab;
+		} // end if
+
+		++misses;
+		dab = Bitmap.createBitmap(StampBrush.makeDab(brush, color, size),
+				size, size, Bitmap.Config.ARGB_8888);
+		dabs.put(key, dab);
+		bytes += size * size * 4;
+
+		// drop the least recently used dabs, never the one just made
+		Iterator<Map.Entry<Long, Bitmap>> iterator = dabs.entrySet()
+				.iterator();
+
+		while (bytes > maxBytes && dabs.size() > 1) {
+			Bitmap eldest = iterator.next().getValue();
+			bytes -= eldest.getWidth() * eldest.getHeight() * 4;
+			eldest.recycle();
+			iterator.remove();
+			++evictions;
+		} // end while
+
+		return dab;
+	} // end method get
+
+	// drop every dab
+	public void clear() {
+		for (Bitmap dab : dabs.values())
+			dab.recycle();
+
+		dabs.clear();
+		bytes = 0;
+	} // end method clear
+
+	// return the cache's size and how well it has been working
+	@Override
+	public String toString() {
+		return "dab cache: " + dabs.size() + " dabs, " + bytes / 1024
+				+ " KB, " + hits + " hits, " + misses + " misses, "
+				+ evictions + " evictions";
+	} // end method toString
+} // end class DabCache
@@ -0,0 +1,1254 @@
+// DoodleEngine.java
+// Drawing state shared by the drawing surfaces: the layered tiles, the
+// stroke journal, the strokes being drawn and the tools that edit them.
+// An engine is used from one thread at a time, the UI thread for a
+// DoodleView and the render thread for a DoodleSurfaceView.
+package com.groupproject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+
+public class DoodleEngine {
+	private static final String TAG = "DoodleEngine"; // error logging tag
+
+	// receives the areas of the drawing that must be shown again, and
+	// work the engine hands off its thread
+	public interface Listener {
+		// dirty is the changed area, or null if everything changed
+		void onInvalidate(Rect dirty);
+
+		// start task in the background, then pass it to applyFill on the
+		// engine's thread once it is done
+		void onFillRequested(FillTask task);
+	} // end interface Listener
+
+	// used to determine whether user moved a finger enough to draw again
+	private static final float TOUCH_TOLERANCE = 10;
+
+	// curve segments kept live before a stroke is committed to the tiles
+	private static final int FLUSH_SEGMENTS = 8;
+
+	// undo replays at most about CHECKPOINT_INTERVAL strokes; checkpoints
+	// wait until no other finger has a partly committed stroke, and are
+	// compressed and dropped oldest first beyond UNDO_BYTES, which keeps
+	// about 50 strokes of a busy phone-sized drawing undoable
+	private static final int CHECKPOINT_INTERVAL = 10;
+	private static final int UNDO_BYTES = 4 * 1024 * 1024;
+
+	// channel difference from Canvas's output that the software rasterizer
+	// comparison still counts as a match: anti-aliased edges are rounded
+	// differently by the two
+	public static final int RASTERIZER_TOLERANCE = 16;
+
+	// Paint.Cap values indexed by StrokeRecord cap constants
+	private static final Paint.Cap[] CAPS = Paint.Cap.values();
+
+	// layers of the drawing, bottom first
+	private static final int PHOTO_LAYER = 0; // overlay photo, never edited
+	private static final int STROKE_LAYER = 1; // strokes
+
+	// predicted ink reaches this far past the latest touch sample, about
+	// one frame, and is switched off if its guesses average further than
+	// MAX_PREDICTION_ERROR pixels from where the finger really went
+	private static final long PREDICTION_MS = 16;
+	private static final float MAX_PREDICTION_ERROR = 6;
+
+	// distance from the finger within which the eraser removes a stroke
+	private static final float ERASER_RADIUS = 12;
+
+	// bytes of stamp brush dabs kept for reuse
+	private static final int DAB_CACHE_BYTES = 512 * 1024;
+
+	// largest difference in any color channel the fill tool spreads over
+	private static final int FILL_TOLERANCE = 32;
+
+	private Listener listener; // told about changed areas
+	private LayerStack layers; // photo and stroke layers, composited
+	private TiledCanvas tiles; // the stroke layer of layers
+	private StrokeJournal journal; // every stroke, for undo and redo
+	private Path replayPath = new Path(); // rebuilt from a StrokeRecord
+	private Paint replayPaint = new Paint(); // draws a StrokeRecord
+	private Paint paintScreen; // use to draw bitmap onto screen
+	private Paint paintLine; // chosen line settings for new strokes
+	private Paint paintPen; // paintLine in the color and width of a stroke
+	private Paint paintJoin; // paintPen with flat ends, for stroke pieces
+	private Paint paintCap; // fills the round ends of pieced strokes
+	private Paint paintFill; // fills the outlines of varied strokes
+	private Paint paintTail; // predicted tail of a stroke
+	private StrokeOutline outline = new StrokeOutline(); // varied live ink
+	private boolean variableWidth; // new strokes follow pressure and speed
+	private int brush = StampBrush.PEN; // StampBrush for new strokes
+	private DabCache dabCache = new DabCache(DAB_CACHE_BYTES); // brush dabs
+	private Paint paintStamp = new Paint(); // draws dabs
+	private SoftwareRasterizer.Polyline replayLine; // a stamped record
+	private boolean filling; // true while a fill is being searched
+	private volatile AutosaveJournal autosave; // keeps strokes on disk
+	private List<StrokeRecord> recoveredStrokes; // wait for setSize
+	private int recoveredWidth; // size of the area they were drawn on
+	private int recoveredHeight;
+	private Path capPath = new Path(); // half-disc drawn by drawCap
+	private RectF capOval = new RectF(); // circle containing capPath
+	private PointerSlots pointerSlots; // current strokes by pointer ID
+	private RectF dirtyBounds = new RectF(); // area changed by strokes
+	private Rect dirtyRect = new Rect(); // dirtyBounds rounded for invalidate
+	private Rect clipRect = new Rect(); // area of the screen being redrawn
+	private int tool = DrawingSurface.TOOL_DRAW; // current TOOL_ constant
+	private float[] lassoPoints = new float[256]; // x, y pairs of the lasso
+	private int lassoCount; // points in lassoPoints
+	private int lassoPointer; // ID of the finger drawing the lasso
+	private Path lassoPath = new Path(); // lasso outline shown while drawn
+	private Paint paintLasso; // draws lassoPath
+	private boolean predictInk = true; // draw predicted tails
+	private float[] prediction = new float[2]; // result of a prediction
+	private Path tailPath = new Path(); // predicted tail being drawn
+	private Paint paintPhoto; // smooths the photo when it is scaled
+	private boolean photoPending; // true while a photo is being decoded
+	private volatile boolean photoLoaded; // true once the photo is painted
+
+	// DoodleEngine constructor; nothing is drawn until setSize
+	public DoodleEngine() {
+		paintScreen = new Paint(); // used to display bitmap onto screen
+		paintPhoto = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+		// set the initial display settings for the painted line
+		paintLine = new Paint();
+		paintLine.setAntiAlias(true); // smooth edges of drawn line
+		paintLine.setColor(Color.BLACK); // default color is black
+		paintLine.setStyle(Paint.Style.STROKE); // solid line
+		paintLine.setStrokeWidth(5); // set the default line width
+		paintLine.setStrokeCap(Paint.Cap.ROUND); // rounded line ends
+		paintPen = new Paint();
+		paintJoin = new Paint();
+		paintCap = new Paint();
+		paintFill = new Paint();
+		paintFill.setAntiAlias(true);
+		paintFill.setStyle(Paint.Style.FILL);
+		paintTail = new Paint();
+		updateStrokePaints();
+		paintLasso = new Paint();
+		paintLasso.setAntiAlias(true);
+		paintLasso.setColor(Color.GRAY);
+		paintLasso.setStyle(Paint.Style.STROKE);
+		paintLasso.setStrokeWidth(2);
+		pointerSlots = new PointerSlots();
+	} // end DoodleEngine constructor
+
+	// set the object told about changed areas; it is called on the
+	// engine's thread, and the engine is handed between surfaces with it
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	} // end method setListener
+
+	// size the tiled drawing area; what is already painted is kept, and
+	// the drawing never shrinks
+	public void setSize(int w, int h) {
+		if (layers == null) {
+			// no tile memory until painted
+			layers = new LayerStack(w, h, Color.WHITE);
+			layers.addLayer(); // PHOTO_LAYER
+			layers.addLayer(); // STROKE_LAYER
+			tiles = layers.getLayer(STROKE_LAYER);
+		} // end if
+		else
+			layers.resize(Math.max(w, layers.getWidth()),
+					Math.max(h, layers.getHeight()));
+
+		if (journal == null) {
+			journal = new StrokeJournal(CHECKPOINT_INTERVAL, UNDO_BYTES);
+			journal.reset(tiles); // first checkpoint is the blank drawing
+		} // end if
+
+		if (autosave != null)
+			autosave.setSize(tiles.getWidth(), tiles.getHeight());
+
+		if (recoveredStrokes != null) {
+			List<StrokeRecord> strokes = recoveredStrokes;
+			recoveredStrokes = null;
+			restoreStrokes(strokes, recoveredWidth, recoveredHeight);
+		} // end if
+	} // end method setSize
+
+	// save every change to the strokes to autosave from now on, or stop
+	// if autosave is null; autosave's own thread does the writing
+	public void setAutosave(AutosaveJournal autosave) {
+		this.autosave = autosave;
+
+		if (autosave != null && isSized())
+			autosave.setSize(tiles.getWidth(), tiles.getHeight());
+	} // end method setAutosave
+
+	// put strokes recovered by an AutosaveJournal back, under any drawn
+	// since; width and height are the size of the area they were drawn
+	// on. Waits for setSize if the engine has no size yet
+	public void restoreStrokes(List<StrokeRecord> strokes, int width,
+			int height) {
+		if (!isSized()) {
+			recoveredStrokes = strokes;
+			recoveredWidth = width;
+			recoveredHeight = height;
+			return;
+		} // end if
+
+		if (strokes.isEmpty())
+			return; // nothing was saved
+
+		List<StrokeRecord> drawn = journal.getStrokes();
+		journal.undoAll(tiles); // back to the blank stroke layer
+		layers.resize(Math.max(layers.getWidth(), width),
+				Math.max(layers.getHeight(), height));
+
+		for (StrokeRecord stroke : strokes)
+			replay(stroke);
+
+		for (StrokeRecord stroke : drawn)
+			replay(stroke);
+
+		// strokes drawn meanwhile were saved after the recovered ones, but
+		// an undo or erase among them saved a drawing without those
+		if (!drawn.isEmpty())
+			autosaveAll();
+
+		invalidate(); // refresh the screen
+	} // end method restoreStrokes
+
+	// paint a stroke that is not being drawn by a finger and add it to the
+	// undo history
+	private void replay(StrokeRecord stroke) {
+		strokePainter.paint(stroke, tiles, null);
+		journal.add(stroke, tiles, true);
+	} // end method replay
+
+	// save the whole drawing after a change other than a new stroke
+	private void autosaveAll() {
+		AutosaveJournal saver = autosave;
+
+		if (saver != null)
+			saver.replace(journal.getStrokes());
+	} // end method autosaveAll
+
+	// save a stroke just added to the undo history
+	private void autosaveStroke(StrokeRecord stroke) {
+		AutosaveJournal saver = autosave;
+
+		if (saver != null)
+			saver.append(stroke);
+	} // end method autosaveStroke
+
+	// return true once setSize has been called
+	public boolean isSized() {
+		return layers != null;
+	} // end method isSized
+
+	// show a placeholder background while a photo is being decoded
+	public void setPhotoPending(boolean pending) {
+		photoPending = pending;
+		invalidate(); // add or remove the placeholder
+	} // end method setPhotoPending
+
+	// return true once a photo has been painted under the strokes; safe to
+	// call from any thread
+	public boolean isPhotoLoaded() {
+		return photoLoaded;
+	} // end method isPhotoLoaded
+
+	// paint the decoded photo into its own layer under the strokes; strokes
+	// drawn while it was loading are unaffected
+	public void applyOverlay(Bitmap photo) {
+		TiledCanvas photoLayer = layers.getLayer(PHOTO_LAYER);
+
+		// fit the photo inside the drawing area, centered
+		float scale = Math.min((float) photoLayer.getWidth()
+				/ photo.getWidth(), (float) photoLayer.getHeight()
+				/ photo.getHeight());
+		float width = photo.getWidth() * scale;
+		float height = photo.getHeight() * scale;
+		float left = (photoLayer.getWidth() - width) / 2;
+		float top = (photoLayer.getHeight() - height) / 2;
+		photoLayer.drawBitmap(photo, null, new RectF(left, top, left + width,
+				top + height), paintPhoto);
+		photo.recycle(); // the layer holds the pixels now
+		photoLoaded = true;
+		photoPending = false;
+		invalidate(); // refresh the screen
+	} // end method applyOverlay
+
+	// show or hide the overlay photo under the strokes
+	public void setPhotoVisible(boolean visible) {
+		layers.setLayerVisible(PHOTO_LAYER, visible);
+		invalidate(); // refresh the screen
+	} // end method setPhotoVisible
+
+	// return true if the overlay photo is shown
+	public boolean isPhotoVisible() {
+		return layers == null || layers.isLayerVisible(PHOTO_LAYER);
+	} // end method isPhotoVisible
+
+	// clear the strokes, keeping the overlay photo
+	public void clear() {
+		pointerSlots.clear(); // remove all paths
+		tiles.clear(); // release every painted tile
+		journal.reset(tiles); // clearing cannot be undone
+		autosaveAll();
+		invalidate(); // refresh the screen
+	} // end method clear
+
+	// take back the most recent stroke; returns false if there is none
+	public boolean undo() {
+		if (!journal.undo(tiles, strokePainter))
+			return false;
+
+		autosaveAll();
+		invalidate(); // refresh the screen
+		return true;
+	} // end method undo
+
+	// redraw the most recently undone stroke; returns false if there is none
+	public boolean redo() {
+		if (!journal.redo(tiles, strokePainter))
+			return false;
+
+		autosaveAll();
+		invalidate(); // refresh the screen
+		return true;
+	} // end method redo
+
+	// return true if there is a stroke that undo can take back
+	public boolean canUndo() {
+		return journal != null && journal.canUndo();
+	} // end method canUndo
+
+	// return true if there is an undone stroke that redo can restore
+	public boolean canRedo() {
+		return journal != null && journal.canRedo();
+	} // end method canRedo
+
+	// return a copy of the current strokes; the records are immutable, so
+	// the copy can be written out from any thread
+	public List<StrokeRecord> getStrokes() {
+		return new ArrayList<StrokeRecord>(journal.getStrokes());
+	} // end method getStrokes
+
+	// write the current strokes as a stroke document; photoUri names the
+	// overlay photo, or is null if there is none
+	public void saveDocument(OutputStream out, String photoUri)
+			throws IOException {
+		StrokeDocumentWriter writer = new StrokeDocumentWriter(out,
+				tiles.getWidth(), tiles.getHeight(), photoUri);
+
+		for (StrokeRecord stroke : journal.getStrokes())
+			writer.write(stroke);
+
+		writer.close();
+	} // end method saveDocument
+
+	// replace the strokes with those of a stroke document, keeping any
+	// overlay photo; time taken depends on the number of strokes read
+	public void loadDocument(InputStream in) throws IOException {
+		StrokeDocumentReader reader = new StrokeDocumentReader(in);
+
+		try {
+			journal.undoAll(tiles); // back to the blank stroke layer
+			layers.resize(Math.max(layers.getWidth(), reader.getWidth()),
+					Math.max(layers.getHeight(), reader.getHeight()));
+
+			StrokeRecord stroke;
+
+			while ((stroke = reader.read()) != null)
+				replay(stroke);
+		} // end try
+		finally {
+			reader.close();
+			autosaveAll();
+			invalidate(); // refresh the screen
+		} // end finally
+	} // end method loadDocument
+
+	// draws recorded strokes when the journal replays them
+	private StrokeJournal.Painter strokePainter = new StrokeJournal.Painter() {
+		@Override
+		public void paint(StrokeRecord stroke, TiledCanvas canvas, Rect clip) {
+			if (stroke.isFill()) {
+				// the runs cover whole pixels, as the fill did
+				setSpans(replayPath, stroke.getSpans());
+				replayPaint.set(paintStamp);
+				replayPaint.setColor(stroke.getColor());
+				canvas.drawPath(replayPath, replayPaint, clip);
+				return;
+			} // end if
+
+			if (StampBrush.isStamped(stroke.getBrush())) {
+				// dabs fall where they fell while the stroke was drawn
+				if (replayLine == null)
+					replayLine = new SoftwareRasterizer.Polyline();
+
+				SoftwareRasterizer.flatten(stroke, 1, replayLine);
+				stampDab(dabCache.get(stroke.getBrush(), stroke.getColor(),
+						stroke.getWidth()), replayLine.points[0],
+						replayLine.points[1], canvas, clip, null);
+				stampAlong(replayLine, stroke.getBrush(), stroke.getColor(),
+						stroke.getWidth(), StampBrush.getSpacing(stroke
+								.getBrush(), stroke.getWidth()), canvas, clip,
+						null);
+				return;
+			} // end if
+
+			if (stroke.hasWidths()) {
+				// the outline is built once and kept by the record
+				float[] polygon = stroke.getOutline();
+				setPolygon(replayPath, polygon, polygon.length / 2);
+				replayPaint.set(paintFill);
+				replayPaint.setColor(stroke.getColor());
+				canvas.drawPath(replayPath, replayPaint, clip);
+				return;
+			} // end if
+
+			buildPath(stroke, replayPath);
+			replayPaint.set(paintLine);
+			replayPaint.setColor(stroke.getColor());
+			replayPaint.setStrokeWidth(stroke.getWidth());
+			replayPaint.setStrokeCap(CAPS[stroke.getCap()]);
+			canvas.drawPath(replayPath, replayPaint, clip);
+		} // end method paint
+	}; // end strokePainter
+
+	// render the current strokes with SoftwareRasterizer and compare the
+	// result to the stroke layer drawn by Canvas, measuring how closely the
+	// two agree on this device; channels differing by more than tolerance
+	// count as differing pixels. Surfaces log it with their frame
+	// statistics when debug logging is on for their tag
+	public SoftwareRasterizer.Comparison compareWithSoftwareRasterizer(
+			int tolerance) {
+		int width = tiles.getWidth();
+		int height = tiles.getHeight();
+		SoftwareRasterizer rasterizer = new SoftwareRasterizer(width, height);
+		rasterizer.fill(Color.WHITE);
+
+		for (StrokeRecord stroke : journal.getStrokes())
+			rasterizer.render(stroke);
+
+		Bitmap bitmap = tiles.toBitmap(Color.WHITE);
+		int[] canvasPixels = new int[width * height];
+		bitmap.getPixels(canvasPixels, 0, width, 0, 0, width, height);
+		bitmap.recycle();
+
+		SoftwareRasterizer.Comparison result = SoftwareRasterizer.compare(
+				canvasPixels, rasterizer.getPixels(), tolerance);
+		Log.i(TAG, "software rasterizer vs Canvas: " + result);
+		return result;
+	} // end method compareWithSoftwareRasterizer
+
+	// rebuild a recorded stroke with the same smoothing used while drawing
+	private static void buildPath(StrokeRecord stroke, Path path) {
+		path.reset();
+		path.moveTo(stroke.getX(0), stroke.getY(0));
+
+		for (int i = 1; i < stroke.getPointCount(); i++) {
+			float lastX = stroke.getX(i - 1);
+			float lastY = stroke.getY(i - 1);
+			path.quadTo(lastX, lastY, (stroke.getX(i) + lastX) / 2,
+					(stroke.getY(i) + lastY) / 2);
+		} // end for
+	} // end method buildPath
+
+	// set path to the rows of pixels in spans, y, first x, end x triples
+	private static void setSpans(Path path, int[] spans) {
+		path.reset();
+
+		for (int i = 0; i < spans.length; i += 3)
+			path.addRect(spans[i + 1], spans[i], spans[i + 2], spans[i] + 1,
+					Path.Direction.CW);
+	} // end method setSpans
+
+	// set path to the closed polygon of the first count x, y pairs of points
+	private static void setPolygon(Path path, float[] points, int count) {
+		path.reset();
+
+		if (count == 0)
+			return;
+
+		path.moveTo(points[0], points[1]);
+
+		for (int i = 1; i < count; i++)
+			path.lineTo(points[i * 2], points[i * 2 + 1]);
+
+		path.close();
+	} // end method setPolygon
+
+	// choose what touching the surface does; one of the TOOL_ constants
+	public void setTool(int tool) {
+		this.tool = tool;
+	} // end method setTool
+
+	// return the current TOOL_ constant
+	public int getTool() {
+		return tool;
+	} // end method getTool
+
+	// set the painted line's color
+	public void setDrawingColor(int color) {
+		paintLine.setColor(color);
+		updateStrokePaints();
+	} // end method setDrawingColor
+
+	// return the painted line's color
+	public int getDrawingColor() {
+		return paintLine.getColor();
+	} // end method getDrawingColor
+
+	// set the painted line's width
+	public void setLineWidth(int width) {
+		paintLine.setStrokeWidth(width);
+		updateStrokePaints();
+	} // end method setLineWidth
+
+	// copy paintLine's settings into the paints used for strokes being
+	// drawn; their color and width are set per stroke by preparePen
+	private void updateStrokePaints() {
+		paintPen.set(paintLine);
+		paintJoin.set(paintLine);
+		paintJoin.setStrokeCap(Paint.Cap.BUTT); // pieces meet end to end
+		paintCap.set(paintLine);
+		paintCap.setStyle(Paint.Style.FILL);
+		paintTail.set(paintLine);
+	} // end method updateStrokePaints
+
+	// set the pen paints to the color and width slot's stroke started with,
+	// so changing them mid-stroke only affects the next stroke
+	private void preparePen(PointerSlots.StrokeSlot slot) {
+		paintPen.setColor(slot.color);
+		paintPen.setStrokeWidth(slot.baseWidth);
+		paintJoin.setColor(slot.color);
+		paintJoin.setStrokeWidth(slot.baseWidth);
+		paintCap.setColor(slot.color);
+	} // end method preparePen
+
+	// return the painted line's width
+	public int getLineWidth() {
+		return (int) paintLine.getStrokeWidth();
+	} // end method getLineWidth
+
+	// make strokes started from now on wider with pressure and thinner
+	// with speed, around the chosen line width; strokes being drawn keep
+	// the width they started with
+	public void setVariableWidth(boolean variable) {
+		variableWidth = variable;
+	} // end method setVariableWidth
+
+	// return true if new strokes vary in width
+	public boolean isVariableWidth() {
+		return variableWidth;
+	} // end method isVariableWidth
+
+	// choose the brush for strokes started from now on; one of the
+	// StampBrush constants. Stamped strokes keep one width
+	public void setBrush(int brush) {
+		this.brush = brush;
+	} // end method setBrush
+
+	// return the StampBrush constant for new strokes
+	public int getBrush() {
+		return brush;
+	} // end method getBrush
+
+	// return a description of the undo history's size
+	public String getHistoryStats() {
+		return journal == null ? "undo history: none" : journal.toString();
+	} // end method getHistoryStats
+
+	// return the cache of stamp brush dabs, for its statistics
+	public DabCache getDabCache() {
+		return dabCache;
+	} // end method getDabCache
+
+	// stamp dabs along line from its first point, the first one residual
+	// pixels along it and then every brush spacing; returns how far past
+	// the line's last point the next dab falls. slot, if not null, is
+	// marked dirty where dabs land
+	private float stampAlong(SoftwareRasterizer.Polyline line, int brush,
+			int color, float width, float residual, TiledCanvas canvas,
+			Rect clip, PointerSlots.StrokeSlot slot) {
+		Bitmap dab = dabCache.get(brush, color, width);
+		float spacing = StampBrush.getSpacing(brush, width);
+		float[] points = line.points;
+
+		for (int i = 1; i < line.count; i++) {
+			float x0 = points[i * 2 - 2];
+			float y0 = points[i * 2 - 1];
+			float dx = points[i * 2] - x0;
+			float dy = points[i * 2 + 1] - y0;
+			float length = (float) Math.sqrt(dx * dx + dy * dy);
+
+			while (residual <= length) {
+				float t = length > 0 ? residual / length : 0;
+				stampDab(dab, x0 + dx * t, y0 + dy * t, canvas, clip, slot);
+				residual += spacing;
+			} // end while
+
+			residual -= length;
+		} // end for
+
+		return residual;
+	} // end method stampAlong
+
+	// stamp one dab centered on (x, y), on whole pixels so overlapping
+	// dabs don't blur
+	private void stampDab(Bitmap dab, float x, float y, TiledCanvas canvas,
+			Rect clip, PointerSlots.StrokeSlot slot) {
+		float left = Math.round(x - dab.getWidth() / 2f);
+		float top = Math.round(y - dab.getHeight() / 2f);
+		canvas.drawBitmap(dab, left, top, paintStamp, clip);
+
+		if (slot != null) {
+			slot.markDirty(left, top);
+			slot.markDirty(left + dab.getWidth(), top + dab.getHeight());
+		} // end if
+	} // end method stampDab
+
+	// draw the part of the drawing inside canvas's clip, with the strokes
+	// being drawn and the lasso on top
+	public void draw(Canvas canvas) {
+		// draw only the part of the background inside the clip
+		if (!canvas.getClipBounds(clipRect))
+			return; // nothing to redraw
+
+		// show a placeholder background until the overlay photo is ready
+		if (photoPending)
+			layers.setBackgroundColor(Color.LTGRAY);
+		else
+			layers.setBackgroundColor(Color.WHITE);
+
+		// only tiles changed since the last frame are flattened again
+		layers.draw(canvas, clipRect, paintScreen);
+
+		// for each path currently being drawn
+		for (int i = 0; i < PointerSlots.MAX_POINTERS; i++) {
+			PointerSlots.StrokeSlot slot = pointerSlots.slotAt(i);
+
+			if (slot != null && slot.active) {
+				drawTail(canvas, slot); // draw line
+
+				if (slot.predicted)
+					drawPrediction(canvas, slot); // guess ahead of the finger
+			} // end if
+		} // end for
+
+		if (lassoCount > 0)
+			canvas.drawPath(lassoPath, paintLasso); // lasso being drawn
+	} // end method draw
+
+	// apply one touch sample, taken at time uptime milliseconds; kind is a
+	// TouchQueue constant. Call endTouches after a batch of samples
+	public void addTouch(int kind, int pointerID, float x, float y,
+			float pressure, long time) {
+		if (tool == DrawingSurface.TOOL_ERASE) {
+			if (kind == TouchQueue.DOWN || kind == TouchQueue.MOVE)
+				eraseAt(x, y); // nothing is under a lifted finger
+		} // end if
+		else if (tool == DrawingSurface.TOOL_LASSO)
+			lassoTouched(kind, pointerID, x, y);
+		else if (tool == DrawingSurface.TOOL_FILL) {
+			if (kind == TouchQueue.DOWN)
+				startFill(x, y);
+		} // end else if
+		else if (kind == TouchQueue.DOWN)
+			touchStarted(x, y, pressure, pointerID, time);
+		else if (kind == TouchQueue.MOVE)
+			touchMoved(pointerID, x, y, pressure, time);
+		else // UP or CANCEL
+			touchEnded(pointerID);
+	} // end method addTouch
+
+	// guess ahead of every finger still down and redraw what the batch
+	// of samples changed
+	public void endTouches() {
+		if (tool == DrawingSurface.TOOL_DRAW) {
+			for (int i = 0; i < PointerSlots.MAX_POINTERS; i++) {
+				PointerSlots.StrokeSlot slot = pointerSlots.slotAt(i);
+
+				if (slot != null && slot.active)
+					predict(slot);
+			} // end for
+
+			invalidateStrokes(); // redraw the changed area
+		} // end if
+		else if (tool == DrawingSurface.TOOL_LASSO)
+			invalidate(); // redraw the lasso
+	} // end method endTouches
+
+	// invalidate only the area covered by stroke segments added since
+	// the last call, padded for line width and anti-aliasing
+	private void invalidateStrokes() {
+		boolean dirty = false; // true once dirtyBounds holds an area
+		float width = 0; // widest line changed
+
+		for (int i = 0; i < PointerSlots.MAX_POINTERS; i++) {
+			PointerSlots.StrokeSlot slot = pointerSlots.slotAt(i);
+
+			if (slot != null && slot.dirty) {
+				if (dirty)
+					dirtyBounds.union(slot.dirtyBounds);
+				else
+					dirtyBounds.set(slot.dirtyBounds);
+
+				dirty = true;
+				slot.dirty = false;
+
+				width = Math.max(width, slot.varied ? WidthModel
+						.getMaxWidth(slot.baseWidth) : slot.baseWidth);
+			} // end if
+		} // end for
+
+		if (dirty) {
+			float pad = width / 2 + 2;
+			dirtyBounds.inset(-pad, -pad);
+			dirtyBounds.roundOut(dirtyRect);
+			invalidate(dirtyRect);
+		} // end if
+	} // end method invalidateStrokes
+
+	// flood fill the area of the stroke layer around (x, y) with the line
+	// color; the area is found in the background from a snapshot, one fill
+	// at a time, and drawn by applyFill
+	private void startFill(float x, float y) {
+		if (filling || listener == null || x < 0 || y < 0
+				|| x >= tiles.getWidth() || y >= tiles.getHeight())
+			return;
+
+		filling = true;
+		listener.onFillRequested(new FillTask(tiles.snapshot(), (int) x,
+				(int) y, paintLine.getColor(), FILL_TOLERANCE));
+	} // end method startFill
+
+	// draw a finished fill into the stroke layer, the same way undo and
+	// erase replay it, and add it to the undo history
+	public void applyFill(FillTask task) {
+		filling = false;
+
+		if (task.getSpans() == null)
+			return; // nothing was filled
+
+		StrokeRecord fill = new StrokeRecord(task.getX(), task.getY(), task
+				.getColor(), task.getSpans(), task.getSpanCount());
+		strokePainter.paint(fill, tiles, null);
+		dirtyRect.set((int) fill.getLeft(), (int) fill.getTop(), (int) fill
+				.getRight(), (int) fill.getBottom());
+		journal.add(fill, tiles, !pointerSlots.isAnyStrokeFlushed());
+		autosaveStroke(fill);
+		invalidate(dirtyRect);
+	} // end method applyFill
+
+	// forget a fill that will never reach applyFill, e.g. when the surface
+	// that started it goes away
+	public void cancelFill() {
+		filling = false;
+	} // end method cancelFill
+
+	// remove every stroke under a finger at (x, y)
+	private void eraseAt(float x, float y) {
+		// a fast swipe can cross several strokes at one sample; they go
+		// as one undo step
+		int[] ids = journal.hitTestAll(x, y, ERASER_RADIUS);
+
+		if (ids.length > 0)
+			eraseStrokes(ids);
+	} // end method eraseAt
+
+	// follow the lasso with the first finger down, then remove the
+	// strokes it encloses when that finger is lifted
+	private void lassoTouched(int kind, int pointerID, float x, float y) {
+		if (kind == TouchQueue.DOWN && lassoCount == 0) {
+			lassoPointer = pointerID;
+			lassoPath.reset();
+			lassoPath.moveTo(x, y);
+			addLassoPoint(x, y);
+		} // end if
+		else if (pointerID != lassoPointer || lassoCount == 0)
+			return; // another finger; only the first draws the lasso
+		else if (kind == TouchQueue.MOVE)
+			addLassoPoint(x, y);
+		else if (kind == TouchQueue.UP) {
+			if (lassoCount >= 3) {
+				int[] ids = journal.selectInside(lassoPoints, lassoCount);
+
+				if (ids.length > 0)
+					eraseStrokes(ids);
+			} // end if
+
+			lassoCount = 0;
+			lassoPath.reset();
+		} // end else if
+		else if (kind == TouchQueue.CANCEL)
+			lassoCount = 0;
+	} // end method lassoTouched
+
+	// add a point to the lasso outline
+	private void addLassoPoint(float x, float y) {
+		if (lassoCount * 2 == lassoPoints.length) {
+			float[] larger = new float[lassoPoints.length * 2];
+			System.arraycopy(lassoPoints, 0, larger, 0, lassoPoints.length);
+			lassoPoints = larger;
+		} // end if
+
+		lassoPoints[lassoCount * 2] = x;
+		lassoPoints[lassoCount * 2 + 1] = y;
+
+		if (lassoCount++ > 0)
+			lassoPath.lineTo(x, y);
+	} // end method addLassoPoint
+
+	// remove strokes as one undoable step and redraw the area they covered
+	private void eraseStrokes(int[] ids) {
+		dirtyBounds.setEmpty();
+
+		for (int id : ids) {
+			StrokeRecord stroke = journal.getStroke(id);
+			dirtyBounds.union(stroke.getLeft(), stroke.getTop(),
+					stroke.getRight(), stroke.getBottom());
+		} // end for
+
+		journal.erase(ids, tiles, strokePainter,
+				!pointerSlots.isAnyStrokeFlushed());
+		autosaveAll();
+		dirtyBounds.inset(-2, -2);
+		dirtyBounds.roundOut(dirtyRect);
+		invalidate(dirtyRect);
+	} // end method eraseStrokes
+
+	// turn predicted ink on or off
+	public void setInkPrediction(boolean enabled) {
+		predictInk = enabled;
+
+		// give every finger's predictor a fresh error average
+		for (int i = 0; i < PointerSlots.MAX_POINTERS; i++) {
+			PointerSlots.StrokeSlot slot = pointerSlots.slotAt(i);
+
+			if (slot != null && slot.predictor != null)
+				slot.predictor.setEnabled(enabled);
+		} // end for
+	} // end method setInkPrediction
+
+	// return true if predicted ink is drawn; prediction turns itself off
+	// when its guesses are too far off
+	public boolean isInkPrediction() {
+		return predictInk;
+	} // end method isInkPrediction
+
+	// return the largest average prediction error of any finger, in pixels
+	public float getPredictionError() {
+		float error = 0;
+
+		for (int i = 0; i < PointerSlots.MAX_POINTERS; i++) {
+			PointerSlots.StrokeSlot slot = pointerSlots.slotAt(i);
+
+			if (slot != null && slot.predictor != null)
+				error = Math.max(error, slot.predictor.getAverageError());
+		} // end for
+
+		return error;
+	} // end method getPredictionError
+
+	// called when the user touches the screen
+	private void touchStarted(float x, float y, float pressure, int lineID,
+			long time) {
+		// get the pooled stroke for lineID, reset for a new touch
+		PointerSlots.StrokeSlot slot = pointerSlots.start(lineID);
+
+		if (slot == null)
+			return; // too many fingers; ignore this one
+
+		// move to the coordinates of the touch
+		slot.path.moveTo(x, y);
+		slot.lastX = x;
+		slot.lastY = y;
+		slot.penX = x;
+		slot.penY = y;
+		slot.startX = x;
+		slot.startY = y;
+		float width = paintLine.getStrokeWidth();
+		slot.brush = brush;
+		slot.varied = variableWidth && !StampBrush.isStamped(brush);
+
+		// the stroke keeps the settings it started with
+		slot.color = paintLine.getColor();
+		slot.baseWidth = width;
+
+		if ((slot.varied || StampBrush.isStamped(brush))
+				&& slot.ribbon == null) {
+			slot.widthModel = new WidthModel();
+			slot.ribbon = new SoftwareRasterizer.Polyline();
+		} // end if
+
+		if (StampBrush.isStamped(brush)) {
+			// dabs go straight to the tiles, so the stroke counts as
+			// partly committed from its first dab
+			stampDab(dabCache.get(brush, slot.color, width), x, y, tiles,
+					null, slot);
+			slot.stampResidual = StampBrush.getSpacing(brush, width);
+			slot.flushed = true;
+		} // end if
+		else if (slot.varied) {
+			slot.widthModel.reset();
+			width = slot.widthModel.next(width, x, y, pressure, time);
+			slot.rawWidth = width;
+			slot.lastWidth = width;
+			slot.penWidth = width;
+			slot.ribbon.count = 0;
+			slot.ribbon.add(x, y, width / 2);
+			slot.ribbonFrom = 0;
+			buildRibbon(slot); // a dot until the finger moves
+		} // end if
+
+		slot.record(x, y, width);
+		slot.markDirty(x, y); // round cap is drawn at the touch point
+		slot.rawX = x;
+		slot.rawY = y;
+
+		if (slot.predictor == null)
+			slot.predictor = new InkPredictor(MAX_PREDICTION_ERROR);
+
+		slot.predictor.reset();
+		slot.predictor.addSample(x, y, time);
+	} // end method touchStarted
+
+	// called when the user drags along the screen
+	private void touchMoved(int lineID, float x, float y, float pressure,
+			long time) {
+		// get the stroke associated with the pointer, if any
+		PointerSlots.StrokeSlot slot = pointerSlots.get(lineID);
+
+		if (slot != null)
+			addSample(slot, x, y, pressure, time);
+	} // end method touchMoved
+
+	// pass a touch sample to the predictor and the stroke
+	private void addSample(PointerSlots.StrokeSlot slot, float x, float y,
+			float pressure, long time) {
+		slot.predictor.addSample(x, y, time);
+		slot.rawX = x;
+		slot.rawY = y;
+
+		// every sample counts toward the speed, accepted or not
+		if (slot.varied)
+			slot.rawWidth = slot.widthModel.next(slot.baseWidth, x, y,
+					pressure, time);
+
+		addPoint(slot, x, y);
+	} // end method addSample
+
+	// replace the stroke's predicted tail with one from its latest samples
+	private void predict(PointerSlots.StrokeSlot slot) {
+		markTailDirty(slot); // erase the old guess
+
+		if (predictInk && !slot.predictor.isEnabled()) {
+			Log.i(TAG, "ink prediction off; average error "
+					+ slot.predictor.getAverageError() + " px");
+			predictInk = false; // guesses were too often wrong
+		} // end if
+
+		// dabs already on the tiles can't be taken back, so stamped
+		// strokes aren't predicted
+		slot.predicted = predictInk && !StampBrush.isStamped(slot.brush)
+				&& slot.predictor.predict(PREDICTION_MS, prediction);
+
+		if (slot.predicted) {
+			slot.predictedX = prediction[0];
+			slot.predictedY = prediction[1];
+			markTailDirty(slot); // draw the new guess
+		} // end if
+	} // end method predict
+
+	// include a stroke's predicted tail, if any, in its unpainted area
+	private void markTailDirty(PointerSlots.StrokeSlot slot) {
+		if (slot.predicted) {
+			slot.markDirty(slot.penX, slot.penY);
+			slot.markDirty(slot.rawX, slot.rawY);
+			slot.markDirty(slot.predictedX, slot.predictedY);
+		} // end if
+	} // end method markTailDirty
+
+	// draw the throwaway tail from the end of a stroke through the latest
+	// touch sample to the predicted position; it is never committed, and
+	// is redrawn from newer samples on the next event
+	private void drawPrediction(Canvas canvas, PointerSlots.StrokeSlot slot) {
+		// overlapping translucent ink would show where the tail meets the
+		// stroke, so only opaque ink is predicted
+		if (Color.alpha(slot.color) != 255)
+			return;
+
+		paintTail.setColor(slot.color);
+		paintTail.setStrokeWidth(slot.varied ? slot.penWidth
+				: slot.baseWidth);
+
+		tailPath.reset();
+		tailPath.moveTo(slot.penX, slot.penY);
+		tailPath.lineTo(slot.rawX, slot.rawY);
+		tailPath.lineTo(slot.predictedX, slot.predictedY);
+		canvas.drawPath(tailPath, paintTail);
+	} // end method drawPrediction
+
+	// extend a stroke toward a new touch sample
+	private void addPoint(PointerSlots.StrokeSlot slot, float newX, float newY) {
+		// calculate how far the user moved from the last update
+		float deltaX = Math.abs(newX - slot.lastX);
+		float deltaY = Math.abs(newY - slot.lastY);
+
+		// if the distance is significant enough to matter
+		if (deltaX >= TOUCH_TOLERANCE || deltaY >= TOUCH_TOLERANCE) {
+			float endX = (newX + slot.lastX) / 2;
+			float endY = (newY + slot.lastY) / 2;
+
+			if (slot.varied) {
+				// the width changes along the curve the same way it
+				// does when the finished stroke is repainted
+				float endWidth = (slot.rawWidth + slot.lastWidth) / 2;
+				SoftwareRasterizer.flattenCurve(slot.ribbon, slot.penX,
+						slot.penY, slot.penWidth / 2, slot.lastX, slot.lastY,
+						slot.lastWidth / 2, endX, endY, endWidth / 2);
+				slot.lastWidth = slot.rawWidth;
+				slot.penWidth = endWidth;
+			} // end if
+			else if (StampBrush.isStamped(slot.brush)) {
+				// stamp along the same pieces a repaint flattens
+				slot.ribbon.count = 0;
+				slot.ribbon.add(slot.penX, slot.penY, 0);
+				SoftwareRasterizer.flattenCurve(slot.ribbon, slot.penX,
+						slot.penY, 0, slot.lastX, slot.lastY, 0, endX, endY, 0);
+				slot.stampResidual = stampAlong(slot.ribbon, slot.brush,
+						slot.color, slot.baseWidth, slot.stampResidual, tiles,
+						null, slot);
+			} // end else if
+			else // move the path to the new location
+				slot.path.quadTo(slot.lastX, slot.lastY, endX, endY);
+
+			// the curve stays inside the triangle of its three points
+			slot.markDirty(slot.penX, slot.penY);
+			slot.markDirty(slot.lastX, slot.lastY);
+			slot.markDirty(endX, endY);
+
+			// remember the stroke's direction at both of its ends
+			if (slot.segments == 0 && !slot.flushed) {
+				slot.startTanX = endX - slot.penX;
+				slot.startTanY = endY - slot.penY;
+			} // end if
+
+			slot.tanX = endX - slot.lastX;
+			slot.tanY = endY - slot.lastY;
+
+			// store the new coordinates
+			slot.record(newX, newY, slot.varied ? slot.lastWidth
+					: slot.baseWidth);
+			slot.lastX = newX;
+			slot.lastY = newY;
+			slot.penX = endX;
+			slot.penY = endY;
+
+			// keep the live path short so onDraw's cost stays bounded
+			if (++slot.segments >= FLUSH_SEGMENTS)
+				flushStroke(slot);
+			else if (slot.varied)
+				buildRibbon(slot);
+		} // end if
+	} // end method addPoint
+
+	// commit a stroke's live segments to the tiles, keeping only the
+	// pen position in the live path
+	private void flushStroke(PointerSlots.StrokeSlot slot) {
+		if (StampBrush.isStamped(slot.brush)) {
+			slot.segments = 0; // dabs are already on the tiles
+			return;
+		} // end if
+
+		if (slot.varied) {
+			flushRibbon(slot);
+			return;
+		} // end if
+
+		// pieces are drawn with flat ends that meet exactly where the next
+		// piece begins, so only the stroke's first end gets a round cap
+		preparePen(slot);
+
+		if (!slot.flushed) {
+			drawStartCap(slot);
+			slot.flushed = true;
+		} // end if
+
+		tiles.drawPath(slot.path, paintJoin);
+		slot.path.reset();
+		slot.path.moveTo(slot.penX, slot.penY);
+		slot.segments = 0;
+	} // end method flushStroke
+
+	// commit a varied stroke's live outline to the tiles without its round
+	// end, keeping the last two centerline points: the live outline then
+	// starts square to the same piece the committed one ended on, so the
+	// two meet exactly
+	private void flushRibbon(PointerSlots.StrokeSlot slot) {
+		SoftwareRasterizer.Polyline ribbon = slot.ribbon;
+		outline.build(ribbon, slot.ribbonFrom, !slot.flushed, false);
+		setPolygon(slot.path, outline.getPoints(), outline.getPointCount());
+		paintFill.setColor(slot.color);
+		tiles.drawPath(slot.path, paintFill);
+		slot.flushed = true;
+
+		int first = ribbon.count - 2;
+		System.arraycopy(ribbon.points, first * 2, ribbon.points, 0, 4);
+		System.arraycopy(ribbon.radii, first, ribbon.radii, 0, 2);
+		ribbon.count = 2;
+		slot.ribbonFrom = 1;
+		slot.segments = 0;
+		buildRibbon(slot);
+	} // end method flushRibbon
+
+	// set a varied stroke's live path to the outline of its uncommitted
+	// centerline, rounded at the finger and, until the first flush, at
+	// the start
+	private void buildRibbon(PointerSlots.StrokeSlot slot) {
+		outline.build(slot.ribbon, slot.ribbonFrom, !slot.flushed, true);
+		setPolygon(slot.path, outline.getPoints(), outline.getPointCount());
+	} // end method buildRibbon
+
+	// draw the uncommitted part of a stroke onto the screen
+	private void drawTail(Canvas canvas, PointerSlots.StrokeSlot slot) {
+		if (StampBrush.isStamped(slot.brush))
+			return; // every dab is on the tiles
+		else if (slot.varied) {
+			paintFill.setColor(slot.color);
+			canvas.drawPath(slot.path, paintFill);
+		} // end if
+		else {
+			preparePen(slot);
+
+			if (!slot.flushed)
+				canvas.drawPath(slot.path, paintPen); // whole stroke is live
+			else {
+				canvas.drawPath(slot.path, paintJoin);
+				setCap(slot, slot.penX, slot.penY, slot.tanX, slot.tanY);
+				canvas.drawPath(capPath, paintCap);
+			} // end else
+		} // end else
+	} // end method drawTail
+
+	// commit the uncommitted part of a stroke to the tiles
+	private void commitTail(PointerSlots.StrokeSlot slot) {
+		if (StampBrush.isStamped(slot.brush))
+			return; // every dab is on the tiles
+		else if (slot.varied) {
+			paintFill.setColor(slot.color);
+			tiles.drawPath(slot.path, paintFill);
+		} // end if
+		else {
+			preparePen(slot);
+
+			if (!slot.flushed)
+				tiles.drawPath(slot.path, paintPen); // whole stroke is live
+			else {
+				tiles.drawPath(slot.path, paintJoin);
+				setCap(slot, slot.penX, slot.penY, slot.tanX, slot.tanY);
+				tiles.drawPath(capPath, paintCap);
+			} // end else
+		} // end else
+	} // end method commitTail
+
+	// commit the round end at the start of a pieced stroke to the tiles;
+	// the pen paints must be prepared for slot
+	private void drawStartCap(PointerSlots.StrokeSlot slot) {
+		setCap(slot, slot.startX, slot.startY, -slot.startTanX,
+				-slot.startTanY);
+		tiles.drawPath(capPath, paintCap);
+	} // end method drawStartCap
+
+	// set capPath to a round end of slot's line at (x, y) bulging in
+	// direction (dx, dy)
+	private void setCap(PointerSlots.StrokeSlot slot, float x, float y,
+			float dx, float dy) {
+		float radius = slot.baseWidth / 2;
+		float angle = (float) Math.toDegrees(Math.atan2(dy, dx));
+
+		// a filled open arc is closed by its chord, giving a half-disc
+		capOval.set(x - radius, y - radius, x + radius, y + radius);
+		capPath.reset();
+		capPath.addArc(capOval, angle - 90, 180);
+	} // end method setCap
+
+	// called when the user finishes a touch
+	private void touchEnded(int lineID) {
+		PointerSlots.StrokeSlot slot = pointerSlots.get(lineID);
+
+		if (slot == null)
+			return; // pointer was never tracked
+
+		commitTail(slot); // draw to the tiles
+		slot.path.reset(); // reset the Path
+		markTailDirty(slot); // erase the predicted tail
+		slot.predicted = false;
+		slot.active = false; // slot is free for the next touch
+
+		// add the finished stroke to the undo history
+		StrokeRecord record;
+
+		if (StampBrush.isStamped(slot.brush))
+			record = new StrokeRecord(slot.points, slot.pointCount,
+					slot.color, slot.baseWidth, StrokeRecord.CAP_ROUND,
+					slot.brush);
+		else if (slot.varied)
+			record = new StrokeRecord(slot.points, slot.widths,
+					slot.pointCount, slot.color);
+		else
+			record = new StrokeRecord(slot.points, slot.pointCount,
+					slot.color, slot.baseWidth, StrokeRecord.CAP_ROUND);
+
+		journal.add(record, tiles, !pointerSlots.isAnyStrokeFlushed());
+		autosaveStroke(record);
+	} // end method touch_ended
+
+	// return a copy-on-write picture of the visible layers, for saving
+	public LayerStack.Snapshot snapshot() {
+		return layers.snapshot();
+	} // end method snapshot
+
+	// return true if a snapshot would include the overlay photo
+	public boolean hasVisiblePhoto() {
+		return photoLoaded && isPhotoVisible();
+	} // end method hasVisiblePhoto
+
+	// return a copy-on-write picture of the overlay photo's layer, or null
+	// if a snapshot would not include the photo
+	public TiledCanvas.Snapshot snapshotPhoto() {
+		return hasVisiblePhoto() ? layers.getLayer(PHOTO_LAYER).snapshot()
+				: null;
+	} // end method snapshotPhoto
+
+	// return the width of the drawing area; call once the engine is sized
+	public int getWidth() {
+		return tiles.getWidth();
+	} // end method getWidth
+
+	// return the height of the drawing area
+	public int getHeight() {
+		return tiles.getHeight();
+	} // end method getHeight
+
+	// ask the listener to show everything again
+	private void invalidate() {
+		if (listener != null)
+			listener.onInvalidate(null);
+	} // end method invalidate
+
+	// ask the listener to show the area dirty again
+	private void invalidate(Rect dirty) {
+		if (listener != null)
+			listener.onInvalidate(dirty);
+	} // end method invalidate
+} // end class DoodleEngine
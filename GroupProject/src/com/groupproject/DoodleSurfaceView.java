@@ -0,0 +1,662 @@
+// DoodleSurfaceView.java
+// Drawing surface whose DoodleEngine lives on a render thread of its own.
+// The UI thread only forwards touches and commands; strokes are drawn,
+// composited and posted to the Surface on the render thread, so layout,
+// dialogs and sensor callbacks never wait for drawing.
+package com.groupproject;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+public class DoodleSurfaceView extends SurfaceView implements
+		DrawingSurface, SurfaceHolder.Callback {
+	private static final String TAG = "DoodleSurfaceView"; // logging tag
+
+	// frame statistics are kept in 1 ms buckets up to 250 ms of touch
+	// latency and 0.1 ms buckets up to 50 ms of drawing time
+	private static final int LATENCY_BUCKETS = 250;
+	private static final int DRAW_TIME_BUCKETS = 500;
+
+	// touch samples that can wait for the render thread; about a second
+	// of two fingers on a fast digitizer
+	private static final int TOUCH_QUEUE_CAPACITY = 1024;
+
+	private DoodleEngine engine; // used on the render thread once attached
+	private ImageSaver imageSaver; // encodes and stores saved images
+	private HandlerThread renderThread; // owns the engine while attached
+	private Handler renderHandler; // runs tasks on renderThread
+
+	// settings as last set on the UI thread, so getters never wait for the
+	// render thread to catch up
+	private int drawingColor;
+	private int lineWidth;
+	private boolean variableWidth;
+	private int brush;
+	private int tool;
+	private boolean photoVisible;
+
+	// undo state, updated by the render thread after every change
+	private volatile boolean undoable;
+	private volatile boolean redoable;
+
+	// uptime of the oldest touch not yet drawn, or -1; set on the UI
+	// thread and taken by the render thread
+	private final AtomicLong firstUndrawnEvent = new AtomicLong(-1);
+
+	// samples offered on the UI thread and drained on the render thread;
+	// a drain is posted only when none is already waiting
+	private final TouchQueue touchQueue = new TouchQueue(TOUCH_QUEUE_CAPACITY);
+	private final AtomicBoolean drainPosted = new AtomicBoolean();
+	private final TouchResampler resampler = new TouchResampler();
+	private FramePacer framePacer; // applies touches once per frame
+
+	// objects allocated from onTouchEvent to the engine, on both threads
+	private final AllocationCounter touchAllocations = new AllocationCounter(
+			"touch allocations");
+
+	// used only on the render thread
+	private boolean surfaceReady; // true while the Surface can be drawn on
+	private int surfaceWidth; // size of the Surface
+	private int surfaceHeight;
+	private Rect frameDirty = new Rect(); // area to draw in the next frame
+	private Rect lockRect = new Rect(); // area locked for the current frame
+	private boolean framePending; // true once drawFrame has been posted
+	private LatencyHistogram touchLatency = new LatencyHistogram(
+			"touch to frame", "ms", 1, LATENCY_BUCKETS);
+	private LatencyHistogram drawTime = new LatencyHistogram("frame", "us",
+			100, DRAW_TIME_BUCKETS);
+
+	private String uri = "";
+	private Boolean isOverlay = false;
+	private OverlayLoader overlayTask; // decodes the photo, if running
+	private FillTask fillTask; // searches for a fill's area, if running
+
+	public Uri saveURI;
+
+	// DoodleSurfaceView constructor
+	public DoodleSurfaceView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		getHolder().addCallback(this);
+		imageSaver = new ImageSaver(context);
+		setEngine(new DoodleEngine());
+	} // end DoodleSurfaceView constructor
+
+	public String getUri() {
+		return uri;
+	}
+
+	public void setUri(String uri) {
+		this.uri = uri;
+	}
+
+	public Boolean getIsOverlay() {
+		return isOverlay;
+	}
+
+	public void setIsOverlay(Boolean isOverlay) {
+		this.isOverlay = isOverlay;
+	}
+
+	// return the drawing shown by this View
+	@Override
+	public DoodleEngine getEngine() {
+		return engine;
+	} // end method getEngine
+
+	// show engine's drawing instead; call before this View is attached,
+	// while no other render thread is using engine
+	@Override
+	public void setEngine(DoodleEngine engine) {
+		this.engine = engine;
+		drawingColor = engine.getDrawingColor();
+		lineWidth = engine.getLineWidth();
+		variableWidth = engine.isVariableWidth();
+		brush = engine.getBrush();
+		tool = engine.getTool();
+		photoVisible = engine.isPhotoVisible();
+		undoable = engine.canUndo();
+		redoable = engine.canRedo();
+	} // end method setEngine
+
+	// start the render thread; the engine is used only there from now on
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		engine.setListener(new DoodleEngine.Listener() {
+			@Override
+			public void onInvalidate(Rect dirty) {
+				requestFrame(dirty);
+			} // end method onInvalidate
+
+			@Override
+			public void onFillRequested(final FillTask task) {
+				// tasks are started from the UI thread
+				post(new Runnable() {
+					@Override
+					public void run() {
+						startFill(task);
+					} // end method run
+				}); // end call to post
+			} // end method onFillRequested
+		}); // end call to setListener
+
+		renderThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+		renderThread.start();
+		renderHandler = new Handler(renderThread.getLooper());
+
+		// strokes move once per display frame, however fast touches come
+		framePacer = new FramePacer(renderHandler, FramePacer
+				.getRefreshRate(getContext()), new FramePacer.Callback() {
+			@Override
+			public boolean onFrame(long frameTime) {
+				int allocations = touchAllocations.begin();
+				resampler.read(touchQueue, engine);
+				boolean more = resampler.frame(engine, frameTime);
+				updateUndoState();
+				touchAllocations.end(allocations);
+				return more;
+			} // end method onFrame
+		}); // end FramePacer
+	} // end method onAttachedToWindow
+
+	// finish the tasks already posted, then stop the render thread so the
+	// engine can be used by another surface
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow(); // destroys the Surface first
+
+		if (overlayTask != null) {
+			overlayTask.cancel(false); // would arrive after the engine left
+			overlayTask = null;
+		} // end if
+
+		if (fillTask != null) {
+			fillTask.cancel(false); // likewise
+			fillTask = null;
+		} // end if
+
+		renderHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				framePacer.stop();
+				resampler.reset();
+				engine.cancelFill(); // any fill under way is dropped
+				Looper.myLooper().quit();
+			} // end method run
+		}); // end call to post
+
+		try {
+			renderThread.join();
+		} // end try
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // end catch
+
+		renderThread = null;
+		renderHandler = null;
+	} // end method onDetachedFromWindow
+
+	// search for a fill's area in the background, then apply it on the
+	// render thread; called on the UI thread
+	private void startFill(FillTask task) {
+		if (renderHandler == null)
+			return; // detached since the fill was requested
+
+		fillTask = task;
+		task.start(new FillTask.Callback() {
+			@Override
+			public void onFillDone(final FillTask done) {
+				if (done != fillTask)
+					return; // the engine has moved on
+
+				fillTask = null;
+				runOnRenderThread(new Runnable() {
+					@Override
+					public void run() {
+						engine.applyFill(done);
+					} // end method run
+				}); // end call to runOnRenderThread
+			} // end method onFillDone
+		}); // end call to start
+	} // end method startFill
+
+	// run task on the render thread, or right away if there is none
+	private void runOnRenderThread(Runnable task) {
+		if (renderHandler != null)
+			renderHandler.post(task);
+		else
+			task.run();
+	} // end method runOnRenderThread
+
+	// called on the UI thread once the Surface exists
+	@Override
+	public void surfaceCreated(SurfaceHolder holder) {
+		// wait for surfaceChanged, which gives the size
+	} // end method surfaceCreated
+
+	// called on the UI thread when the Surface is created or resized
+	@Override
+	public void surfaceChanged(SurfaceHolder holder, int format,
+			final int width, final int height) {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setSize(width, height);
+				surfaceWidth = width;
+				surfaceHeight = height;
+				surfaceReady = true;
+				requestFrame(null); // a new Surface has no content
+			} // end method run
+		}); // end call to runOnRenderThread
+
+		// decode the photo to draw on in the background, sized for the view
+		if (isOverlay && uri != null && !engine.isPhotoLoaded()
+				&& overlayTask == null)
+			loadOverlay(width, height);
+	} // end method surfaceChanged
+
+	// called on the UI thread before the Surface goes away; the render
+	// thread must not be drawing on it once this returns
+	@Override
+	public void surfaceDestroyed(SurfaceHolder holder) {
+		final CountDownLatch stopped = new CountDownLatch(1);
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				surfaceReady = false;
+				stopped.countDown();
+			} // end method run
+		}); // end call to runOnRenderThread
+
+		try {
+			stopped.await();
+		} // end try
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // end catch
+	} // end method surfaceDestroyed
+
+	// decode the overlay photo and hand it to the render thread
+	private void loadOverlay(int width, int height) {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setPhotoPending(true);
+			} // end method run
+		}); // end call to runOnRenderThread
+
+		overlayTask = new OverlayLoader(getContext(), width, height,
+				new OverlayLoader.Callback() {
+			@Override
+			public void onOverlayLoaded(final Bitmap photo) {
+				overlayTask = null;
+
+				if (photo == null)
+					isOverlay = false; // draw on a blank page instead
+
+				runOnRenderThread(new Runnable() {
+					@Override
+					public void run() {
+						if (photo != null)
+							engine.applyOverlay(photo); // under the drawing
+						else
+							engine.setPhotoPending(false);
+					} // end method run
+				}); // end call to runOnRenderThread
+			} // end method onOverlayLoaded
+		}); // end OverlayLoader
+		overlayTask.execute(Uri.parse(uri));
+	} // end method loadOverlay
+
+	// add dirty (null for everything) to the next frame, posting the frame
+	// unless one is waiting; tasks already queued run before it, so a
+	// burst of touches is drawn once. Called on the render thread
+	private void requestFrame(Rect dirty) {
+		if (dirty == null)
+			frameDirty.set(0, 0, surfaceWidth, surfaceHeight);
+		else
+			frameDirty.union(dirty);
+
+		if (!framePending && renderHandler != null) {
+			framePending = true;
+			renderHandler.post(drawFrame);
+		} // end if
+	} // end method requestFrame
+
+	// draws the dirty area onto the Surface on the render thread
+	private final Runnable drawFrame = new Runnable() {
+		@Override
+		public void run() {
+			framePending = false;
+
+			if (!surfaceReady || frameDirty.isEmpty())
+				return;
+
+			long drawStart = System.nanoTime();
+
+			// the Surface may enlarge the area to what its buffer needs,
+			// and clips the canvas to it
+			lockRect.set(frameDirty);
+			frameDirty.setEmpty();
+			Canvas canvas = getHolder().lockCanvas(lockRect);
+
+			if (canvas == null)
+				return; // Surface is gone
+
+			try {
+				engine.draw(canvas);
+			} // end try
+			finally {
+				getHolder().unlockCanvasAndPost(canvas);
+			} // end finally
+
+			recordFrame(drawStart);
+		} // end method run
+	}; // end drawFrame
+
+	// add the frame that began drawing at drawStart to the statistics
+	private void recordFrame(long drawStart) {
+		drawTime.record((System.nanoTime() - drawStart) / 1000);
+		long eventTime = firstUndrawnEvent.getAndSet(-1);
+
+		// measured to the frame being posted; it still has to be
+		// composited and scanned out, so the screen lags a little more
+		if (eventTime >= 0)
+			touchLatency.record(SystemClock.uptimeMillis() - eventTime);
+	} // end method recordFrame
+
+	// queue the touch's samples for the render thread; nothing here
+	// allocates or waits for the render thread
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		// latency is measured from the oldest touch the screen hasn't shown
+		firstUndrawnEvent.compareAndSet(-1, event.getEventTime());
+		int allocations = touchAllocations.begin();
+		touchQueue.offer(event);
+
+		// one drain takes every sample queued before it runs
+		if (drainPosted.compareAndSet(false, true))
+			runOnRenderThread(drainTouches);
+
+		touchAllocations.end(allocations);
+		touchAllocations.countEvent();
+
+		return true; // consume the touch event
+	} // end method onTouchEvent
+
+	// applies the queued touch samples on the render thread
+	private final Runnable drainTouches = new Runnable() {
+		@Override
+		public void run() {
+			// cleared first, so samples queued during the drain post again
+			drainPosted.set(false);
+
+			// touches and lifts are applied now, moves at the next frame
+			int allocations = touchAllocations.begin();
+			resampler.read(touchQueue, engine);
+			framePacer.start();
+			updateUndoState();
+			touchAllocations.end(allocations);
+		} // end method run
+	}; // end drainTouches
+
+	// publish the engine's undo state to the UI thread
+	private void updateUndoState() {
+		undoable = engine.canUndo();
+		redoable = engine.canRedo();
+	} // end method updateUndoState
+
+	// set the painted line's color
+	public void setDrawingColor(final int color) {
+		drawingColor = color;
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setDrawingColor(color);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method setDrawingColor
+
+	// return the painted line's color
+	public int getDrawingColor() {
+		return drawingColor;
+	} // end method getDrawingColor
+
+	// set the painted line's width
+	public void setLineWidth(final int width) {
+		lineWidth = width;
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setLineWidth(width);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method setLineWidth
+
+	// return the painted line's width
+	public int getLineWidth() {
+		return lineWidth;
+	} // end method getLineWidth
+
+	// make new strokes follow pressure and speed around the line's width
+	public void setVariableWidth(final boolean variable) {
+		variableWidth = variable;
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setVariableWidth(variable);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method setVariableWidth
+
+	// return true if new strokes vary in width
+	public boolean isVariableWidth() {
+		return variableWidth;
+	} // end method isVariableWidth
+
+	// choose the brush for new strokes; one of the StampBrush constants
+	public void setBrush(final int brush) {
+		this.brush = brush;
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setBrush(brush);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method setBrush
+
+	// return the StampBrush constant for new strokes
+	public int getBrush() {
+		return brush;
+	} // end method getBrush
+
+	// choose what touching the view does; one of the TOOL_ constants
+	public void setTool(final int tool) {
+		this.tool = tool;
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setTool(tool);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method setTool
+
+	// return the current TOOL_ constant
+	public int getTool() {
+		return tool;
+	} // end method getTool
+
+	// clear the strokes, keeping the overlay photo
+	public void clear() {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.clear();
+				updateUndoState();
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method clear
+
+	// put strokes recovered by an AutosaveJournal back under the drawing
+	public void restoreStrokes(final List<StrokeRecord> strokes,
+			final int width, final int height) {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.restoreStrokes(strokes, width, height);
+				updateUndoState();
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method restoreStrokes
+
+	// take back the most recent stroke on the render thread; returns false
+	// if there was none when called
+	public boolean undo() {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.undo();
+				updateUndoState();
+			} // end method run
+		}); // end call to runOnRenderThread
+
+		return undoable;
+	} // end method undo
+
+	// redraw the most recently undone stroke on the render thread; returns
+	// false if there was none when called
+	public boolean redo() {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.redo();
+				updateUndoState();
+			} // end method run
+		}); // end call to runOnRenderThread
+
+		return redoable;
+	} // end method redo
+
+	// return true if there is a stroke that undo can take back
+	public boolean canUndo() {
+		return undoable;
+	} // end method canUndo
+
+	// return true if there is an undone stroke that redo can restore
+	public boolean canRedo() {
+		return redoable;
+	} // end method canRedo
+
+	// show or hide the overlay photo under the strokes
+	public void setPhotoVisible(final boolean visible) {
+		photoVisible = visible;
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				engine.setPhotoVisible(visible);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method setPhotoVisible
+
+	// return true if the overlay photo is shown
+	public boolean isPhotoVisible() {
+		return photoVisible;
+	} // end method isPhotoVisible
+
+	// save the current image to the Gallery
+	public void saveImage(Boolean saved) {
+		saveImage(saved, null);
+	} // end method saveImage
+
+	// snapshot the drawing on the render thread and save it in the
+	// background; listener (if not null) receives the image's Uri, or null
+	// on failure, on the UI thread
+	public void saveImage(Boolean saved, final ImageSaver.Callback listener) {
+		final ImageSaver.Callback callback = ImageSaver.showResult(
+				getContext(), saved, new ImageSaver.Callback() {
+			@Override
+			public void onImageSaved(Uri uri) {
+				saveURI = uri;
+
+				if (listener != null)
+					listener.onImageSaved(uri);
+			} // end method onImageSaved
+		}); // end call to showResult
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				// later strokes can't change the copy-on-write snapshot
+				imageSaver.save(engine.snapshot(), engine.hasVisiblePhoto(),
+						callback);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method saveImage
+
+	// copy the strokes and photo on the render thread and save the drawing
+	// rendered from them at scale times its size in the background
+	public void saveLargeImage(final float scale) {
+		final ImageSaver.Callback callback = ImageSaver.showResult(
+				getContext(), true, null);
+
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				if (!engine.isSized())
+					return; // nothing drawn yet
+
+				imageSaver.saveRendered(engine.getStrokes(), engine
+						.snapshotPhoto(), engine.getWidth(), engine
+						.getHeight(), scale, callback);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method saveLargeImage
+
+	// log the touch latency and frame time percentiles
+	public void logFrameStats() {
+		runOnRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				Log.i(TAG, touchLatency.toString());
+				Log.i(TAG, drawTime.toString());
+				Log.i(TAG, "touch queue: max depth "
+						+ touchQueue.getMaxDepth() + ", dropped "
+						+ touchQueue.getDroppedCount());
+				Log.i(TAG, engine.getDabCache().toString());
+				Log.i(TAG, engine.getHistoryStats());
+				Log.i(TAG, BitmapPool.getShared().toString());
+				Log.i(TAG, touchAllocations.toString());
+
+				// adb shell setprop log.tag.DoodleSurfaceView DEBUG
+				if (Log.isLoggable(TAG, Log.DEBUG) && engine.isSized())
+					engine.compareWithSoftwareRasterizer(
+							DoodleEngine.RASTERIZER_TOLERANCE);
+			} // end method run
+		}); // end call to runOnRenderThread
+	} // end method logFrameStats
+} // end class DoodleSurfaceView
@@ -2,41 +2,48 @@
 // Main View for the Doodlz app.
 package com.groupproject;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
+import java.io.PrintWriter;
+import java.util.List;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.Point;
+import android.graphics.Rect;
 import android.net.Uri;
-import android.provider.MediaStore.Images;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
-import android.widget.Toast;
-
-// the main screen that is painted
-public class DoodleView extends View {
-	// used to determine whether user moved a finger enough to draw again
-	private static final float TOUCH_TOLERANCE = 10;
-
-	private Bitmap bitmap; // drawing area for display or saving
-	private Canvas bitmapCanvas; // used to draw on bitmap
-	private Paint paintScreen; // use to draw bitmap onto screen
-	private Paint paintLine; // used to draw lines onto bitmap
-	private HashMap<Integer, Path> pathMap; // current Paths being drawn
-	private HashMap<Integer, Point> previousPointMap; // current Points
+
+// the main screen that is painted; drawing happens on the UI thread
+public class DoodleView extends View implements DrawingSurface {
+	private static final String TAG = "DoodleView"; // error logging tag
+
+	// frame statistics are kept in 1 ms buckets up to 250 ms of touch
+	// latency and 0.1 ms buckets up to 50 ms of drawing time
+	private static final int LATENCY_BUCKETS = 250;
+	private static final int DRAW_TIME_BUCKETS = 500;
+
+	// touch samples that can wait between onTouchEvent and the engine
+	private static final int TOUCH_QUEUE_CAPACITY = 512;
+
+	private DoodleEngine engine; // the drawing and its tools
+	private ImageSaver imageSaver; // encodes and stores saved images
+	private TouchQueue touchQueue = new TouchQueue(TOUCH_QUEUE_CAPACITY);
+	private TouchResampler resampler = new TouchResampler(); // per frame
+	private FramePacer framePacer; // applies touches once per frame
+	private long firstUndrawnEvent = -1; // uptime of oldest undrawn touch
+	private LatencyHistogram touchLatency = new LatencyHistogram(
+			"touch to onDraw", "ms", 1, LATENCY_BUCKETS);
+	private LatencyHistogram drawTime = new LatencyHistogram("onDraw",
+			"us", 100, DRAW_TIME_BUCKETS);
+	private AllocationCounter touchAllocations = new AllocationCounter(
+			"touch allocations"); // from onTouchEvent to the engine
 	private String uri = "";
 
 	public String getUri() {
@@ -55,262 +62,364 @@ public class DoodleView extends View {
 		this.isOverlay = isOverlay;
 	}
 
-	private Boolean isOverlay;
+	private Boolean isOverlay = false;
 
 	public Uri saveURI;
 
-	private Bitmap bMap;
+	private OverlayLoader overlayTask; // decodes the photo, if running
+	private FillTask fillTask; // searches for a fill's area, if running
 
 	// DoodleView constructor initializes the DoodleView
 	public DoodleView(Context context, AttributeSet attrs) {
 		super(context, attrs); // pass context to View's constructor
-
-		paintScreen = new Paint(); // used to display bitmap onto screen
-
-		// set the initial display settings for the painted line
-		paintLine = new Paint();
-		paintLine.setAntiAlias(true); // smooth edges of drawn line
-		paintLine.setColor(Color.BLACK); // default color is black
-		paintLine.setStyle(Paint.Style.STROKE); // solid line
-		paintLine.setStrokeWidth(5); // set the default line width
-		paintLine.setStrokeCap(Paint.Cap.ROUND); // rounded line ends
-		pathMap = new HashMap<Integer, Path>();
-		previousPointMap = new HashMap<Integer, Point>();
+		engine = new DoodleEngine();
+		imageSaver = new ImageSaver(context);
+
+		// strokes move once per display frame, however fast touches come
+		framePacer = new FramePacer(new Handler(),
+				FramePacer.getRefreshRate(context), new FramePacer.Callback() {
+			@Override
+			public boolean onFrame(long frameTime) {
+				int allocations = touchAllocations.begin();
+				resampler.read(touchQueue, engine);
+				boolean more = resampler.frame(engine, frameTime);
+				touchAllocations.end(allocations);
+				return more;
+			} // end method onFrame
+		}); // end FramePacer
 	} // end DoodleView constructor
 
-	// Method onSizeChanged creates BitMap and Canvas after app displays
+	// return the drawing shown by this View
+	@Override
+	public DoodleEngine getEngine() {
+		return engine;
+	} // end method getEngine
+
+	// show engine's drawing instead; call before this View is attached
+	@Override
+	public void setEngine(DoodleEngine engine) {
+		this.engine = engine;
+	} // end method setEngine
+
+	// start sending the engine's changed areas to invalidate
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		engine.setListener(new DoodleEngine.Listener() {
+			@Override
+			public void onInvalidate(Rect dirty) {
+				if (dirty == null)
+					invalidate();
+				else
+					invalidate(dirty);
+			} // end method onInvalidate
+
+			@Override
+			public void onFillRequested(FillTask task) {
+				startFill(task);
+			} // end method onFillRequested
+		}); // end call to setListener
+	} // end method onAttachedToWindow
+
+	// a photo still loading would arrive after the engine moved on
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		framePacer.stop();
+		resampler.reset();
+
+		if (overlayTask != null) {
+			overlayTask.cancel(false);
+			overlayTask = null;
+		} // end if
+
+		if (fillTask != null) {
+			fillTask.cancel(false);
+			fillTask = null;
+			engine.cancelFill();
+		} // end if
+	} // end method onDetachedFromWindow
+
+	// search for a fill's area in the background and apply it when done
+	private void startFill(FillTask task) {
+		fillTask = task;
+		task.start(new FillTask.Callback() {
+			@Override
+			public void onFillDone(FillTask done) {
+				if (done != fillTask)
+					return; // the engine has moved on
+
+				fillTask = null;
+				engine.applyFill(done);
+			} // end method onFillDone
+		}); // end call to start
+	} // end method startFill
+
+	// Method onSizeChanged sizes the tiled drawing area after app displays
 	@Override
 	public void onSizeChanged(int w, int h, int oldW, int oldH) {
-		bitmap = Bitmap.createBitmap(getWidth(), getHeight(),
-				Bitmap.Config.ARGB_8888);
-		// bitmapCanvas = new Canvas(bitmap);
-
-		Log.d("lol", "uri is" + uri);
-
-		Log.d("lol", "iOVerlay	 is" + isOverlay);
-
-		if (isOverlay && uri != null) {
-			Uri uri2 = Uri.parse(uri);
-			Log.d("lol", "uri2 is" + uri2.toString());
-			InputStream is = null;
-			// .decodeFile("/sdcard/DCIM/Camera/1335401735175.jpg").copy(
-			try {
-				is = getContext().getContentResolver().openInputStream(uri2);
-			} catch (FileNotFoundException e) {
-				Log.d("oops", "the file was not found");
-				isOverlay = false;
-			}
-			bMap = BitmapFactory.decodeStream(is).copy(Bitmap.Config.ARGB_8888,
-					true);
-			bitmap = bMap;
-		} else
-			Log.d("lol", "uri is" + uri);
-
-		// potential code to load a background image
-		// bMap = BitmapFactory
-		// .decodeFile("/sdcard/DCIM/Camera/1335401735175.jpg").copy(
-		// Bitmap.Config.ARGB_8888, true);
-		// bitmap = bMap;
-		// if (bMap.isMutable())
-		bitmapCanvas = new Canvas(bitmap);
-
-		// bitmapCanvas.drawBitmap(bMap, 0f, 0f, null);
-
-		// bitmap.eraseColor(Color.WHITE); // erase the BitMap with white
-		if (isOverlay)
-			bitmap = bMap;
-		else
-			bitmap.eraseColor(Color.WHITE); // erase the BitMap with white
+		engine.setSize(w, h);
+
+		// decode the photo to draw on in the background, sized for the view
+		if (isOverlay && uri != null && !engine.isPhotoLoaded()
+				&& overlayTask == null) {
+			engine.setPhotoPending(true);
+			overlayTask = new OverlayLoader(getContext(), w, h,
+					new OverlayLoader.Callback() {
+				@Override
+				public void onOverlayLoaded(Bitmap photo) {
+					overlayTask = null;
+
+					if (photo != null)
+						engine.applyOverlay(photo); // place under the drawing
+					else {
+						isOverlay = false; // draw on a blank page instead
+						engine.setPhotoPending(false);
+					} // end else
+				} // end method onOverlayLoaded
+			}); // end OverlayLoader
+			overlayTask.execute(Uri.parse(uri));
+		} // end if
 	} // end method onSizeChanged
 
-	// clear the painting
+	// show or hide the overlay photo under the strokes
+	public void setPhotoVisible(boolean visible) {
+		engine.setPhotoVisible(visible);
+	} // end method setPhotoVisible
+
+	// return true if the overlay photo is shown
+	public boolean isPhotoVisible() {
+		return engine.isPhotoVisible();
+	} // end method isPhotoVisible
+
+	// clear the strokes, keeping the overlay photo
 	public void clear() {
-		pathMap.clear(); // remove all paths
-		previousPointMap.clear(); // remove all previous points
-		bitmap.eraseColor(Color.WHITE); // clear the bitmap
-		invalidate(); // refresh the screen
+		engine.clear();
 	} // end method clear
 
+	// put strokes recovered by an AutosaveJournal back under the drawing
+	public void restoreStrokes(List<StrokeRecord> strokes, int width,
+			int height) {
+		engine.restoreStrokes(strokes, width, height);
+	} // end method restoreStrokes
+
+	// take back the most recent stroke; returns false if there is none
+	public boolean undo() {
+		return engine.undo();
+	} // end method undo
+
+	// redraw the most recently undone stroke; returns false if there is none
+	public boolean redo() {
+		return engine.redo();
+	} // end method redo
+
+	// return true if there is a stroke that undo can take back
+	public boolean canUndo() {
+		return engine.canUndo();
+	} // end method canUndo
+
+	// return true if there is an undone stroke that redo can restore
+	public boolean canRedo() {
+		return engine.canRedo();
+	} // end method canRedo
+
+	// return a copy of the current strokes; the records are immutable, so
+	// the copy can be written out from any thread
+	public List<StrokeRecord> getStrokes() {
+		return engine.getStrokes();
+	} // end method getStrokes
+
+	// write the current strokes as a stroke document
+	public void saveDocument(OutputStream out) throws IOException {
+		engine.saveDocument(out, isOverlay ? uri : null);
+	} // end method saveDocument
+
+	// replace the strokes with those of a stroke document, keeping any
+	// overlay photo; time taken depends on the number of strokes read
+	public void loadDocument(InputStream in) throws IOException {
+		engine.loadDocument(in);
+	} // end method loadDocument
+
+	// render the current strokes with SoftwareRasterizer and compare the
+	// result to the stroke layer drawn by Canvas; channels differing by
+	// more than tolerance count as differing pixels
+	public SoftwareRasterizer.Comparison compareWithSoftwareRasterizer(
+			int tolerance) {
+		return engine.compareWithSoftwareRasterizer(tolerance);
+	} // end method compareWithSoftwareRasterizer
+
+	// choose what touching the view does; one of the TOOL_ constants
+	public void setTool(int tool) {
+		engine.setTool(tool);
+	} // end method setTool
+
+	// return the current TOOL_ constant
+	public int getTool() {
+		return engine.getTool();
+	} // end method getTool
+
 	// set the painted line's color
 	public void setDrawingColor(int color) {
-		paintLine.setColor(color);
+		engine.setDrawingColor(color);
 	} // end method setDrawingColor
 
 	// return the painted line's color
 	public int getDrawingColor() {
-		return paintLine.getColor();
+		return engine.getDrawingColor();
 	} // end method getDrawingColor
 
 	// set the painted line's width
 	public void setLineWidth(int width) {
-		paintLine.setStrokeWidth(width);
+		engine.setLineWidth(width);
 	} // end method setLineWidth
 
 	// return the painted line's width
 	public int getLineWidth() {
-		return (int) paintLine.getStrokeWidth();
+		return engine.getLineWidth();
 	} // end method getLineWidth
 
+	// make new strokes follow pressure and speed around the line's width
+	public void setVariableWidth(boolean variable) {
+		engine.setVariableWidth(variable);
+	} // end method setVariableWidth
+
+	// return true if new strokes vary in width
+	public boolean isVariableWidth() {
+		return engine.isVariableWidth();
+	} // end method isVariableWidth
+
+	// choose the brush for new strokes; one of the StampBrush constants
+	public void setBrush(int brush) {
+		engine.setBrush(brush);
+	} // end method setBrush
+
+	// return the StampBrush constant for new strokes
+	public int getBrush() {
+		return engine.getBrush();
+	} // end method getBrush
+
 	// called each time this View is drawn
 	@Override
 	protected void onDraw(Canvas canvas) {
-		// draw the background screen
-		canvas.drawBitmap(bitmap, 0, 0, paintScreen);
-
-		// for each path currently being drawn
-		for (Integer key : pathMap.keySet())
-			canvas.drawPath(pathMap.get(key), paintLine); // draw line
+		long drawStart = System.nanoTime();
+		engine.draw(canvas);
+		recordFrame(drawStart);
 	} // end method onDraw
 
+	// add the frame that began drawing at drawStart to the statistics;
+	// two clock reads and two array increments, so well under 1% of a frame
+	private void recordFrame(long drawStart) {
+		drawTime.record((System.nanoTime() - drawStart) / 1000);
+
+		// measured to the end of onDraw; the frame still has to be
+		// composited and scanned out, so the screen lags a little more
+		if (firstUndrawnEvent >= 0) {
+			touchLatency.record(SystemClock.uptimeMillis() - firstUndrawnEvent);
+			firstUndrawnEvent = -1;
+		} // end if
+	} // end method recordFrame
+
+	// write the touch latency and onDraw time histograms to out
+	public void dumpFrameStats(PrintWriter out) {
+		touchLatency.dump(out);
+		drawTime.dump(out);
+	} // end method dumpFrameStats
+
+	// log the touch latency and onDraw time percentiles
+	public void logFrameStats() {
+		Log.i(TAG, touchLatency.toString());
+		Log.i(TAG, drawTime.toString());
+		Log.i(TAG, "touch queue: max depth " + touchQueue.getMaxDepth()
+				+ ", dropped " + touchQueue.getDroppedCount());
+		Log.i(TAG, engine.getDabCache().toString());
+		Log.i(TAG, engine.getHistoryStats());
+		Log.i(TAG, BitmapPool.getShared().toString());
+		Log.i(TAG, touchAllocations.toString());
+
+		// adb shell setprop log.tag.DoodleView DEBUG turns this on
+		if (Log.isLoggable(TAG, Log.DEBUG) && engine.isSized())
+			engine.compareWithSoftwareRasterizer(
+					DoodleEngine.RASTERIZER_TOLERANCE);
+	} // end method logFrameStats
+
+	// forget the frame statistics gathered so far
+	public void resetFrameStats() {
+		touchLatency.reset();
+		drawTime.reset();
+		touchAllocations.reset();
+	} // end method resetFrameStats
+
 	// handle touch event
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
-		// get the event type and the ID of the pointer that caused the event
-		int action = event.getActionMasked(); // event type
-		int actionIndex = event.getActionIndex(); // pointer (i.e., finger)
-
-		// determine which type of action the given MotionEvent
-		// represents, then call the corresponding handling method
-		if (action == MotionEvent.ACTION_DOWN
-				|| action == MotionEvent.ACTION_POINTER_DOWN) {
-			touchStarted(event.getX(actionIndex), event.getY(actionIndex),
-					event.getPointerId(actionIndex));
-		} // end if
-		else if (action == MotionEvent.ACTION_UP
-				|| action == MotionEvent.ACTION_POINTER_UP) {
-			touchEnded(event.getPointerId(actionIndex));
-		} // end else if
-		else {
-			touchMoved(event);
-		} // end else
-
-		invalidate(); // redraw
+		// latency is measured from the oldest touch the screen hasn't shown
+		if (firstUndrawnEvent < 0)
+			firstUndrawnEvent = event.getEventTime();
+
+		// touches and lifts are applied now, moves at the next frame
+		int allocations = touchAllocations.begin();
+		touchQueue.offer(event);
+		resampler.read(touchQueue, engine);
+		framePacer.start();
+		touchAllocations.end(allocations);
+		touchAllocations.countEvent();
 		return true; // consume the touch event
 	} // end method onTouchEvent
 
-	// called when the user touches the screen
-	private void touchStarted(float x, float y, int lineID) {
-		Path path; // used to store the path for the given touch id
-		Point point; // used to store the last point in path
+	// turn predicted ink on or off
+	public void setInkPrediction(boolean enabled) {
+		engine.setInkPrediction(enabled);
+	} // end method setInkPrediction
 
-		// if there is already a path for lineID
-		if (pathMap.containsKey(lineID)) {
-			path = pathMap.get(lineID); // get the Path
-			path.reset(); // reset the Path because a new touch has started
-			point = previousPointMap.get(lineID); // get Path's last point
-		} // end if
-		else {
-			path = new Path(); // create a new Path
-			pathMap.put(lineID, path); // add the Path to Map
-			point = new Point(); // create a new Point
-			previousPointMap.put(lineID, point); // add the Point to the Map
-		} // end else
-
-		// move to the coordinates of the touch
-		path.moveTo(x, y);
-		point.x = (int) x;
-		point.y = (int) y;
-	} // end method touchStarted
-
-	// called when the user drags along the screen
-	private void touchMoved(MotionEvent event) {
-		// for each of the pointers in the given MotionEvent
-		for (int i = 0; i < event.getPointerCount(); i++) {
-			// get the pointer ID and pointer index
-			int pointerID = event.getPointerId(i);
-			int pointerIndex = event.findPointerIndex(pointerID);
-
-			// if there is a path associated with the pointer
-			if (pathMap.containsKey(pointerID)) {
-				// get the new coordinates for the pointer
-				float newX = event.getX(pointerIndex);
-				float newY = event.getY(pointerIndex);
-
-				// get the Path and previous Point associated with
-				// this pointer
-				Path path = pathMap.get(pointerID);
-				Point point = previousPointMap.get(pointerID);
-
-				// calculate how far the user moved from the last update
-				float deltaX = Math.abs(newX - point.x);
-				float deltaY = Math.abs(newY - point.y);
-
-				// if the distance is significant enough to matter
-				if (deltaX >= TOUCH_TOLERANCE || deltaY >= TOUCH_TOLERANCE) {
-					// move the path to the new location
-					path.quadTo(point.x, point.y, (newX + point.x) / 2,
-							(newY + point.y) / 2);
-
-					// store the new coordinates
-					point.x = (int) newX;
-					point.y = (int) newY;
-				} // end if
-			} // end if
-		} // end for
-	} // end method touchMoved
-
-	// called when the user finishes a touch
-	private void touchEnded(int lineID) {
-		Path path = pathMap.get(lineID); // get the corresponding Path
-		bitmapCanvas.drawPath(path, paintLine); // draw to bitmapCanvas
-		path.reset(); // reset the Path
-	} // end method touch_ended
+	// return true if predicted ink is drawn; prediction turns itself off
+	// when its guesses are too far off
+	public boolean isInkPrediction() {
+		return engine.isInkPrediction();
+	} // end method isInkPrediction
+
+	// return the largest average prediction error of any finger, in pixels
+	public float getPredictionError() {
+		return engine.getPredictionError();
+	} // end method getPredictionError
 
 	// save the current image to the Gallery
 	// "saved" means that it's just being saved
 	// false means that we're hacking this to add it to the gallery
 	// and silently save
 	public void saveImage(Boolean saved) {
-		// use "Doodlz" followed by current time as the image file name
-		String fileName = "Doodlz" + System.currentTimeMillis();
-
-		// create a ContentValues and configure new image's data
-		ContentValues values = new ContentValues();
-		values.put(Images.Media.TITLE, fileName);
-		values.put(Images.Media.DATE_ADDED, System.currentTimeMillis());
-		values.put(Images.Media.MIME_TYPE, "image/jpg");
-
-		// get a Uri for the location to save the file
-		Uri uri = getContext().getContentResolver().insert(
-				Images.Media.EXTERNAL_CONTENT_URI, values);
-		saveURI = uri;
-
-		try {
-			// get an OutputStream to uri
-			OutputStream outStream = getContext().getContentResolver()
-					.openOutputStream(uri);
-
-			// copy the bitmap to the OutputStream
-			bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outStream);
-
-			// flush and close the OutputStream
-			outStream.flush(); // empty the buffer
-			outStream.close(); // close the stream
-			Toast message = Toast
-					.makeText(getContext(), "", Toast.LENGTH_SHORT);
-			if (saved) {
-				// display a message indicating that the image was saved
-				message = Toast.makeText(getContext(), R.string.message_saved,
-						Toast.LENGTH_SHORT);
-
-			} else {
-				message = Toast.makeText(getContext(), R.string.message_added,
-						Toast.LENGTH_SHORT);
-			}
-			message.setGravity(Gravity.CENTER, message.getXOffset() / 2,
-					message.getYOffset() / 2);
-			message.show(); // display the Toast
-
-		} // end try
-		catch (IOException ex) {
-			// display a message indicating that the image was saved
-			Toast message = Toast.makeText(getContext(),
-					R.string.message_error_saving, Toast.LENGTH_SHORT);
-			message.setGravity(Gravity.CENTER, message.getXOffset() / 2,
-					message.getYOffset() / 2);
-			message.show(); // display the Toast
-		} // end catch
+		saveImage(saved, null);
 	} // end method saveImage
+
+	// save the current image in the background; drawing can continue
+	// while it is encoded, and listener (if not null) receives the image's
+	// Uri, or null on failure, once the save finishes
+	public void saveImage(final Boolean saved,
+			final ImageSaver.Callback listener) {
+		// the snapshot shares tiles copy-on-write, so later strokes can't
+		// change what gets saved; hidden layers are left out
+		imageSaver.save(engine.snapshot(), engine.hasVisiblePhoto(),
+				ImageSaver.showResult(getContext(), saved,
+						new ImageSaver.Callback() {
+			@Override
+			public void onImageSaved(Uri uri) {
+				saveURI = uri;
+
+				if (listener != null)
+					listener.onImageSaved(uri);
+			} // end method onImageSaved
+		})); // end call to save
+	} // end method saveImage
+
+	// save the drawing rendered from its strokes at scale times its size,
+	// over the photo if it is shown; rendering is done in the background
+	public void saveLargeImage(float scale) {
+		if (!engine.isSized())
+			return; // nothing drawn yet
+
+		imageSaver.saveRendered(engine.getStrokes(), engine.snapshotPhoto(),
+				engine.getWidth(), engine.getHeight(), scale, ImageSaver
+						.showResult(getContext(), true, null));
+	} // end method saveLargeImage
 } // end class DoodleView
 
 /**************************************************************************
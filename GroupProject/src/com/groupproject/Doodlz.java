@@ -2,6 +2,8 @@
 // Draws View which changes color in response to user touches.
 package com.groupproject;
 
+import java.io.File;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.app.Activity;
@@ -18,9 +20,11 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.Button;
@@ -29,13 +33,17 @@ import android.widget.SeekBar;
 import android.widget.SeekBar.OnSeekBarChangeListener;
 
 public class Doodlz extends Activity {
-	private DoodleView doodleView; // drawing View
+	private DrawingSurface doodleView; // drawing View
 	private SensorManager sensorManager; // monitors accelerometer
 	private float acceleration; // acceleration
 	private float currentAcceleration; // current acceleration
 	private float lastAcceleration; // last acceleration
 	private AtomicBoolean dialogIsVisible = new AtomicBoolean(); // false
 	private Boolean isOverlay = false;
+	private AutosaveJournal autosave; // keeps the drawing on disk
+
+	// directory under the app's files holding the autosaved drawings
+	private static final String AUTOSAVE_DIRECTORY = "autosave";
 
 	// create menu ids for each menu option
 	private static final int COLOR_MENU_ID = Menu.FIRST;
@@ -44,6 +52,27 @@ public class Doodlz extends Activity {
 	private static final int CLEAR_MENU_ID = Menu.FIRST + 3;
 	private static final int SAVE_MENU_ID = Menu.FIRST + 4;
 	private static final int ADD_MENU_ID = Menu.FIRST + 5;
+	private static final int UNDO_MENU_ID = Menu.FIRST + 6;
+	private static final int REDO_MENU_ID = Menu.FIRST + 7;
+	private static final int LASSO_MENU_ID = Menu.FIRST + 8;
+	private static final int PHOTO_MENU_ID = Menu.FIRST + 9;
+	private static final int RENDER_MENU_ID = Menu.FIRST + 10;
+	private static final int PRESSURE_MENU_ID = Menu.FIRST + 11;
+	private static final int BRUSH_MENU_ID = Menu.FIRST + 12;
+
+	// items of the Brush submenu, one per StampBrush constant in order
+	private static final int BRUSH_GROUP = 1;
+	private static final int BRUSH_ITEM_ID = Menu.FIRST + 13;
+	private static final int[] BRUSH_NAMES = { R.string.brush_pen,
+			R.string.brush_airbrush, R.string.brush_chalk,
+			R.string.brush_marker };
+
+	private static final int FILL_MENU_ID = BRUSH_ITEM_ID
+			+ StampBrush.BRUSH_COUNT;
+	private static final int LARGE_MENU_ID = FILL_MENU_ID + 1;
+
+	// size of a large image relative to the screen
+	private static final float LARGE_IMAGE_SCALE = 2;
 
 	// value used to determine whether user shook the device to erase
 	private static final int ACCELERATION_THRESHOLD = 15000;
@@ -51,6 +80,10 @@ public class Doodlz extends Activity {
 	// variable that refers to a Choose Color or Choose Line Width dialog
 	private Dialog currentDialog;
 
+	// line width preview, taken from the BitmapPool while its dialog shows
+	private Bitmap widthBitmap;
+	private Canvas widthCanvas; // draws on widthBitmap
+
 	// called when this Activity is loaded
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -58,7 +91,7 @@ public class Doodlz extends Activity {
 		setContentView(R.layout.main); // inflate the layout
 
 		// get reference to the DoodleView
-		doodleView = (DoodleView) findViewById(R.id.doodleView);
+		doodleView = (DrawingSurface) findViewById(R.id.doodleView);
 
 		Intent i = getIntent();
 		String s = i.getStringExtra("uri");
@@ -71,6 +104,19 @@ public class Doodlz extends Activity {
 			isOverlay = true;
 		}
 
+		// bring back the drawing left unsaved last time on this photo, and
+		// keep saving it as it changes; each photo's is kept separately
+		autosave = new AutosaveJournal(new File(getFilesDir(),
+				AUTOSAVE_DIRECTORY), isOverlay ? s : null);
+		doodleView.getEngine().setAutosave(autosave);
+		autosave.recover(new AutosaveJournal.Callback() {
+			@Override
+			public void onRecovered(List<StrokeRecord> strokes, int width,
+					int height) {
+				doodleView.restoreStrokes(strokes, width, height);
+			} // end method onRecovered
+		}); // end call to recover
+
 		// initialize acceleration values
 		acceleration = 0.00f;
 		currentAcceleration = SensorManager.GRAVITY_EARTH;
@@ -84,8 +130,17 @@ public class Doodlz extends Activity {
 	protected void onPause() {
 		super.onPause();
 		disableAccelerometerListening(); // don't listen for shake
+		doodleView.logFrameStats(); // latency seen while in the foreground
+		autosave.sync(); // the app may not come back
 	} // end method onPause
 
+	// finish saving the drawing when the Activity goes away
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		autosave.close();
+	} // end method onDestroy
+
 	// enable listening for accelerometer events
 	private void enableAccelerometerListening() {
 		// initialize the SensorManager
@@ -180,19 +235,73 @@ public class Doodlz extends Activity {
 		menu.add(Menu.NONE, COLOR_MENU_ID, Menu.NONE, R.string.menuitem_color);
 		menu.add(Menu.NONE, WIDTH_MENU_ID, Menu.NONE,
 				R.string.menuitem_line_width);
-		menu.add(Menu.NONE, ERASE_MENU_ID, Menu.NONE, R.string.menuitem_erase);
+		menu.add(Menu.NONE, PRESSURE_MENU_ID, Menu.NONE,
+				R.string.menuitem_pressure_width).setCheckable(true);
+
+		// choose one brush from a submenu
+		SubMenu brushMenu = menu.addSubMenu(Menu.NONE, BRUSH_MENU_ID,
+				Menu.NONE, R.string.menuitem_brush);
+
+		for (int brush = 0; brush < StampBrush.BRUSH_COUNT; brush++)
+			brushMenu.add(BRUSH_GROUP, BRUSH_ITEM_ID + brush, brush,
+					BRUSH_NAMES[brush]);
+
+		brushMenu.setGroupCheckable(BRUSH_GROUP, true, true);
+		menu.add(Menu.NONE, ERASE_MENU_ID, Menu.NONE, R.string.menuitem_erase)
+				.setCheckable(true);
+		menu.add(Menu.NONE, LASSO_MENU_ID, Menu.NONE, R.string.menuitem_lasso)
+				.setCheckable(true);
+		menu.add(Menu.NONE, FILL_MENU_ID, Menu.NONE, R.string.menuitem_fill)
+				.setCheckable(true);
 		menu.add(Menu.NONE, CLEAR_MENU_ID, Menu.NONE, R.string.menuitem_clear);
 		menu.add(Menu.NONE, SAVE_MENU_ID, Menu.NONE,
 				R.string.menuitem_save_image);
+		menu.add(Menu.NONE, LARGE_MENU_ID, Menu.NONE,
+				R.string.menuitem_save_large_image);
 		menu.add(Menu.NONE, ADD_MENU_ID, Menu.NONE, R.string.menuitem_add_image);
+		menu.add(Menu.NONE, UNDO_MENU_ID, Menu.NONE, R.string.menuitem_undo);
+		menu.add(Menu.NONE, REDO_MENU_ID, Menu.NONE, R.string.menuitem_redo);
+		menu.add(Menu.NONE, PHOTO_MENU_ID, Menu.NONE,
+				R.string.menuitem_show_photo).setCheckable(true)
+				.setVisible(isOverlay);
+		menu.add(Menu.NONE, RENDER_MENU_ID, Menu.NONE,
+				R.string.menuitem_render_thread).setCheckable(true);
 
 		return true; // options menu creation was handled
 	} // end onCreateOptionsMenu
 
+	// enable Undo and Redo only when there is something to undo or redo
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		super.onPrepareOptionsMenu(menu); // call super's method
+		menu.findItem(UNDO_MENU_ID).setEnabled(doodleView.canUndo());
+		menu.findItem(REDO_MENU_ID).setEnabled(doodleView.canRedo());
+		menu.findItem(ERASE_MENU_ID).setChecked(
+				doodleView.getTool() == DrawingSurface.TOOL_ERASE);
+		menu.findItem(LASSO_MENU_ID).setChecked(
+				doodleView.getTool() == DrawingSurface.TOOL_LASSO);
+		menu.findItem(FILL_MENU_ID).setChecked(
+				doodleView.getTool() == DrawingSurface.TOOL_FILL);
+		menu.findItem(PRESSURE_MENU_ID).setChecked(
+				doodleView.isVariableWidth());
+		menu.findItem(BRUSH_ITEM_ID + doodleView.getBrush()).setChecked(true);
+		menu.findItem(PHOTO_MENU_ID).setChecked(doodleView.isPhotoVisible());
+		menu.findItem(RENDER_MENU_ID).setChecked(
+				doodleView instanceof DoodleSurfaceView);
+		return true;
+	} // end method onPrepareOptionsMenu
+
 	// handle choice from options menu
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
-		Intent resultIntent;
+		// a brush chosen from the Brush submenu
+		int brush = item.getItemId() - BRUSH_ITEM_ID;
+
+		if (brush >= 0 && brush < StampBrush.BRUSH_COUNT) {
+			doodleView.setBrush(brush); // used from the next stroke on
+			return true; // consume the menu event
+		} // end if
+
 		// switch based on the MenuItem id
 		switch (item.getItemId()) {
 		case COLOR_MENU_ID:
@@ -201,28 +310,99 @@ public class Doodlz extends Activity {
 		case WIDTH_MENU_ID:
 			showLineWidthDialog(); // display line thickness dialog
 			return true; // consume the menu event
+		case PRESSURE_MENU_ID:
+			// new strokes follow pressure and speed, or keep one width
+			doodleView.setVariableWidth(!doodleView.isVariableWidth());
+			return true; // consume the menu event
 		case ERASE_MENU_ID:
-			doodleView.setDrawingColor(Color.WHITE); // line color white
+			// touching a stroke removes it; choose again to draw
+			toggleTool(DrawingSurface.TOOL_ERASE);
+			return true; // consume the menu event
+		case LASSO_MENU_ID:
+			// circling strokes removes them; choose again to draw
+			toggleTool(DrawingSurface.TOOL_LASSO);
+			return true; // consume the menu event
+		case FILL_MENU_ID:
+			// touching an area fills it with the line color
+			toggleTool(DrawingSurface.TOOL_FILL);
+			return true; // consume the menu event
+		case PHOTO_MENU_ID:
+			// hide or show the photo without touching the strokes
+			doodleView.setPhotoVisible(!doodleView.isPhotoVisible());
+			return true; // consume the menu event
+		case RENDER_MENU_ID:
+			// draw on a render thread, or back on the UI thread
+			switchSurface();
 			return true; // consume the menu event
 		case CLEAR_MENU_ID:
 			doodleView.clear(); // clear doodleView
 			return true; // consume the menu event
+		case UNDO_MENU_ID:
+			doodleView.undo(); // take back the last stroke
+			return true; // consume the menu event
+		case REDO_MENU_ID:
+			doodleView.redo(); // restore the last undone stroke
+			return true; // consume the menu event
 		case SAVE_MENU_ID:
 			doodleView.saveImage(true); // save the current images
 			return true;
+		case LARGE_MENU_ID:
+			// re-render the strokes larger than the screen and save them
+			doodleView.saveLargeImage(LARGE_IMAGE_SCALE);
+			return true; // consume the menu event
 		case ADD_MENU_ID:
-			doodleView.saveImage(false); // save the current images
-			resultIntent = new Intent();
-			resultIntent.putExtra("NewDrawing", doodleView.saveURI.toString());
-			resultIntent.setData(doodleView.saveURI);
-			setResult(Activity.RESULT_OK, resultIntent);
-			finish();
-			// return true; // consume the menu event
+			// save the current image, then return it to the slideshow
+			doodleView.saveImage(false, new ImageSaver.Callback() {
+				@Override
+				public void onImageSaved(Uri uri) {
+					if (uri == null)
+						return; // stay so the user can try again
+
+					Intent resultIntent = new Intent();
+					resultIntent.putExtra("NewDrawing", uri.toString());
+					resultIntent.setData(uri);
+					setResult(Activity.RESULT_OK, resultIntent);
+
+					// saved for good, so not to be brought back next time
+					doodleView.getEngine().setAutosave(null);
+					autosave.discard();
+					finish();
+				} // end method onImageSaved
+			}); // end call to saveImage
+			return true; // consume the menu event
 		} // end switch
 
 		return super.onOptionsItemSelected(item); // call super's method
 	} // end method onOptionsItemSelected
 
+	// switch doodleView to tool, or back to drawing if tool is current
+	private void toggleTool(int tool) {
+		if (doodleView.getTool() == tool)
+			doodleView.setTool(DrawingSurface.TOOL_DRAW);
+		else
+			doodleView.setTool(tool);
+	} // end method toggleTool
+
+	// replace doodleView with the other kind of DrawingSurface showing the
+	// same drawing; each logs its frame statistics so they can be compared
+	private void switchSurface() {
+		DrawingSurface next;
+
+		if (doodleView instanceof DoodleSurfaceView)
+			next = new DoodleView(this, null);
+		else
+			next = new DoodleSurfaceView(this, null);
+
+		next.setUri(doodleView.getUri());
+		next.setIsOverlay(doodleView.getIsOverlay());
+		next.setEngine(doodleView.getEngine());
+		doodleView.logFrameStats();
+
+		// detaching the old surface first stops any render thread it had
+		setContentView((View) next);
+		doodleView = next;
+	} // end method switchSurface
+
 	// display a dialog for selecting color
 	private void showColorDialog() {
 		// create the dialog and inflate its content
@@ -314,6 +494,7 @@ public class Doodlz extends Activity {
 			doodleView.setDrawingColor(Color.argb(alphaSeekBar.getProgress(),
 					redSeekBar.getProgress(), greenSeekBar.getProgress(),
 					blueSeekBar.getProgress()));
+			doodleView.setTool(DrawingSurface.TOOL_DRAW); // draw in the new color
 			dialogIsVisible.set(false); // dialog is not on the screen
 			currentDialog.dismiss(); // hide the dialog
 			currentDialog = null; // dialog no longer needed
@@ -328,6 +509,22 @@ public class Doodlz extends Activity {
 		currentDialog.setTitle(R.string.title_line_width_dialog);
 		currentDialog.setCancelable(true);
 
+		// borrow the preview bitmap until the dialog goes away
+		final Bitmap bitmap = BitmapPool.getShared().get(400, 100,
+				Bitmap.Config.ARGB_8888);
+		widthBitmap = bitmap;
+		widthCanvas = new Canvas(bitmap);
+		currentDialog.setOnDismissListener(
+				new DialogInterface.OnDismissListener() {
+					@Override
+					public void onDismiss(DialogInterface dialog) {
+						ImageView widthImageView = (ImageView) ((Dialog) dialog)
+								.findViewById(R.id.widthImageView);
+						widthImageView.setImageBitmap(null);
+						BitmapPool.getShared().put(bitmap);
+					} // end method onDismiss
+				}); // end OnDismissListener
+
 		// get widthSeekBar and configure it
 		SeekBar widthSeekBar = (SeekBar) currentDialog
 				.findViewById(R.id.widthSeekBar);
@@ -345,10 +542,6 @@ public class Doodlz extends Activity {
 
 	// OnSeekBarChangeListener for the SeekBar in the width dialog
 	private OnSeekBarChangeListener widthSeekBarChanged = new OnSeekBarChangeListener() {
-		Bitmap bitmap = Bitmap.createBitmap( // create Bitmap
-				400, 100, Bitmap.Config.ARGB_8888);
-		Canvas canvas = new Canvas(bitmap); // associate with Canvas
-
 		@Override
 		public void onProgressChanged(SeekBar seekBar, int progress,
 				boolean fromUser) {
@@ -363,9 +556,9 @@ public class Doodlz extends Activity {
 			p.setStrokeWidth(progress);
 
 			// erase the bitmap and redraw the line
-			bitmap.eraseColor(Color.WHITE);
-			canvas.drawLine(30, 50, 370, 50, p);
-			widthImageView.setImageBitmap(bitmap);
+			widthBitmap.eraseColor(Color.WHITE);
+			widthCanvas.drawLine(30, 50, 370, 50, p);
+			widthImageView.setImageBitmap(widthBitmap);
 		} // end method onProgressChanged
 
 		// required method of interface OnSeekBarChangeListener
@@ -389,6 +582,7 @@ public class Doodlz extends Activity {
 
 			// set the line color
 			doodleView.setLineWidth(widthSeekBar.getProgress());
+			doodleView.setTool(DrawingSurface.TOOL_DRAW); // draw at the new width
 			dialogIsVisible.set(false); // dialog is not on the screen
 			currentDialog.dismiss(); // hide the dialog
 			currentDialog = null; // dialog no longer needed
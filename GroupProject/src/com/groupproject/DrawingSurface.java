@@ -0,0 +1,100 @@
+// DrawingSurface.java
+// What Doodlz needs from the View the user draws on. DoodleView draws on
+// the UI thread; DoodleSurfaceView draws on a render thread of its own.
+// Both draw with a DoodleEngine, which can be handed from one to the
+// other so the two can be switched and compared on the same drawing.
+package com.groupproject;
+
+import java.util.List;
+
+public interface DrawingSurface {
+	// what touching the surface does
+	public static final int TOOL_DRAW = 0; // draw strokes
+	public static final int TOOL_ERASE = 1; // remove strokes touched
+	public static final int TOOL_LASSO = 2; // remove strokes circled
+	public static final int TOOL_FILL = 3; // flood fill the area touched
+
+	// the photo drawn on, as a content Uri string
+	public String getUri();
+
+	public void setUri(String uri);
+
+	// true if the drawing is made over the photo at getUri
+	public Boolean getIsOverlay();
+
+	public void setIsOverlay(Boolean isOverlay);
+
+	// the drawing's state; call setEngine before the surface is attached
+	public DoodleEngine getEngine();
+
+	public void setEngine(DoodleEngine engine);
+
+	// set the painted line's color
+	public void setDrawingColor(int color);
+
+	// return the painted line's color
+	public int getDrawingColor();
+
+	// set the painted line's width
+	public void setLineWidth(int width);
+
+	// return the painted line's width
+	public int getLineWidth();
+
+	// make new strokes follow pressure and speed around the line's width
+	public void setVariableWidth(boolean variable);
+
+	// return true if new strokes vary in width
+	public boolean isVariableWidth();
+
+	// choose the brush for new strokes; one of the StampBrush constants
+	public void setBrush(int brush);
+
+	// return the StampBrush constant for new strokes
+	public int getBrush();
+
+	// choose what touching the surface does; one of the TOOL_ constants
+	public void setTool(int tool);
+
+	// return the current TOOL_ constant
+	public int getTool();
+
+	// clear the strokes, keeping the overlay photo
+	public void clear();
+
+	// put strokes recovered by an AutosaveJournal back under the drawing
+	public void restoreStrokes(List<StrokeRecord> strokes, int width,
+			int height);
+
+	// take back the most recent stroke; returns false if there is none
+	public boolean undo();
+
+	// redraw the most recently undone stroke; returns false if there is none
+	public boolean redo();
+
+	// return true if there is a stroke that undo can take back
+	public boolean canUndo();
+
+	// return true if there is an undone stroke that redo can restore
+	public boolean canRedo();
+
+	// show or hide the overlay photo under the strokes
+	public void setPhotoVisible(boolean visible);
+
+	// return true if the overlay photo is shown
+	public boolean isPhotoVisible();
+
+	// save the current image to the Gallery
+	public void saveImage(Boolean saved);
+
+	// save the current image in the background; listener (if not null)
+	// receives the image's Uri, or null on failure
+	public void saveImage(Boolean saved, ImageSaver.Callback listener);
+
+	// save the drawing to the Gallery in the background, rendered from its
+	// strokes at scale times its size
+	public void saveLargeImage(float scale);
+
+	// log the touch latency and frame time percentiles
+	public void logFrameStats();
+} // end interface DrawingSurface
@@ -0,0 +1,102 @@
+// FillTask.java
+// Flood fills a snapshot of the stroke layer in a separate thread, so the
+// thread drawing the strokes never waits on the search. The result is the
+// area's runs of pixels, which are drawn back the way a fill is replayed.
+package com.groupproject;
+
+import android.os.AsyncTask;
+import android.util.Log;
+
+public class FillTask extends AsyncTask<Object, Object, int[]> {
+	private static final String TAG = "FillTask"; // error logging tag
+
+	// receives the finished fill on the UI thread
+	public interface Callback {
+		// task holds the result; its runs are null if nothing was found
+		void onFillDone(FillTask task);
+	} // end interface Callback
+
+	private final TiledCanvas.Snapshot snapshot; // stroke layer to search
+	private final int x; // where the fill starts
+	private final int y;
+	private final int color; // ARGB fill color
+	private final int tolerance; // largest channel difference filled
+	private Callback callback; // receives the result
+	private int[] spans; // the area found, as FloodFill runs, or null
+	private int spanCount;
+	private long fillMillis; // time taken to search
+
+	// FillTask constructor; the snapshot's tiles are read, never changed
+	public FillTask(TiledCanvas.Snapshot snapshot, int x, int y, int color,
+			int tolerance) {
+		this.snapshot = snapshot;
+		this.x = x;
+		this.y = y;
+		this.color = color;
+		this.tolerance = tolerance;
+	} // end FillTask constructor
+
+	// start the fill; call on the UI thread
+	public void start(Callback callback) {
+		this.callback = callback;
+		execute();
+	} // end method start
+
+	// search the snapshot for the area to fill
+	@Override
+	protected int[] doInBackground(Object... params) {
+		long start = System.nanoTime();
+		FloodFill fill = new FloodFill(snapshot);
+
+		if (fill.fill(x, y, tolerance) == 0)
+			return null;
+
+		spanCount = fill.getSpanCount();
+		int[] found = new int[spanCount * 3];
+		System.arraycopy(fill.getSpans(), 0, found, 0, found.length);
+		fillMillis = (System.nanoTime() - start) / 1000000;
+		Log.i(TAG, "filled " + spanCount + " runs in "
+				+ (fill.getRight() - fill.getLeft()) + "x"
+				+ (fill.getBottom() - fill.getTop()) + ", copying "
+				+ fill.getTilesCopied() + " tiles, in " + fillMillis + " ms");
+		return found;
+	} // end method doInBackground
+
+	// hand the result to the callback
+	@Override
+	protected void onPostExecute(int[] found) {
+		spans = found;
+		callback.onFillDone(this);
+	} // end method onPostExecute
+
+	// return the runs filled as y, first x, end x triples, or null if
+	// nothing was filled
+	public int[] getSpans() {
+		return spans;
+	} // end method getSpans
+
+	// return the number of runs filled
+	public int getSpanCount() {
+		return spanCount;
+	} // end method getSpanCount
+
+	// return the x coordinate the fill started from
+	public int getX() {
+		return x;
+	} // end method getX
+
+	// return the y coordinate the fill started from
+	public int getY() {
+		return y;
+	} // end method getY
+
+	// return the fill color
+	public int getColor() {
+		return color;
+	} // end method getColor
+
+	// return the time taken to search, in milliseconds
+	public long getFillMillis() {
+		return fillMillis;
+	} // end method getFillMillis
+} // end class FillTask
@@ -0,0 +1,227 @@
+// FloodFill.java
+// Finds the area of like-colored pixels around a point of a TiledCanvas
+// snapshot, a row at a time: each run of matching pixels is taken whole,
+// and only the first pixel of each matching run above and below it is
+// remembered for later, so the work grows with the number of runs rather
+// than of pixels. A tile is copied only once the search reaches it, and
+// the pixels found are marked in those copies instead of a separate mask.
+package com.groupproject;
+
+public class FloodFill {
+	private static final int TILE_SIZE = TiledCanvas.TILE_SIZE;
+	private static final int TILE_SHIFT = Integer
+			.numberOfTrailingZeros(TILE_SIZE); // TILE_SIZE is a power of 2
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	// largest tolerance a fill accepts; a pixel found is marked by setting
+	// it to the target color with the top bit of each channel flipped,
+	// which differs from the target by 128 and so can never match again
+	public static final int MAX_TOLERANCE = 127;
+	private static final int FOUND = 0x80808080;
+
+	private final TiledCanvas.Snapshot snapshot; // image searched
+	private final int width; // size of the image in pixels
+	private final int height;
+	private final int columns; // size of the image in tiles
+	private final int rows;
+	private int[][] tiles; // copied tiles, null until the search reaches them
+	private int tilesCopied; // tiles the last fill reached
+	private int target; // color of the pixel the fill started from
+	private int[] stack = new int[1024]; // x, y pairs of runs to take
+	private int stackSize; // ints in use in stack
+	private int[] spans = new int[768]; // y, first x, end x of each run
+	private int spanCount; // runs found
+	private int left; // bounds of the area found, end exclusive
+	private int top;
+	private int right;
+	private int bottom;
+
+	// FloodFill constructor; snapshot is read, never changed
+	public FloodFill(TiledCanvas.Snapshot snapshot) {
+		this.snapshot = snapshot;
+		width = snapshot.getWidth();
+		height = snapshot.getHeight();
+		columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+	} // end FloodFill constructor
+
+	// find every pixel connected to (x, y), sideways or up and down, whose
+	// channels each differ from that pixel's by at most tolerance, which
+	// is limited to MAX_TOLERANCE; returns the number of runs found, 0 if
+	// (x, y) is outside the image
+	public int fill(int x, int y, int tolerance) {
+		spanCount = 0;
+		tilesCopied = 0;
+		left = width;
+		top = height;
+		right = 0;
+		bottom = 0;
+
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return 0;
+
+		tolerance = Math.min(tolerance, MAX_TOLERANCE);
+		tiles = new int[columns * rows][];
+		target = get(x, y);
+		stackSize = 0;
+		push(x, y);
+
+		while (stackSize > 0) {
+			int seedY = stack[--stackSize];
+			int seedX = stack[--stackSize];
+
+			if (!matches(get(seedX, seedY), target, tolerance))
+				continue; // taken with another run since it was pushed
+
+			// widen the run as far as it matches on both sides
+			int first = seedX;
+			int end = seedX + 1;
+
+			while (first > 0
+					&& matches(get(first - 1, seedY), target, tolerance))
+				--first;
+
+			while (end < width && matches(get(end, seedY), target, tolerance))
+				++end;
+
+			for (int i = first; i < end; i++)
+				mark(i, seedY);
+
+			addSpan(seedY, first, end);
+
+			// remember where matching runs start in the rows either side
+			if (seedY > 0)
+				pushRuns(seedY - 1, first, end, tolerance);
+
+			if (seedY + 1 < height)
+				pushRuns(seedY + 1, first, end, tolerance);
+		} // end while
+
+		tiles = null; // free the copies for the next fill
+		return spanCount;
+	} // end method fill
+
+	// push the start of each run of unfound, matching pixels in row y
+	// between first and end
+	private void pushRuns(int y, int first, int end, int tolerance) {
+		boolean inRun = false;
+
+		for (int x = first; x < end; x++) {
+			boolean match = matches(get(x, y), target, tolerance);
+
+			if (match && !inRun)
+				push(x, y);
+
+			inRun = match;
+		} // end for
+	} // end method pushRuns
+
+	// return the pixel at (x, y), copying its tile on first use
+	private int get(int x, int y) {
+		return tile(x, y)[(y & TILE_MASK) << TILE_SHIFT | (x & TILE_MASK)];
+	} // end method get
+
+	// mark the pixel at (x, y) as found
+	private void mark(int x, int y) {
+		tile(x, y)[(y & TILE_MASK) << TILE_SHIFT | (x & TILE_MASK)] = target
+				^ FOUND;
+	} // end method mark
+
+	// return the copy of the tile holding (x, y), making it if necessary;
+	// tiles nothing was painted on start out transparent
+	private int[] tile(int x, int y) {
+		int index = (y >> TILE_SHIFT) * columns + (x >> TILE_SHIFT);
+
+		if (tiles[index] == null) {
+			tiles[index] = new int[TILE_SIZE * TILE_SIZE];
+			snapshot.getTilePixels(x >> TILE_SHIFT, y >> TILE_SHIFT,
+					tiles[index]);
+			++tilesCopied;
+		} // end if
+
+		return tiles[index];
+	} // end method tile
+
+	// return true if no channel of color differs from target's by more
+	// than tolerance
+	private static boolean matches(int color, int target, int tolerance) {
+		if (color == target)
+			return true;
+
+		for (int shift = 0; shift < 32; shift += 8) {
+			int difference = ((color >>> shift) & 0xFF)
+					- ((target >>> shift) & 0xFF);
+
+			if (difference > tolerance || difference < -tolerance)
+				return false;
+		} // end for
+
+		return true;
+	} // end method matches
+
+	// push a run's seed, growing the stack if necessary
+	private void push(int x, int y) {
+		if (stackSize + 2 > stack.length) {
+			int[] larger = new int[stack.length * 2];
+			System.arraycopy(stack, 0, larger, 0, stackSize);
+			stack = larger;
+		} // end if
+
+		stack[stackSize++] = x;
+		stack[stackSize++] = y;
+	} // end method push
+
+	// record a run and grow the bounds to include it
+	private void addSpan(int y, int first, int end) {
+		if (spanCount * 3 == spans.length) {
+			int[] larger = new int[spans.length * 2];
+			System.arraycopy(spans, 0, larger, 0, spans.length);
+			spans = larger;
+		} // end if
+
+		spans[spanCount * 3] = y;
+		spans[spanCount * 3 + 1] = first;
+		spans[spanCount * 3 + 2] = end;
+		++spanCount;
+		left = Math.min(left, first);
+		right = Math.max(right, end);
+		top = Math.min(top, y);
+		bottom = Math.max(bottom, y + 1);
+	} // end method addSpan
+
+	// return the runs found as y, first x, end x (exclusive) triples; only
+	// the first getSpanCount triples are in use
+	public int[] getSpans() {
+		return spans;
+	} // end method getSpans
+
+	// return the number of runs found
+	public int getSpanCount() {
+		return spanCount;
+	} // end method getSpanCount
+
+	// return the number of tiles the last fill had to copy
+	public int getTilesCopied() {
+		return tilesCopied;
+	} // end method getTilesCopied
+
+	// return the left edge of the area found
+	public int getLeft() {
+		return left;
+	} // end method getLeft
+
+	// return the top edge of the area found
+	public int getTop() {
+		return top;
+	} // end method getTop
+
+	// return the right edge (exclusive) of the area found
+	public int getRight() {
+		return right;
+	} // end method getRight
+
+	// return the bottom edge (exclusive) of the area found
+	public int getBottom() {
+		return bottom;
+	} // end method getBottom
+} // end class FloodFill
@@ -0,0 +1,89 @@
+// FramePacer.java
+// Calls back once per display refresh on a Handler's thread while there
+// is work to do, at times spaced by the display's refresh period, so input
+// is applied once per frame however often the touchscreen reports.
+package com.groupproject;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.WindowManager;
+
+public class FramePacer {
+	// used when the display doesn't report a sensible rate
+	private static final float DEFAULT_REFRESH_RATE = 60;
+
+	// called once per frame on the Handler's thread
+	public interface Callback {
+		// frameTime is the frame's uptime in milliseconds; return false
+		// once there is nothing left to do, which stops the frames
+		boolean onFrame(long frameTime);
+	} // end interface Callback
+
+	private final Handler handler; // thread the frames are called on
+	private final double period; // milliseconds between frames
+	private final Callback callback; // receives the frames
+	private boolean running; // true while a frame is posted
+	private double nextFrame; // uptime of the next frame, milliseconds
+
+	// FramePacer constructor; frames come refreshRate times a second
+	public FramePacer(Handler handler, float refreshRate, Callback callback) {
+		this.handler = handler;
+		this.period = 1000.0 / refreshRate;
+		this.callback = callback;
+	} // end FramePacer constructor
+
+	// return the refresh rate of the default display, in frames a second
+	public static float getRefreshRate(Context context) {
+		WindowManager windowManager = (WindowManager) context
+				.getSystemService(Context.WINDOW_SERVICE);
+		float rate = windowManager.getDefaultDisplay().getRefreshRate();
+		return rate >= 10 ? rate : DEFAULT_REFRESH_RATE;
+	} // end method getRefreshRate
+
+	// start calling back at the next frame, unless already running; call
+	// on the Handler's thread
+	public void start() {
+		if (running)
+			return;
+
+		running = true;
+		scheduleAfter(SystemClock.uptimeMillis());
+	} // end method start
+
+	// stop calling back; call on the Handler's thread
+	public void stop() {
+		running = false;
+		handler.removeCallbacks(tick);
+	} // end method stop
+
+	// post the tick for the first frame boundary after now; frames fall on
+	// multiples of the period, so they keep one phase relative to uptime
+	private void scheduleAfter(long now) {
+		nextFrame = (Math.floor(now / period) + 1) * period;
+		handler.postAtTime(tick, Math.round(nextFrame));
+	} // end method scheduleAfter
+
+	// calls back for one frame and posts the next while there is work
+	private final Runnable tick = new Runnable() {
+		@Override
+		public void run() {
+			if (!running)
+				return;
+
+			if (!callback.onFrame(Math.round(nextFrame))) {
+				running = false; // idle; start is called with new work
+				return;
+			} // end if
+
+			// frames missed while the thread was busy are skipped
+			nextFrame += period;
+			long now = SystemClock.uptimeMillis();
+
+			if (nextFrame <= now)
+				scheduleAfter(now);
+			else
+				handler.postAtTime(tick, Math.round(nextFrame));
+		} // end method run
+	}; // end tick
+} // end class FramePacer
@@ -0,0 +1,184 @@
+// ImageEncoder.java
+// Picks an image format for a flattened doodle from its content, encodes
+// it, and measures how long encoding took and how many bytes it wrote.
+package com.groupproject;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+public class ImageEncoder {
+	// drawings with at most this many distinct colors are saved as PNG
+	public static final int PNG_COLOR_LIMIT = 1024;
+
+	// pixels examined when counting colors; larger images are sampled
+	private static final int SAMPLE_PIXELS = 65536;
+
+	private static final int JPEG_QUALITY = 90; // photos and fallback
+	private static final int WEBP_QUALITY = 90; // many-colored drawings
+
+	// WEBP only exists from API 14; null when unavailable on this device
+	private static final Bitmap.CompressFormat WEBP = findFormat("WEBP");
+
+	private final Bitmap bitmap; // image to encode
+	private final int colorCount; // distinct colors, up to PNG_COLOR_LIMIT+1
+	private final Bitmap.CompressFormat format; // chosen format
+	private final int quality; // chosen quality, 0-100
+	private final String mimeType; // MIME type of the chosen format
+	private long encodedBytes; // size of the last encode
+	private long encodeMillis; // duration of the last encode
+
+	// ImageEncoder constructor analyses bitmap and chooses its format;
+	// hasPhoto is true if the drawing was made over a photo
+	public ImageEncoder(Bitmap bitmap, boolean hasPhoto) {
+		this.bitmap = bitmap;
+
+		if (hasPhoto) {
+			// photos compress far better with JPEG, and have no hard edges
+			// for its artifacts to smear
+			colorCount = -1; // not counted
+			format = Bitmap.CompressFormat.JPEG;
+			quality = JPEG_QUALITY;
+			mimeType = "image/jpeg";
+		} // end if
+		else {
+			colorCount = countColors(bitmap, PNG_COLOR_LIMIT);
+
+			if (colorCount <= PNG_COLOR_LIMIT) {
+				// flat line art: lossless, small and keeps edges sharp
+				format = Bitmap.CompressFormat.PNG;
+				quality = 100; // ignored by PNG
+				mimeType = "image/png";
+			} // end if
+			else if (WEBP != null) {
+				format = WEBP;
+				quality = WEBP_QUALITY;
+				mimeType = "image/webp";
+			} // end else if
+			else {
+				format = Bitmap.CompressFormat.JPEG;
+				quality = JPEG_QUALITY;
+				mimeType = "image/jpeg";
+			} // end else
+		} // end else
+	} // end ImageEncoder constructor
+
+	// return the MIME type of the chosen format
+	public String getMimeType() {
+		return mimeType;
+	} // end method getMimeType
+
+	// encode the bitmap to out in the chosen format
+	public void encode(OutputStream out) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(out);
+		long start = SystemClock.uptimeMillis();
+
+		if (!bitmap.compress(format, quality, counter))
+			throw new IOException("could not encode image as " + format);
+
+		counter.flush();
+		encodeMillis = SystemClock.uptimeMillis() - start;
+		encodedBytes = counter.count;
+	} // end method encode
+
+	// return the number of bytes written by the last encode
+	public long getEncodedBytes() {
+		return encodedBytes;
+	} // end method getEncodedBytes
+
+	// return how long the last encode took in milliseconds
+	public long getEncodeMillis() {
+		return encodeMillis;
+	} // end method getEncodeMillis
+
+	// describe the choice and the cost of the last encode, for logging
+	@Override
+	public String toString() {
+		String colors;
+
+		if (colorCount < 0)
+			colors = "photo";
+		else if (colorCount > PNG_COLOR_LIMIT)
+			colors = "over " + PNG_COLOR_LIMIT + " colors";
+		else
+			colors = colorCount + " colors";
+
+		return format + " q" + quality + " (" + bitmap.getWidth() + "x"
+				+ bitmap.getHeight() + ", " + colors + "): " + encodedBytes
+				+ " bytes in " + encodeMillis + " ms";
+	} // end method toString
+
+	// count distinct colors in bitmap, stopping once limit is exceeded;
+	// rows and columns are skipped evenly on large images
+	public static int countColors(Bitmap bitmap, int limit) {
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		int step = 1;
+
+		while ((long) (width / step) * (height / step) > SAMPLE_PIXELS)
+			++step;
+
+		// open-addressed hash set; table stays at most half full
+		int capacity = Integer.highestOneBit(limit) * 4;
+		int[] table = new int[capacity];
+		boolean[] used = new boolean[capacity];
+		int[] row = new int[width];
+		int count = 0;
+
+		for (int y = 0; y < height; y += step) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+
+			for (int x = 0; x < width; x += step) {
+				int color = row[x];
+				int slot = ((color * 0x9E3779B9) >>> 16) & (capacity - 1);
+
+				while (used[slot] && table[slot] != color)
+					slot = (slot + 1) & (capacity - 1);
+
+				if (!used[slot]) {
+					used[slot] = true;
+					table[slot] = color;
+
+					if (++count > limit)
+						return count;
+				} // end if
+			} // end for
+		} // end for
+
+		return count;
+	} // end method countColors
+
+	// return the CompressFormat constant with the given name, or null
+	private static Bitmap.CompressFormat findFormat(String name) {
+		try {
+			return Bitmap.CompressFormat.valueOf(name);
+		} // end try
+		catch (IllegalArgumentException e) {
+			return null; // not supported by this version of Android
+		} // end catch
+	} // end method findFormat
+
+	// passes bytes through while counting them
+	private static class CountingOutputStream extends FilterOutputStream {
+		long count; // bytes written so far
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		} // end CountingOutputStream constructor
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			++count;
+		} // end method write
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		} // end method write
+	} // end class CountingOutputStream
+} // end class ImageEncoder
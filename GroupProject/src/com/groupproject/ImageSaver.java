@@ -0,0 +1,238 @@
+// ImageSaver.java
+// Encodes snapshots of a drawing and writes them to the Gallery on a
+// background thread, one save at a time. A drawing can also be saved
+// larger than the screen, re-rendered from its strokes by TileRenderer.
+package com.groupproject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.MediaStore.Images;
+import android.util.Log;
+import android.view.Gravity;
+import android.widget.Toast;
+
+public class ImageSaver {
+	private static final String TAG = "ImageSaver"; // error logging tag
+
+	// receives the result of a save on the UI thread
+	public interface Callback {
+		// uri is where the image was saved, or null if saving failed
+		void onImageSaved(Uri uri);
+	} // end interface Callback
+
+	// makes the image a save writes, on the worker thread
+	private interface Flattener {
+		// return a new bitmap of the image; it is recycled once written
+		Bitmap flatten() throws InterruptedException;
+	} // end interface Flattener
+
+	// a single worker runs saves in the order they were requested, so two
+	// saves can never interleave
+	private static final ExecutorService executor = Executors
+			.newSingleThreadExecutor();
+
+	private final ContentResolver resolver; // used to reach the MediaStore
+	private final Handler handler; // delivers results on the UI thread
+
+	// ImageSaver constructor
+	public ImageSaver(Context context) {
+		resolver = context.getContentResolver();
+		handler = new Handler(Looper.getMainLooper());
+	} // end ImageSaver constructor
+
+	// save snapshot to the Gallery in the background and report the result
+	// to callback; drawing may continue on the source canvas meanwhile
+	public void save(final LayerStack.Snapshot snapshot, boolean hasPhoto,
+			Callback callback) {
+		save(new Flattener() {
+			@Override
+			public Bitmap flatten() {
+				return snapshot.toBitmap(Color.WHITE);
+			} // end method flatten
+		}, hasPhoto, callback); // end call to save
+	} // end method save
+
+	// render strokes, taken from a width x height drawing, at scale times
+	// their size on every processor and save the result like save; photo
+	// is the drawing's overlay photo, enlarged to match, or null to render
+	// over white. Stamped strokes are rendered as plain lines
+	public void saveRendered(final List<StrokeRecord> strokes,
+			final TiledCanvas.Snapshot photo, final int width,
+			final int height, final float scale, Callback callback) {
+		save(new Flattener() {
+			@Override
+			public Bitmap flatten() throws InterruptedException {
+				return render(strokes, photo, Math.round(width * scale),
+						Math.round(height * scale), scale);
+			} // end method flatten
+		}, photo != null, callback); // end call to save
+	} // end method saveRendered
+
+	// write the image flattener makes to the Gallery in the background and
+	// report the result to callback
+	private void save(final Flattener flattener, final boolean hasPhoto,
+			final Callback callback) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				Uri saved;
+
+				try {
+					saved = write(flattener.flatten(), hasPhoto);
+				} // end try
+				catch (InterruptedException e) {
+					Log.e(TAG, "rendering the image was interrupted", e);
+					saved = null;
+				} // end catch
+				catch (OutOfMemoryError e) {
+					// a large rendered image may not fit; the app carries on
+					Log.e(TAG, "not enough memory for the image", e);
+					saved = null;
+				} // end catch
+				catch (RuntimeException e) {
+					// report the failure rather than never calling back
+					Log.e(TAG, "could not save the image", e);
+					saved = null;
+				} // end catch
+
+				final Uri uri = saved;
+
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						callback.onImageSaved(uri);
+					} // end method run
+				}); // end call to post
+			} // end method run
+		}); // end call to execute
+	} // end method save
+
+	// return a callback that shows the result of a save in a Toast and
+	// then passes it to listener (if not null); saved is false when the
+	// image is being added to a slideshow rather than saved
+	public static Callback showResult(final Context context,
+			final boolean saved, final Callback listener) {
+		return new Callback() {
+			@Override
+			public void onImageSaved(Uri uri) {
+				Toast message;
+
+				if (uri == null) // display a message indicating an error
+					message = Toast.makeText(context,
+							R.string.message_error_saving, Toast.LENGTH_SHORT);
+				else if (saved) // display a message indicating the save
+					message = Toast.makeText(context, R.string.message_saved,
+							Toast.LENGTH_SHORT);
+				else
+					message = Toast.makeText(context, R.string.message_added,
+							Toast.LENGTH_SHORT);
+
+				message.setGravity(Gravity.CENTER, message.getXOffset() / 2,
+						message.getYOffset() / 2);
+				message.show(); // display the Toast
+
+				if (listener != null)
+					listener.onImageSaved(uri);
+			} // end method onImageSaved
+		}; // end new Callback
+	} // end method showResult
+
+	// render strokes into a new width x height bitmap, over photo if it is
+	// not null; runs on the worker thread
+	private static Bitmap render(List<StrokeRecord> strokes,
+			TiledCanvas.Snapshot photo, int width, int height, float scale)
+			throws InterruptedException {
+		TileRenderer renderer = new TileRenderer(strokes, width, height,
+				scale);
+		Bitmap rendered = Bitmap.createBitmap(renderer.render(
+				photo == null ? Color.WHITE : Color.TRANSPARENT, Runtime
+						.getRuntime().availableProcessors()), width, height,
+				Bitmap.Config.ARGB_8888);
+		Log.i(TAG, "rendered " + width + "x" + height + " in "
+				+ renderer.getRenderMillis() + " ms after "
+				+ renderer.getBinMillis() + " ms binning");
+
+		if (photo == null)
+			return rendered;
+
+		// the strokes go over the photo, both on white
+		Bitmap image = Bitmap.createBitmap(width, height,
+				Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(image);
+		canvas.drawColor(Color.WHITE);
+		canvas.save();
+		canvas.scale(scale, scale);
+		photo.drawTo(canvas);
+		canvas.restore();
+		canvas.drawBitmap(rendered, 0, 0, null);
+		rendered.recycle();
+		return image;
+	} // end method render
+
+	// encode bitmap into a new Gallery image and recycle it; runs on the
+	// worker thread
+	private Uri write(Bitmap bitmap, boolean hasPhoto) {
+		// use "Doodlz" followed by current time as the image file name
+		String fileName = "Doodlz" + System.currentTimeMillis();
+
+		// pick the format from the image's content before creating the
+		// Gallery entry, which needs the MIME type
+		ImageEncoder encoder = new ImageEncoder(bitmap, hasPhoto);
+
+		// create a ContentValues and configure new image's data
+		ContentValues values = new ContentValues();
+		values.put(Images.Media.TITLE, fileName);
+		values.put(Images.Media.DATE_ADDED, System.currentTimeMillis());
+		values.put(Images.Media.MIME_TYPE, encoder.getMimeType());
+
+		// get a Uri for the location to save the file
+		Uri uri = resolver.insert(Images.Media.EXTERNAL_CONTENT_URI, values);
+
+		if (uri == null) {
+			bitmap.recycle();
+			return null; // MediaStore is unavailable
+		} // end if
+
+		OutputStream outStream = null;
+
+		try {
+			// encode the bitmap to an OutputStream for uri
+			outStream = resolver.openOutputStream(uri);
+			encoder.encode(outStream);
+			Log.i(TAG, "saved " + uri + " as " + encoder);
+			return uri;
+		} // end try
+		catch (IOException ex) {
+			Log.e(TAG, "could not save " + uri, ex);
+			resolver.delete(uri, null, null); // don't leave an empty entry
+			return null;
+		} // end catch
+		finally {
+			bitmap.recycle(); // free the flattened copy right away
+
+			if (outStream != null) {
+				try {
+					outStream.close(); // close the stream
+				} // end try
+				catch (IOException ex) {
+					Log.e(TAG, "could not close " + uri, ex);
+				} // end catch
+			} // end if
+		} // end finally
+	} // end method write
+} // end class ImageSaver
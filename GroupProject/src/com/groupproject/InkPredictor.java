@@ -0,0 +1,153 @@
+// InkPredictor.java
+// Guesses where a finger will be a few milliseconds ahead from its recent
+// velocity and acceleration, and keeps score of how good its guesses were
+// so prediction can be switched off when it does more harm than good.
+package com.groupproject;
+
+public class InkPredictor {
+	// weight of the newest error in the running average
+	private static final float SMOOTHING = 0.1f;
+
+	// errors measured before the average is trusted enough to act on
+	private static final int MIN_MEASUREMENTS = 10;
+
+	// predictions never reach further than this many times the distance
+	// the finger would cover at its current speed, so a sharp change in
+	// acceleration can't fling the tail away
+	private static final float MAX_OVERSHOOT = 2;
+
+	private final float maxError; // average error, in pixels, that disables
+	private final float[] xs = new float[3]; // last samples, oldest first
+	private final float[] ys = new float[3];
+	private final long[] times = new long[3]; // sample times, milliseconds
+	private int count; // samples held, up to 3
+	private boolean pending; // true while a prediction awaits checking
+	private long targetTime; // time the pending prediction was for
+	private float targetX; // position the pending prediction gave
+	private float targetY;
+	private float averageError; // running average of measured errors
+	private int measurements; // errors measured since enabled
+	private boolean enabled = true; // false once averageError > maxError
+
+	// InkPredictor constructor; prediction turns itself off when its
+	// average error exceeds maxError pixels
+	public InkPredictor(float maxError) {
+		this.maxError = maxError;
+	} // end InkPredictor constructor
+
+	// forget the current stroke's motion, keeping the error average
+	public void reset() {
+		count = 0;
+		pending = false;
+	} // end method reset
+
+	// add a real touch sample taken at time milliseconds, first scoring any
+	// prediction made for a time before it
+	public void addSample(float x, float y, long time) {
+		if (count > 0 && time <= times[count - 1])
+			return; // duplicate timestamp gives no motion information
+
+		if (pending && time >= targetTime && count > 0) {
+			// where the finger really was at the predicted time, assuming
+			// it moved straight between the samples either side of it
+			float t = (float) (targetTime - times[count - 1])
+					/ (time - times[count - 1]);
+			float actualX = xs[count - 1] + (x - xs[count - 1]) * t;
+			float actualY = ys[count - 1] + (y - ys[count - 1]) * t;
+			float error = (float) Math.hypot(actualX - targetX, actualY
+					- targetY);
+			averageError += SMOOTHING * (error - averageError);
+			pending = false;
+
+			if (++measurements >= MIN_MEASUREMENTS && averageError > maxError)
+				enabled = false;
+		} // end if
+
+		if (count == 3) {
+			// drop the oldest sample
+			for (int i = 0; i < 2; i++) {
+				xs[i] = xs[i + 1];
+				ys[i] = ys[i + 1];
+				times[i] = times[i + 1];
+			} // end for
+
+			count = 2;
+		} // end if
+
+		xs[count] = x;
+		ys[count] = y;
+		times[count] = time;
+		++count;
+	} // end method addSample
+
+	// store in out the position predicted horizon milliseconds after the
+	// last sample and return true, or return false if there is no
+	// prediction to make
+	public boolean predict(long horizon, float[] out) {
+		if (!enabled || count < 2)
+			return false;
+
+		int last = count - 1;
+		float dt = times[last] - times[last - 1];
+		float vx = (xs[last] - xs[last - 1]) / dt;
+		float vy = (ys[last] - ys[last - 1]) / dt;
+		float ax = 0;
+		float ay = 0;
+
+		// the change in velocity over three samples captures curvature
+		if (count == 3) {
+			float dt0 = times[1] - times[0];
+			float vx0 = (xs[1] - xs[0]) / dt0;
+			float vy0 = (ys[1] - ys[0]) / dt0;
+			float span = (times[2] - times[0]) / 2f;
+			ax = (vx - vx0) / span;
+			ay = (vy - vy0) / span;
+		} // end if
+
+		float dx = vx * horizon + ax * horizon * horizon / 2;
+		float dy = vy * horizon + ay * horizon * horizon / 2;
+		float limit = MAX_OVERSHOOT * (float) Math.hypot(vx, vy) * horizon;
+		float distance = (float) Math.hypot(dx, dy);
+
+		if (distance > limit && distance > 0) {
+			dx *= limit / distance;
+			dy *= limit / distance;
+		} // end if
+
+		out[0] = xs[last] + dx;
+		out[1] = ys[last] + dy;
+
+		// score this prediction once a sample at or after its time arrives;
+		// predictions made while one is waiting are shown but not scored
+		if (!pending) {
+			pending = true;
+			targetTime = times[last] + horizon;
+			targetX = out[0];
+			targetY = out[1];
+		} // end if
+
+		return true;
+	} // end method predict
+
+	// return the running average distance, in pixels, between predicted
+	// and real positions
+	public float getAverageError() {
+		return averageError;
+	} // end method getAverageError
+
+	// return false once prediction has switched itself off
+	public boolean isEnabled() {
+		return enabled;
+	} // end method isEnabled
+
+	// switch prediction on or off; switching on starts the error average
+	// over
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+
+		if (enabled) {
+			averageError = 0;
+			measurements = 0;
+		} // end if
+	} // end method setEnabled
+} // end class InkPredictor
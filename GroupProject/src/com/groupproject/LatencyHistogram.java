@@ -0,0 +1,111 @@
+// LatencyHistogram.java
+// Counts durations in fixed-width buckets so percentiles can be reported
+// without storing individual samples; recording a value never allocates.
+package com.groupproject;
+
+import java.io.PrintWriter;
+
+public class LatencyHistogram {
+	private final String name; // shown in reports
+	private final String unit; // unit of recorded values, e.g. "ms"
+	private final long bucketWidth; // range of values per bucket
+	private final int[] counts; // per bucket; the last one is overflow
+	private int count; // values recorded
+	private long total; // sum of values recorded
+	private long max; // largest value recorded
+
+	// LatencyHistogram constructor; values from 0 to
+	// bucketWidth * bucketCount are counted in bucketCount buckets, and
+	// larger values in one overflow bucket
+	public LatencyHistogram(String name, String unit, long bucketWidth,
+			int bucketCount) {
+		this.name = name;
+		this.unit = unit;
+		this.bucketWidth = bucketWidth;
+		counts = new int[bucketCount + 1];
+	} // end LatencyHistogram constructor
+
+	// count one value
+	public void record(long value) {
+		if (value < 0)
+			value = 0; // clocks can disagree by a tick
+
+		int bucket = (int) Math.min(value / bucketWidth, counts.length - 1);
+		++counts[bucket];
+		++count;
+		total += value;
+
+		if (value > max)
+			max = value;
+	} // end method record
+
+	// forget every recorded value
+	public void reset() {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+
+		count = 0;
+		total = 0;
+		max = 0;
+	} // end method reset
+
+	// return the number of values recorded
+	public int getCount() {
+		return count;
+	} // end method getCount
+
+	// return the largest value recorded
+	public long getMax() {
+		return max;
+	} // end method getMax
+
+	// return the average value recorded
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	} // end method getMean
+
+	// return a value that fraction (0 to 1) of the recorded values do not
+	// exceed, accurate to one bucket width; values in the overflow bucket
+	// are reported as the maximum
+	public long getPercentile(double fraction) {
+		if (count == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+
+		for (int i = 0; i < counts.length - 1; i++) {
+			seen += counts[i];
+
+			if (seen >= Math.max(1, rank))
+				return Math.min(max, (i + 1) * bucketWidth);
+		} // end for
+
+		return max;
+	} // end method getPercentile
+
+	// return a one-line summary of the percentiles
+	@Override
+	public String toString() {
+		return name + ": " + count + " samples, p50 " + getPercentile(0.5)
+				+ ", p95 " + getPercentile(0.95) + ", p99 "
+				+ getPercentile(0.99) + ", max " + max + " " + unit;
+	} // end method toString
+
+	// write the summary and every non-empty bucket to out
+	public void dump(PrintWriter out) {
+		out.println(this);
+
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0)
+				continue;
+
+			if (i == counts.length - 1)
+				out.println("  >= " + i * bucketWidth + " " + unit + ": "
+						+ counts[i]);
+			else
+				out.println("  " + i * bucketWidth + "-" + (i + 1)
+						* bucketWidth + " " + unit + ": " + counts[i]);
+		} // end for
+	} // end method dump
+} // end class LatencyHistogram
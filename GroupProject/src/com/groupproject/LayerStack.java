@@ -0,0 +1,259 @@
+// LayerStack.java
+// Ordered TiledCanvas layers over a solid background color, with a cached
+// composite that is rebuilt one tile at a time where layers changed.
+package com.groupproject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+public class LayerStack {
+	private static final int TILE_SIZE = TiledCanvas.TILE_SIZE;
+
+	private final List<TiledCanvas> layers; // bottom layer first
+	private final List<Boolean> visible; // per layer
+	private int width; // size of the drawing area in pixels
+	private int height;
+	private int columns; // size of the drawing area in tiles
+	private int rows;
+	private int backgroundColor; // shown where no layer is painted
+	private Bitmap[] composite; // flattened tiles, null where all are empty
+	private Canvas[] compositeCanvases; // Canvas for each composite tile
+	private boolean[] stale; // true for composite tiles to rebuild
+	private Paint paintBackground = new Paint(); // fills empty tiles
+	private int rebuiltTiles; // composite tiles rebuilt so far
+	private final BitmapPool pool = BitmapPool.getShared(); // tile memory
+
+	// LayerStack constructor; no layers and no tile memory yet
+	public LayerStack(int width, int height, int backgroundColor) {
+		layers = new ArrayList<TiledCanvas>();
+		visible = new ArrayList<Boolean>();
+		this.backgroundColor = backgroundColor;
+		composite = new Bitmap[0];
+		compositeCanvases = new Canvas[0];
+		stale = new boolean[0];
+		resize(width, height);
+	} // end LayerStack constructor
+
+	// add an empty, visible layer on top and return its index
+	public int addLayer() {
+		layers.add(new TiledCanvas(width, height));
+		visible.add(true);
+		return layers.size() - 1;
+	} // end method addLayer
+
+	// return the layer at index; painting on it updates the composite
+	public TiledCanvas getLayer(int index) {
+		return layers.get(index);
+	} // end method getLayer
+
+	// return the number of layers
+	public int getLayerCount() {
+		return layers.size();
+	} // end method getLayerCount
+
+	// show or hide a layer; only the tiles it has painted are rebuilt
+	public void setLayerVisible(int index, boolean show) {
+		if (visible.get(index) == show)
+			return;
+
+		visible.set(index, show);
+		TiledCanvas layer = layers.get(index);
+
+		for (int row = 0; row < Math.min(rows, layer.getRows()); row++)
+			for (int column = 0; column < Math.min(columns, layer
+					.getColumns()); column++)
+				if (layer.getTile(column, row) != null)
+					stale[row * columns + column] = true;
+	} // end method setLayerVisible
+
+	// return true if the layer at index is shown
+	public boolean isLayerVisible(int index) {
+		return visible.get(index);
+	} // end method isLayerVisible
+
+	// set the color shown under every layer
+	public void setBackgroundColor(int color) {
+		if (color == backgroundColor)
+			return;
+
+		backgroundColor = color;
+
+		for (int i = 0; i < stale.length; i++)
+			stale[i] = true;
+	} // end method setBackgroundColor
+
+	// change the size of the drawing area and of every layer
+	public void resize(int newWidth, int newHeight) {
+		for (TiledCanvas layer : layers)
+			layer.resize(newWidth, newHeight);
+
+		int newColumns = (newWidth + TILE_SIZE - 1) / TILE_SIZE;
+		int newRows = (newHeight + TILE_SIZE - 1) / TILE_SIZE;
+
+		if (newColumns != columns || newRows != rows) {
+			// the composite is only a cache, so start it over
+			for (Bitmap tile : composite)
+				pool.put(tile);
+
+			composite = new Bitmap[newColumns * newRows];
+			compositeCanvases = new Canvas[newColumns * newRows];
+			stale = new boolean[newColumns * newRows];
+
+			for (int i = 0; i < stale.length; i++)
+				stale[i] = true;
+
+			columns = newColumns;
+			rows = newRows;
+		} // end if
+
+		width = newWidth;
+		height = newHeight;
+	} // end method resize
+
+	// return the width of the drawing area
+	public int getWidth() {
+		return width;
+	} // end method getWidth
+
+	// return the height of the drawing area
+	public int getHeight() {
+		return height;
+	} // end method getHeight
+
+	// draw the part of the composite inside clip onto canvas, first
+	// rebuilding any of its tiles that a layer changed
+	public void draw(Canvas canvas, Rect clip, Paint paint) {
+		collectDirtyTiles();
+
+		int firstColumn = Math.max(0, clip.left / TILE_SIZE);
+		int lastColumn = Math.min(columns - 1, (clip.right - 1) / TILE_SIZE);
+		int firstRow = Math.max(0, clip.top / TILE_SIZE);
+		int lastRow = Math.min(rows - 1, (clip.bottom - 1) / TILE_SIZE);
+		paintBackground.setColor(backgroundColor);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int index = row * columns + column;
+
+				if (stale[index])
+					rebuild(column, row);
+
+				if (composite[index] != null)
+					canvas.drawBitmap(composite[index], column * TILE_SIZE,
+							row * TILE_SIZE, paint);
+				else // no layer is painted here
+					canvas.drawRect(column * TILE_SIZE, row * TILE_SIZE,
+							(column + 1) * TILE_SIZE, (row + 1) * TILE_SIZE,
+							paintBackground);
+			} // end for
+		} // end for
+	} // end method draw
+
+	// mark the composite tiles under every layer tile painted since the
+	// last call as stale
+	private void collectDirtyTiles() {
+		for (TiledCanvas layer : layers) {
+			for (int row = 0; row < Math.min(rows, layer.getRows()); row++)
+				for (int column = 0; column < Math.min(columns, layer
+						.getColumns()); column++)
+					if (layer.isDirty(column, row))
+						stale[row * columns + column] = true;
+
+			layer.markClean();
+		} // end for
+	} // end method collectDirtyTiles
+
+	// flatten the visible layers' tiles at (column, row) into the composite
+	private void rebuild(int column, int row) {
+		int index = row * columns + column;
+		stale[index] = false;
+		++rebuiltTiles;
+		Canvas canvas = null;
+
+		for (int i = 0; i < layers.size(); i++) {
+			TiledCanvas layer = layers.get(i);
+
+			if (!visible.get(i) || column >= layer.getColumns()
+					|| row >= layer.getRows())
+				continue;
+
+			Bitmap tile = layer.getTile(column, row);
+
+			if (tile == null)
+				continue;
+
+			if (canvas == null) {
+				canvas = compositeCanvas(index);
+				canvas.drawColor(backgroundColor);
+			} // end if
+
+			canvas.drawBitmap(tile, 0, 0, null);
+		} // end for
+
+		if (canvas == null && composite[index] != null) {
+			// every layer is empty here now; draw the plain background
+			pool.put(composite[index]);
+			composite[index] = null;
+			compositeCanvases[index] = null;
+		} // end if
+	} // end method rebuild
+
+	// return the Canvas for a composite tile, allocating it if needed
+	private Canvas compositeCanvas(int index) {
+		if (composite[index] == null) {
+			composite[index] = pool.get(TILE_SIZE, TILE_SIZE,
+					Bitmap.Config.ARGB_8888);
+			compositeCanvases[index] = new Canvas(composite[index]);
+		} // end if
+
+		return compositeCanvases[index];
+	} // end method compositeCanvas
+
+	// return the number of composite tiles rebuilt so far
+	public int getRebuiltTileCount() {
+		return rebuiltTiles;
+	} // end method getRebuiltTileCount
+
+	// return a copy-on-write picture of the visible layers
+	public Snapshot snapshot() {
+		List<TiledCanvas.Snapshot> shown = new ArrayList<TiledCanvas.Snapshot>();
+
+		for (int i = 0; i < layers.size(); i++)
+			if (visible.get(i))
+				shown.add(layers.get(i).snapshot());
+
+		return new Snapshot(width, height, shown);
+	} // end method snapshot
+
+	// read-only picture of the visible layers of a LayerStack
+	public static class Snapshot {
+		private final int width; // size of the drawing area in pixels
+		private final int height;
+		private final List<TiledCanvas.Snapshot> layers; // bottom first
+
+		private Snapshot(int width, int height,
+				List<TiledCanvas.Snapshot> layers) {
+			this.width = width;
+			this.height = height;
+			this.layers = layers;
+		} // end Snapshot constructor
+
+		// return a single bitmap of the layers over a solid color
+		public Bitmap toBitmap(int backgroundColor) {
+			Bitmap bitmap = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+			bitmap.eraseColor(backgroundColor);
+			Canvas canvas = new Canvas(bitmap);
+
+			for (TiledCanvas.Snapshot layer : layers)
+				layer.drawTo(canvas);
+
+			return bitmap;
+		} // end method toBitmap
+	} // end class Snapshot
+} // end class LayerStack
@@ -0,0 +1,95 @@
+// OverlayLoader.java
+// Decodes the photo a drawing is made over in a separate thread, at the
+// smallest size that still fills the drawing surface.
+package com.groupproject;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+public class OverlayLoader extends AsyncTask<Uri, Object, Bitmap> {
+	private static final String TAG = "OverlayLoader"; // error logging tag
+
+	// receives the decoded photo on the UI thread
+	public interface Callback {
+		// photo is the decoded photo, or null if it could not be read
+		void onOverlayLoaded(Bitmap photo);
+	} // end interface Callback
+
+	private final ContentResolver resolver; // opens the photo's Uri
+	private final int targetWidth; // size the photo must fit into
+	private final int targetHeight;
+	private final Callback callback; // receives the result
+
+	// OverlayLoader constructor
+	public OverlayLoader(Context context, int targetWidth, int targetHeight,
+			Callback callback) {
+		resolver = context.getContentResolver();
+		this.targetWidth = targetWidth;
+		this.targetHeight = targetHeight;
+		this.callback = callback;
+	} // end OverlayLoader constructor
+
+	// decode the photo at the smallest size that still fills the surface
+	@Override
+	protected Bitmap doInBackground(Uri... params) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+
+		try {
+			// read only the photo's dimensions; no pixels are decoded
+			options.inJustDecodeBounds = true;
+			decode(params[0], options);
+
+			if (options.outWidth <= 0 || options.outHeight <= 0)
+				return null; // not an image
+
+			// skip whole pixels while decoding rather than scaling a
+			// full-size copy afterwards
+			float fit = Math.min((float) targetWidth / options.outWidth,
+					(float) targetHeight / options.outHeight);
+			options.inSampleSize = 1;
+
+			while (options.inSampleSize * 2 * fit <= 1)
+				options.inSampleSize *= 2;
+
+			options.inJustDecodeBounds = false;
+			return decode(params[0], options);
+		} // end try
+		catch (FileNotFoundException e) {
+			Log.d(TAG, "the file was not found: " + params[0]);
+			return null;
+		} // end catch
+	} // end method doInBackground
+
+	// decode uri with the given options
+	private Bitmap decode(Uri photoUri, BitmapFactory.Options options)
+			throws FileNotFoundException {
+		InputStream input = resolver.openInputStream(photoUri);
+
+		try {
+			return BitmapFactory.decodeStream(input, null, options);
+		} // end try
+		finally {
+			try {
+				input.close();
+			} // end try
+			catch (IOException e) {
+				Log.d(TAG, e.toString());
+			} // end catch
+		} // end finally
+	} // end method decode
+
+	// hand the photo to the callback
+	@Override
+	protected void onPostExecute(Bitmap result) {
+		callback.onOverlayLoaded(result);
+	} // end method onPostExecute
+} // end class OverlayLoader
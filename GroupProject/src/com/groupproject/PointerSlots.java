@@ -0,0 +1,145 @@
+// PointerSlots.java
+// Fixed-capacity table of the strokes currently being drawn, indexed
+// directly by MotionEvent pointer ID.
+package com.groupproject;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+public class PointerSlots {
+	// pointer IDs at or above this value are ignored
+	public static final int MAX_POINTERS = 10;
+
+	private final StrokeSlot[] slots; // one slot per possible pointer ID
+
+	// PointerSlots constructor; slots are created lazily on first use
+	public PointerSlots() {
+		slots = new StrokeSlot[MAX_POINTERS];
+	} // end PointerSlots constructor
+
+	// begin a new stroke for the given pointer, reusing its pooled slot
+	public StrokeSlot start(int pointerID) {
+		if (pointerID < 0 || pointerID >= MAX_POINTERS)
+			return null; // no room for this pointer
+
+		StrokeSlot slot = slots[pointerID];
+
+		if (slot == null) {
+			slot = new StrokeSlot(); // first use of this pointer ID
+			slots[pointerID] = slot;
+		} // end if
+
+		slot.path.reset(); // discard geometry from any previous stroke
+		slot.active = true;
+		slot.dirty = false;
+		slot.segments = 0;
+		slot.flushed = false;
+		slot.pointCount = 0;
+		slot.predicted = false;
+		slot.varied = false;
+		return slot;
+	} // end method start
+
+	// return the active stroke for the given pointer, or null if none
+	public StrokeSlot get(int pointerID) {
+		if (pointerID < 0 || pointerID >= MAX_POINTERS)
+			return null;
+
+		StrokeSlot slot = slots[pointerID];
+		return (slot != null && slot.active) ? slot : null;
+	} // end method get
+
+	// return the slot stored at index i, active or not (for iteration)
+	public StrokeSlot slotAt(int i) {
+		return slots[i];
+	} // end method slotAt
+
+	// deactivate every stroke and reset its geometry
+	public void clear() {
+		for (StrokeSlot slot : slots) {
+			if (slot != null) {
+				slot.path.reset();
+				slot.active = false;
+			} // end if
+		} // end for
+	} // end method clear
+
+	// return true if any active stroke has been partly committed
+	public boolean isAnyStrokeFlushed() {
+		for (StrokeSlot slot : slots)
+			if (slot != null && slot.active && slot.flushed)
+				return true;
+
+		return false;
+	} // end method isAnyStrokeFlushed
+
+	// state of one pointer's stroke; reused for every stroke on that pointer
+	public static class StrokeSlot {
+		public final Path path = new Path(); // the stroke being drawn
+		public float lastX; // last point added to path
+		public float lastY;
+		public float penX; // end point of the last path segment
+		public float penY;
+		public float tanX; // direction of the stroke at (penX, penY)
+		public float tanY;
+		public float startX; // first point of the stroke
+		public float startY;
+		public float startTanX; // direction of the stroke at its start
+		public float startTanY;
+		public int segments; // curve segments in path not yet committed
+		public boolean flushed; // true once part of the stroke is committed
+		public float[] points = new float[128]; // x, y of accepted samples
+		public float[] widths = new float[64]; // line width at each point
+		public int pointCount; // number of points recorded for the stroke
+
+		// record an accepted sample so the stroke can be replayed later
+		public void record(float x, float y, float width) {
+			if (pointCount == widths.length) {
+				float[] larger = new float[points.length * 2];
+				System.arraycopy(points, 0, larger, 0, points.length);
+				points = larger;
+				larger = new float[widths.length * 2];
+				System.arraycopy(widths, 0, larger, 0, widths.length);
+				widths = larger;
+			} // end if
+
+			points[pointCount * 2] = x;
+			points[pointCount * 2 + 1] = y;
+			widths[pointCount] = width;
+			++pointCount;
+		} // end method record
+
+		// every stroke keeps the color and width it started with; one whose
+		// width follows pressure and speed is drawn as a filled outline
+		public int color; // line color
+		public float baseWidth; // chosen line width
+		public boolean varied; // true if the width varies
+		public WidthModel widthModel; // created on the first varied stroke
+		public float rawWidth; // width at the latest touch sample
+		public float lastWidth; // width at (lastX, lastY)
+		public float penWidth; // width at (penX, penY)
+		public SoftwareRasterizer.Polyline ribbon; // uncommitted centerline
+		public int ribbonFrom; // first ribbon point not yet committed
+		public int brush; // StampBrush constant the stroke is drawn with
+		public float stampResidual; // distance from the pen to the next dab
+		public float rawX; // latest touch sample, accepted or not
+		public float rawY;
+		public InkPredictor predictor; // created on the stroke's first use
+		public boolean predicted; // true if predictedX, Y are to be drawn
+		public float predictedX; // where the finger is expected to be next
+		public float predictedY;
+		public boolean active; // true while the pointer is down
+		public boolean dirty; // true if dirtyBounds needs redrawing
+		public final RectF dirtyBounds = new RectF(); // unpainted area
+
+		// grow the unpainted area to include the given point
+		public void markDirty(float x, float y) {
+			if (dirty)
+				dirtyBounds.union(x, y);
+			else {
+				dirtyBounds.set(x, y, x, y);
+				dirty = true;
+			} // end else
+		} // end method markDirty
+	} // end class StrokeSlot
+} // end class PointerSlots
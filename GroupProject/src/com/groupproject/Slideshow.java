@@ -2,6 +2,7 @@
 // Main Activity for the Slideshow class.
 package com.groupproject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,6 +14,8 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -37,6 +40,9 @@ public class Slideshow extends ListActivity {
 	// used when adding slideshow name as an extra to an Intent
 	public static final String NAME_EXTRA = "NAME";
 
+	// width and height of the thumbnails MediaStore keeps as MICRO_KIND
+	private static final int MICRO_THUMBNAIL_SIZE = 96;
+
 	// public static final String PREF_FILE_NAME = "PrefFile";
 	// SharedPreferences preferences = getSharedPreferences(PREF_FILE_NAME,
 	// MODE_PRIVATE);
@@ -199,10 +205,16 @@ public class Slideshow extends ListActivity {
 			// if there is at least one image in this slideshow
 			if (slideshowInfo.size() > 0) {
 				// create a bitmap using the slideshow's first image or video
-				String firstItem = slideshowInfo.getImageAt(0);
+				Uri firstItem = Uri.parse(slideshowInfo.getImageAt(0));
+				viewHolder.imageView.setTag(firstItem); // image to show
 				new LoadThumbnailTask().execute(viewHolder.imageView,
-						Uri.parse(firstItem));
+						firstItem);
 			} // end if
+			else {
+				// the row may have shown another slideshow's thumbnail
+				viewHolder.imageView.setTag(null);
+				showThumbnail(viewHolder.imageView, null);
+			} // end else
 
 			// set tag and OnClickListener for the "Play" Button
 			viewHolder.playButton.setTag(slideshowInfo);
@@ -227,21 +239,27 @@ public class Slideshow extends ListActivity {
 	// task to load thumbnails in a separate thread
 	private class LoadThumbnailTask extends AsyncTask<Object, Object, Bitmap> {
 		ImageView imageView; // displays the thumbnail
+		Uri uri; // image the thumbnail is for
 
 		// load thumbnail: ImageView and Uri as args
 		@Override
 		protected Bitmap doInBackground(Object... params) {
 			imageView = (ImageView) params[0];
+			uri = (Uri) params[1];
 
-			return Slideshow.getThumbnail((Uri) params[1],
-					getContentResolver(), new BitmapFactory.Options());
+			return Slideshow.getThumbnail(uri, getContentResolver(),
+					new BitmapFactory.Options());
 		} // end method doInBackground
 
-		// set thumbnail on ListView
+		// set thumbnail on ListView, unless the row now shows another image
 		@Override
 		protected void onPostExecute(Bitmap result) {
 			super.onPostExecute(result);
-			imageView.setImageBitmap(result);
+
+			if (uri.equals(imageView.getTag()))
+				Slideshow.showThumbnail(imageView, result);
+			else
+				BitmapPool.getShared().put(result);
 		} // end method onPostExecute
 	} // end class LoadThumbnailTask
 
@@ -320,16 +338,38 @@ public class Slideshow extends ListActivity {
 		return null; // no matching object
 	} // end method getSlideshowInfo
 
-	// utility method to get a thumbnail image Bitmap
-	public static Bitmap getThumbnail(Uri uri, ContentResolver cr,
+	// utility method to get a thumbnail image Bitmap, decoded into a pooled
+	// bitmap where the platform allows
+	public static Bitmap getThumbnail(Uri uri, final ContentResolver cr,
 			BitmapFactory.Options options) {
-		int id = Integer.parseInt(uri.getLastPathSegment());
+		final int id = Integer.parseInt(uri.getLastPathSegment());
+
+		BitmapPool.Decoder decoder = new BitmapPool.Decoder() {
+			@Override
+			public Bitmap decode(BitmapFactory.Options options) {
+				return MediaStore.Images.Thumbnails.getThumbnail(cr, id,
+						MediaStore.Images.Thumbnails.MICRO_KIND, options);
+			} // end method decode
+		}; // end Decoder
+
+		try {
+			return BitmapPool.getShared().decode(decoder, options,
+					MICRO_THUMBNAIL_SIZE, MICRO_THUMBNAIL_SIZE);
+		} // end try
+		catch (IOException e) {
+			return null; // decoder reads no streams of its own
+		} // end catch
+	} // end method getThumbnail
 
-		Bitmap bitmap = MediaStore.Images.Thumbnails.getThumbnail(cr, id,
-				MediaStore.Images.Thumbnails.MICRO_KIND, options);
+	// show thumbnail in imageView, giving the thumbnail it showed before
+	// back to the BitmapPool; thumbnail may be null
+	public static void showThumbnail(ImageView imageView, Bitmap thumbnail) {
+		Drawable previous = imageView.getDrawable();
+		imageView.setImageBitmap(thumbnail);
 
-		return bitmap;
-	} // end method getThumbnail
+		if (previous instanceof BitmapDrawable)
+			BitmapPool.getShared().put(((BitmapDrawable) previous).getBitmap());
+	} // end method showThumbnail
 } // end class Slideshow
 
 /**************************************************************************
@@ -227,9 +227,9 @@ public class SlideshowEditor extends ListActivity {
 				viewHolder = (ViewHolder) convertView.getTag();
 
 			// get and display a thumbnail Bitmap image
-			String item = items.get(position); // get current image
-			new LoadThumbnailTask().execute(viewHolder.slideImageView,
-					Uri.parse(item));
+			Uri item = Uri.parse(items.get(position)); // get current image
+			viewHolder.slideImageView.setTag(item); // image to show
+			new LoadThumbnailTask().execute(viewHolder.slideImageView, item);
 
 			// configure the "Delete" Button
 			viewHolder.deleteButton.setTag(item);
@@ -242,21 +242,27 @@ public class SlideshowEditor extends ListActivity {
 	// task to load thumbnails in a separate thread
 	private class LoadThumbnailTask extends AsyncTask<Object, Object, Bitmap> {
 		ImageView imageView; // displays the thumbnail
+		Uri uri; // image the thumbnail is for
 
 		// load thumbnail: ImageView, MediaType and Uri as args
 		@Override
 		protected Bitmap doInBackground(Object... params) {
 			imageView = (ImageView) params[0];
+			uri = (Uri) params[1];
 
-			return Slideshow.getThumbnail((Uri) params[1],
-					getContentResolver(), new BitmapFactory.Options());
+			return Slideshow.getThumbnail(uri, getContentResolver(),
+					new BitmapFactory.Options());
 		} // end method doInBackground
 
-		// set thumbnail on ListView
+		// set thumbnail on ListView, unless the row now shows another image
 		@Override
 		protected void onPostExecute(Bitmap result) {
 			super.onPostExecute(result);
-			imageView.setImageBitmap(result);
+
+			if (uri.equals(imageView.getTag()))
+				Slideshow.showThumbnail(imageView, result);
+			else
+				BitmapPool.getShared().put(result);
 		} // end method onPostExecute
 	} // end class LoadThumbnailTask
 } // end class SlideshowEditor
@@ -2,7 +2,7 @@
 // Plays the selected slideshow that's passed as an Intent extra
 package com.groupproject;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import android.app.Activity;
 import android.content.ContentResolver;
@@ -179,11 +179,14 @@ public class SlideshowPlayer extends Activity {
 				BitmapDrawable next = new BitmapDrawable(result);
 				next.setGravity(android.view.Gravity.CENTER);
 				Drawable previous = imageView.getDrawable();
+				Drawable dropped = null; // image no longer shown
 
 				// if previous is a TransitionDrawable,
 				// get its second Drawable item
-				if (previous instanceof TransitionDrawable)
+				if (previous instanceof TransitionDrawable) {
+					dropped = ((TransitionDrawable) previous).getDrawable(0);
 					previous = ((TransitionDrawable) previous).getDrawable(1);
+				} // end if
 
 				if (previous == null)
 					imageView.setImageDrawable(next);
@@ -195,25 +198,46 @@ public class SlideshowPlayer extends Activity {
 					transition.startTransition(1000);
 				} // end else
 
+				// the next image may decode into the dropped one's memory
+				if (dropped instanceof BitmapDrawable)
+					BitmapPool.getShared().put(
+							((BitmapDrawable) dropped).getBitmap());
+
 				handler.postDelayed(updateSlideshow, DURATION);
 			} // end method onPostExecute
 		} // end class LoadImageTask
 
-		// utility method to get a Bitmap from a Uri
-		public Bitmap getBitmap(Uri uri, ContentResolver cr,
-				BitmapFactory.Options options) {
-			Bitmap bitmap = null;
+		// utility method to get a Bitmap from a Uri, decoded into a pooled
+		// bitmap where the platform allows
+		public Bitmap getBitmap(final Uri uri, final ContentResolver cr,
+				BitmapFactory.Options template) {
+			// loads may overlap, so each gets its own options
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = template.inSampleSize;
+
+			BitmapPool.Decoder decoder = new BitmapPool.Decoder() {
+				@Override
+				public Bitmap decode(BitmapFactory.Options options)
+						throws IOException {
+					InputStream input = cr.openInputStream(uri);
+
+					try {
+						return BitmapFactory.decodeStream(input, null, options);
+					} // end try
+					finally {
+						input.close();
+					} // end finally
+				} // end method decode
+			}; // end Decoder
 
 			// get the image
 			try {
-				InputStream input = cr.openInputStream(uri);
-				bitmap = BitmapFactory.decodeStream(input, null, options);
+				return BitmapPool.getShared().decode(decoder, options);
 			} // end try
-			catch (FileNotFoundException e) {
+			catch (IOException e) {
 				Log.v(TAG, e.toString());
+				return null;
 			} // end catch
-
-			return bitmap;
 		} // end method getBitmap
 	}; // end Runnable updateSlideshow
 } // end class SlideshowPlayer
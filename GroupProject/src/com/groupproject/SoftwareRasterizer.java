@@ -0,0 +1,450 @@
+// SoftwareRasterizer.java
+// Renders StrokeRecords into an ARGB int array without android.graphics,
+// so drawings can be rendered, compared and benchmarked on any JVM.
+// Strokes are smoothed like DoodleView.buildPath and drawn with round
+// caps and one pixel of anti-aliasing, which is how DoodleView draws them.
+// The JVM tests in jvmtest check its output against stored images, and
+// DoodleEngine.compareWithSoftwareRasterizer measures it against Canvas.
+package com.groupproject;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+public class SoftwareRasterizer {
+	// largest distance, in pixels, between a curve and its flattened lines
+	private static final float FLATNESS = 0.1f;
+
+	private final int width; // size of the surface in pixels
+	private final int height;
+	private final int[] pixels; // unpremultiplied ARGB, row by row
+	private int originX; // drawing coordinates of the surface's top left
+	private int originY;
+	private float scale = 1; // surface pixels per drawing pixel
+	private float[] coverage = new float[0]; // per-stroke pixel coverage
+	private Polyline line = new Polyline(); // reused by render
+
+	// SoftwareRasterizer constructor; the surface starts transparent
+	public SoftwareRasterizer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		pixels = new int[width * height];
+	} // end SoftwareRasterizer constructor
+
+	// return the width of the surface
+	public int getWidth() {
+		return width;
+	} // end method getWidth
+
+	// return the height of the surface
+	public int getHeight() {
+		return height;
+	} // end method getHeight
+
+	// return the surface's pixels, in the layout of Bitmap.getPixels
+	public int[] getPixels() {
+		return pixels;
+	} // end method getPixels
+
+	// return the surface's pixels wrapped in an IntBuffer
+	public IntBuffer asIntBuffer() {
+		return IntBuffer.wrap(pixels);
+	} // end method asIntBuffer
+
+	// make the surface show the area starting at (x, y), in scaled
+	// drawing coordinates, instead of the area starting at (0, 0)
+	public void setOrigin(int x, int y) {
+		originX = x;
+		originY = y;
+	} // end method setOrigin
+
+	// render strokes scale times larger than they were drawn
+	public void setScale(float scale) {
+		this.scale = scale;
+	} // end method setScale
+
+	// set every pixel to color
+	public void fill(int color) {
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = color;
+	} // end method fill
+
+	// render a stroke over what is already on the surface; caps other than
+	// CAP_ROUND are drawn round, since DoodleView only records round caps
+	public void render(StrokeRecord stroke) {
+		if (stroke.isFill()) {
+			renderFill(stroke);
+			return;
+		} // end if
+
+		flatten(stroke, scale, line);
+		renderPieces(line, null, 0, line.getPieceCount(), stroke.getColor());
+	} // end method render
+
+	// render every stroke a document reader returns, in order
+	public void render(StrokeDocumentReader reader) throws IOException {
+		StrokeRecord stroke;
+
+		while ((stroke = reader.read()) != null)
+			render(stroke);
+	} // end method render
+
+	// render a flood fill's runs of pixels, scaled, with no anti-aliasing;
+	// each drawing pixel covers the surface pixels whose centers it holds
+	void renderFill(StrokeRecord fill) {
+		int[] spans = fill.getSpans();
+		int color = fill.getColor();
+
+		for (int i = 0; i < spans.length; i += 3) {
+			int top = Math.max(0, Math.round(spans[i] * scale) - originY);
+			int bottom = Math.min(height, Math.round((spans[i] + 1) * scale)
+					- originY);
+			int left = Math.max(0, Math.round(spans[i + 1] * scale) - originX);
+			int right = Math.min(width, Math.round(spans[i + 2] * scale)
+					- originX);
+
+			for (int y = top; y < bottom; y++)
+				for (int x = left; x < right; x++)
+					pixels[y * width + x] = blend(pixels[y * width + x],
+							color, 1);
+		} // end for
+	} // end method renderFill
+
+	// render some pieces of a flattened stroke as one stroke: pieces[from]
+	// to pieces[to - 1] are the indexes of the pieces, or if pieces is null
+	// every piece from index from to index to - 1 is rendered
+	void renderPieces(Polyline line, int[] pieces, int from, int to,
+			int color) {
+		// find the surface area the pieces can reach
+		float radius = 0;
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+
+		for (int i = from; i < to; i++) {
+			int piece = pieces == null ? i : pieces[i];
+
+			for (int end = 0; end < 2; end++) {
+				int point = Math.min(piece + end, line.count - 1);
+				minX = Math.min(minX, line.points[point * 2]);
+				maxX = Math.max(maxX, line.points[point * 2]);
+				minY = Math.min(minY, line.points[point * 2 + 1]);
+				maxY = Math.max(maxY, line.points[point * 2 + 1]);
+				radius = Math.max(radius, line.radii[point]);
+			} // end for
+		} // end for
+
+		float reach = radius + 1;
+		int left = Math.max(0, (int) Math.floor(minX - reach) - originX);
+		int top = Math.max(0, (int) Math.floor(minY - reach) - originY);
+		int right = Math.min(width, (int) Math.ceil(maxX + reach) - originX);
+		int bottom = Math.min(height, (int) Math.ceil(maxY + reach) - originY);
+
+		if (left >= right || top >= bottom)
+			return; // entirely off the surface
+
+		int areaWidth = right - left;
+		int area = areaWidth * (bottom - top);
+
+		if (coverage.length < area)
+			coverage = new float[area];
+		else
+			for (int i = 0; i < area; i++)
+				coverage[i] = 0;
+
+		// each pixel takes the coverage of the nearest line, so overlapping
+		// parts of one stroke are not blended twice
+		for (int i = from; i < to; i++) {
+			int piece = pieces == null ? i : pieces[i];
+			int end = Math.min(piece + 1, line.count - 1);
+			coverLine(line.points[piece * 2] - originX,
+					line.points[piece * 2 + 1] - originY, line.points[end * 2]
+							- originX, line.points[end * 2 + 1] - originY,
+					line.radii[piece], line.radii[end], left, top, right,
+					bottom);
+		} // end for
+
+		for (int y = top; y < bottom; y++) {
+			for (int x = left; x < right; x++) {
+				float c = coverage[(y - top) * areaWidth + x - left];
+
+				if (c > 0)
+					pixels[y * width + x] = blend(pixels[y * width + x],
+							color, c);
+			} // end for
+		} // end for
+	} // end method renderPieces
+
+	// a stroke's smoothed curve as connected straight pieces; piece i runs
+	// from point i to point i + 1, and a lone point is one piece. The
+	// line's half width is given at each point and changes evenly between
+	static class Polyline {
+		float[] points = new float[256]; // x, y pairs
+		float[] radii = new float[128]; // half the line width at each point
+		int count; // points in use
+
+		// return the number of pieces
+		int getPieceCount() {
+			return Math.max(1, count - 1);
+		} // end method getPieceCount
+
+		// append a point, growing the arrays if necessary
+		void add(float x, float y, float radius) {
+			if (count == radii.length) {
+				float[] larger = new float[points.length * 2];
+				System.arraycopy(points, 0, larger, 0, points.length);
+				points = larger;
+				larger = new float[radii.length * 2];
+				System.arraycopy(radii, 0, larger, 0, radii.length);
+				radii = larger;
+			} // end if
+
+			points[count * 2] = x;
+			points[count * 2 + 1] = y;
+			radii[count] = radius;
+			++count;
+		} // end method add
+	} // end class Polyline
+
+	// replace the contents of line with the stroke's smoothed curve, scaled;
+	// the curve is built the same way as DoodleView.buildPath: quadratic
+	// curves through the midpoints of the touch samples, using each sample
+	// as the control point. The width changes along each curve the same
+	// way, from the width at the midpoints and samples
+	static void flatten(StrokeRecord stroke, float scale, Polyline line) {
+		float penX = stroke.getX(0) * scale;
+		float penY = stroke.getY(0) * scale;
+		float penRadius = stroke.getWidth(0) * scale / 2;
+		line.count = 0;
+		line.add(penX, penY, penRadius);
+
+		for (int i = 1; i < stroke.getPointCount(); i++) {
+			float controlX = stroke.getX(i - 1) * scale;
+			float controlY = stroke.getY(i - 1) * scale;
+			float controlRadius = stroke.getWidth(i - 1) * scale / 2;
+			float endX = (stroke.getX(i) * scale + controlX) / 2;
+			float endY = (stroke.getY(i) * scale + controlY) / 2;
+			float endRadius = (stroke.getWidth(i) * scale / 2 + controlRadius) / 2;
+			flattenCurve(line, penX, penY, penRadius, controlX, controlY,
+					controlRadius, endX, endY, endRadius);
+			penX = endX;
+			penY = endY;
+			penRadius = endRadius;
+		} // end for
+	} // end method flatten
+
+	// append to line the quadratic curve from the pen position (the last
+	// point of line) through control to end, as straight pieces, with the
+	// half width moving from penRadius to endRadius the same way
+	static void flattenCurve(Polyline line, float penX, float penY,
+			float penRadius, float controlX, float controlY,
+			float controlRadius, float endX, float endY, float endRadius) {
+		// the curve strays from its chord by at most a quarter of
+		// |start - 2 * control + end|, and splitting it into n pieces
+		// divides that by n squared
+		float ddx = penX - 2 * controlX + endX;
+		float ddy = penY - 2 * controlY + endY;
+		float deviation = (float) Math.sqrt(ddx * ddx + ddy * ddy) / 4;
+		int pieces = Math.max(1,
+				(int) Math.ceil(Math.sqrt(deviation / FLATNESS)));
+
+		for (int p = 1; p <= pieces; p++) {
+			float t = (float) p / pieces;
+			float u = 1 - t;
+			line.add(u * u * penX + 2 * u * t * controlX + t * t * endX, u
+					* u * penY + 2 * u * t * controlY + t * t * endY, u * u
+					* penRadius + 2 * u * t * controlRadius + t * t * endRadius);
+		} // end for
+	} // end method flattenCurve
+
+	// raise the coverage of pixels near the line from (x0, y0) to (x1, y1);
+	// a pixel whose center is d from the line is covered by
+	// radius + 0.5 - d, clamped to 0..1, which approximates the area of the
+	// pixel inside the line. The radius goes evenly from radius0 to radius1
+	// and is taken where the pixel center meets the line; rows are scanned
+	// over the span of the wider end
+	private void coverLine(float x0, float y0, float x1, float y1,
+			float radius0, float radius1, int left, int top, int right,
+			int bottom) {
+		float radius = Math.max(radius0, radius1);
+		boolean tapered = radius0 != radius1;
+		float reach = radius + 0.5f;
+		float reachSquared = reach * reach;
+		float inside = Math.max(0, radius - 0.5f); // coverage 1 within this
+		float insideSquared = inside * inside;
+		int firstX = Math.max(left, (int) Math.floor(Math.min(x0, x1) - reach));
+		int lastX = Math.min(right, (int) Math.ceil(Math.max(x0, x1) + reach));
+		int firstY = Math.max(top, (int) Math.floor(Math.min(y0, y1) - reach));
+		int lastY = Math.min(bottom, (int) Math.ceil(Math.max(y0, y1) + reach));
+		float dx = x1 - x0;
+		float dy = y1 - y0;
+		float lengthSquared = dx * dx + dy * dy;
+		float length = (float) Math.sqrt(lengthSquared);
+		int areaWidth = right - left;
+
+		for (int y = firstY; y < lastY; y++) {
+			float py = y + 0.5f - y0; // pixel center relative to (x0, y0)
+
+			// the covered area is convex, so each row crosses it once; find
+			// where, from the round ends and the band between them
+			float spanLeft = Float.MAX_VALUE;
+			float spanRight = -Float.MAX_VALUE;
+
+			if (py * py < reachSquared) {
+				float w = (float) Math.sqrt(reachSquared - py * py);
+				spanLeft = -w;
+				spanRight = w;
+			} // end if
+
+			float qy = py - dy;
+
+			if (qy * qy < reachSquared) {
+				float w = (float) Math.sqrt(reachSquared - qy * qy);
+				spanLeft = Math.min(spanLeft, dx - w);
+				spanRight = Math.max(spanRight, dx + w);
+			} // end if
+
+			if (lengthSquared > 0) {
+				// points projecting inside the segment, closer than reach
+				float bandLeft = -Float.MAX_VALUE;
+				float bandRight = Float.MAX_VALUE;
+
+				if (dx != 0) {
+					float a = -py * dy / dx;
+					float b = (lengthSquared - py * dy) / dx;
+					bandLeft = Math.min(a, b);
+					bandRight = Math.max(a, b);
+				} // end if
+				else if (py * dy < 0 || py * dy > lengthSquared)
+					bandRight = bandLeft; // row misses the band
+
+				if (dy != 0) {
+					float a = (py * dx - reach * length) / dy;
+					float b = (py * dx + reach * length) / dy;
+					bandLeft = Math.max(bandLeft, Math.min(a, b));
+					bandRight = Math.min(bandRight, Math.max(a, b));
+				} // end if
+				else if (Math.abs(py) >= reach)
+					bandRight = bandLeft; // row misses the band
+
+				if (bandLeft < bandRight) {
+					spanLeft = Math.min(spanLeft, bandLeft);
+					spanRight = Math.max(spanRight, bandRight);
+				} // end if
+			} // end if
+
+			if (spanLeft > spanRight)
+				continue; // row misses the line
+
+			int rowLeft = Math.max(firstX,
+					(int) Math.floor(x0 + spanLeft - 0.5f));
+			int rowRight = Math.min(lastX,
+					(int) Math.ceil(x0 + spanRight - 0.5f) + 1);
+
+			for (int x = rowLeft; x < rowRight; x++) {
+				int index = (y - top) * areaWidth + x - left;
+
+				if (coverage[index] == 1)
+					continue; // already fully covered by another piece
+
+				float px = x + 0.5f - x0;
+				float t = 0;
+
+				if (lengthSquared > 0)
+					t = Math.max(0, Math.min(1, (px * dx + py * dy)
+							/ lengthSquared));
+
+				float nearX = px - t * dx;
+				float nearY = py - t * dy;
+				float distanceSquared = nearX * nearX + nearY * nearY;
+				float pixelReach = reach;
+				float pixelInsideSquared = insideSquared;
+
+				if (tapered) {
+					float pixelRadius = radius0 + (radius1 - radius0) * t;
+					pixelReach = pixelRadius + 0.5f;
+					float pixelInside = Math.max(0, pixelRadius - 0.5f);
+					pixelInsideSquared = pixelInside * pixelInside;
+				} // end if
+
+				if (distanceSquared >= pixelReach * pixelReach)
+					continue; // not covered
+
+				// most covered pixels are fully inside the line, and need
+				// no square root
+				if (distanceSquared <= pixelInsideSquared)
+					coverage[index] = 1;
+				else {
+					float c = pixelReach - (float) Math.sqrt(distanceSquared);
+
+					if (c > coverage[index])
+						coverage[index] = c;
+				} // end else
+			} // end for
+		} // end for
+	} // end method coverLine
+
+	// return color drawn over dst with the given coverage, source-over
+	private static int blend(int dst, int color, float coverage) {
+		float srcA = (color >>> 24) / 255f * coverage;
+		float dstA = (dst >>> 24) / 255f;
+		float outA = srcA + dstA * (1 - srcA);
+
+		if (outA <= 0)
+			return 0;
+
+		float dstWeight = dstA * (1 - srcA);
+		int r = Math.round((((color >> 16) & 0xFF) * srcA + ((dst >> 16) & 0xFF)
+				* dstWeight)
+				/ outA);
+		int g = Math.round((((color >> 8) & 0xFF) * srcA + ((dst >> 8) & 0xFF)
+				* dstWeight)
+				/ outA);
+		int b = Math.round(((color & 0xFF) * srcA + (dst & 0xFF) * dstWeight)
+				/ outA);
+		return (Math.round(outA * 255) << 24) | (r << 16) | (g << 8) | b;
+	} // end method blend
+
+	// return how far apart two images of the same size are
+	public static Comparison compare(int[] expected, int[] actual,
+			int tolerance) {
+		if (expected.length != actual.length)
+			throw new IllegalArgumentException("images differ in size");
+
+		Comparison result = new Comparison();
+		long total = 0;
+
+		for (int i = 0; i < expected.length; i++) {
+			int worst = 0;
+
+			for (int shift = 0; shift < 32; shift += 8) {
+				int difference = Math.abs(((expected[i] >>> shift) & 0xFF)
+						- ((actual[i] >>> shift) & 0xFF));
+				worst = Math.max(worst, difference);
+				total += difference;
+			} // end for
+
+			result.maxError = Math.max(result.maxError, worst);
+
+			if (worst > tolerance)
+				++result.differingPixels;
+		} // end for
+
+		result.meanError = expected.length == 0 ? 0 : (double) total
+				/ (expected.length * 4);
+		return result;
+	} // end method compare
+
+	// differences between two images, from compare
+	public static class Comparison {
+		public int maxError; // largest channel difference, 0-255
+		public double meanError; // average channel difference
+		public int differingPixels; // pixels differing by over tolerance
+
+		@Override
+		public String toString() {
+			return "max " + maxError + ", mean " + meanError + ", "
+					+ differingPixels + " pixels over tolerance";
+		} // end method toString
+	} // end class Comparison
+} // end class SoftwareRasterizer
@@ -0,0 +1,97 @@
+// StampBrush.java
+// Textured brushes drawn as a run of small images ("dabs") stamped at even
+// spacing along a stroke's curve. A dab's pixels depend only on the brush,
+// color and size, so they are made once and stamped many times.
+package com.groupproject;
+
+import java.util.Random;
+
+public class StampBrush {
+	// brushes; PEN is the solid line drawn as a path, not stamped
+	public static final int PEN = 0;
+	public static final int AIRBRUSH = 1; // soft, faint spray that builds up
+	public static final int CHALK = 2; // grainy, broken edge
+	public static final int MARKER = 3; // flat, slanted nib
+	public static final int BRUSH_COUNT = 4;
+
+	// distance between dabs as a share of the line width, per brush
+	private static final float[] SPACING = { 0, 0.15f, 0.3f, 0.08f };
+
+	// share of the dab's radius that is fully opaque, per brush; the rest
+	// fades to the edge
+	private static final float[] HARDNESS = { 1, 0.05f, 0.85f, 0.9f };
+
+	// opacity of a single dab, per brush
+	private static final float[] FLOW = { 1, 0.1f, 0.7f, 1 };
+
+	// the marker nib's thickness as a share of its width, and its slant
+	private static final float NIB_ASPECT = 0.35f;
+	private static final double NIB_ANGLE = Math.PI / 4;
+
+	// return true if the brush is drawn with dabs
+	public static boolean isStamped(int brush) {
+		return brush != PEN;
+	} // end method isStamped
+
+	// return the width and height of the brush's dab for a line width, in
+	// pixels; one pixel is left around the line for the soft edge
+	public static int getDabSize(float lineWidth) {
+		return Math.max(2, (int) Math.ceil(lineWidth) + 2);
+	} // end method getDabSize
+
+	// return the distance between dab centers for a line width, in pixels
+	public static float getSpacing(int brush, float lineWidth) {
+		return Math.max(1, lineWidth * SPACING[brush]);
+	} // end method getSpacing
+
+	// return the pixels of a size by size dab of brush in color, as
+	// unpremultiplied ARGB ints in rows; the same arguments always give the
+	// same pixels, so strokes repaint exactly as they were drawn
+	public static int[] makeDab(int brush, int color, int size) {
+		int[] pixels = new int[size * size];
+		float radius = (size - 2) / 2f;
+		float center = size / 2f;
+		float hard = HARDNESS[brush];
+
+		// the fade is at least a pixel wide, so hard edges are smooth
+		float fade = Math.max(1 - hard, Math.min(1, 1 / Math.max(radius,
+				0.5f)));
+		int alpha = Math.round((color >>> 24) * FLOW[brush]);
+		int rgb = color & 0xFFFFFF;
+		Random grain = new Random(size * 31 + brush); // same grain each time
+		float cos = (float) Math.cos(NIB_ANGLE);
+		float sin = (float) Math.sin(NIB_ANGLE);
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				float dx = x + 0.5f - center;
+				float dy = y + 0.5f - center;
+
+				if (brush == MARKER) {
+					// measure across the slanted nib in units of its width
+					float along = dx * cos + dy * sin;
+					float across = (-dx * sin + dy * cos) / NIB_ASPECT;
+					dx = along;
+					dy = across;
+				} // end if
+
+				float distance = (float) Math.sqrt(dx * dx + dy * dy)
+						/ Math.max(radius, 0.5f);
+				float coverage = Math.max(0, Math.min(1, (1 - distance) / fade));
+
+				// smoothstep keeps soft brushes free of a visible ring
+				coverage = coverage * coverage * (3 - 2 * coverage);
+
+				if (brush == CHALK) {
+					float g = grain.nextFloat();
+					coverage *= g < 0.3f ? 0 : 0.5f + 0.5f * g;
+				} // end if
+
+				int a = Math.round(alpha * coverage);
+				pixels[y * size + x] = a == 0 ? 0 : (a << 24) | rgb;
+			} // end for
+		} // end for
+
+		return pixels;
+	} // end method makeDab
+} // end class StampBrush
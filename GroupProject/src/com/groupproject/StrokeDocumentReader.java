@@ -0,0 +1,261 @@
+// StrokeDocumentReader.java
+// Reads the strokes of a document written by StrokeDocumentWriter one at
+// a time, so a drawing can be loaded without holding the whole file.
+package com.groupproject;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StrokeDocumentReader {
+	// limits on what a document may describe; beyond them it is taken to
+	// be damaged rather than allocated for
+	private static final int MAX_SIZE = 1 << 14; // drawing area side
+	private static final int MAX_STRING = 4096; // bytes in a string
+	private static final int MAX_POINTS = 1 << 18; // points in a stroke
+	private static final int MAX_SPANS = 1 << 20; // runs in a fill
+
+	private final InputStream in; // buffered source
+	private final int width; // size of the drawing area
+	private final int height;
+	private final String overlayUri; // photo under the strokes, or null
+	private final List<Integer> colorTable; // colors in order of definition
+	private final List<Float> widthTable; // widths in order of definition
+	private float[] points = new float[256]; // reused point buffer
+	private float[] widths = new float[128]; // reused width buffer
+	private boolean finished; // true once TAG_END has been read
+
+	// StrokeDocumentReader constructor reads and checks the header
+	public StrokeDocumentReader(InputStream in) throws IOException {
+		this.in = new BufferedInputStream(in);
+		colorTable = new ArrayList<Integer>();
+		widthTable = new ArrayList<Float>();
+
+		for (byte b : StrokeDocumentWriter.MAGIC)
+			if (readByte() != b)
+				throw new IOException("not a doodle document");
+
+		int version = readVarint();
+
+		if (version < 0 || version > StrokeDocumentWriter.VERSION)
+			throw new IOException("unsupported document version " + version);
+
+		width = readCount("width", 0, MAX_SIZE);
+		height = readCount("height", 0, MAX_SIZE);
+		String uri = readString();
+		overlayUri = uri.length() == 0 ? null : uri;
+	} // end StrokeDocumentReader constructor
+
+	// return the width of the drawing area
+	public int getWidth() {
+		return width;
+	} // end method getWidth
+
+	// return the height of the drawing area
+	public int getHeight() {
+		return height;
+	} // end method getHeight
+
+	// return the URI of the photo the strokes were drawn over, or null
+	public String getOverlayUri() {
+		return overlayUri;
+	} // end method getOverlayUri
+
+	// return the next stroke, or null at the end of the document
+	public StrokeRecord read() throws IOException {
+		while (!finished) {
+			int tag = readByte();
+
+			switch (tag) {
+			case StrokeDocumentWriter.TAG_END:
+				finished = true;
+				break;
+			case StrokeDocumentWriter.TAG_COLOR:
+				colorTable.add(readInt());
+				break;
+			case StrokeDocumentWriter.TAG_WIDTH:
+				widthTable.add((float) readCount("width", 0,
+						Integer.MAX_VALUE) / StrokeDocumentWriter.SCALE);
+				break;
+			case StrokeDocumentWriter.TAG_STROKE:
+				return readStroke(StampBrush.PEN);
+			case StrokeDocumentWriter.TAG_STAMP_STROKE:
+				return readStroke(readCount("brush", 0,
+						StampBrush.BRUSH_COUNT - 1));
+			case StrokeDocumentWriter.TAG_VARIABLE_STROKE:
+				return readVariableStroke();
+			case StrokeDocumentWriter.TAG_FILL:
+				return readFill();
+			default:
+				throw new IOException("unknown record tag " + tag);
+			} // end switch
+		} // end while
+
+		return null;
+	} // end method read
+
+	// read the body of a TAG_STROKE record, or what follows the brush in a
+	// TAG_STAMP_STROKE record
+	private StrokeRecord readStroke(int brush) throws IOException {
+		int colorIndex = readCount("color", 0, colorTable.size() - 1);
+		int widthIndex = readCount("width", 0, widthTable.size() - 1);
+		int cap = readCount("cap", 0, StrokeRecord.CAP_SQUARE);
+		int pointCount = readCount("point count", 1, MAX_POINTS);
+		int x = 0;
+		int y = 0;
+
+		for (int i = 0; i < pointCount; i++) {
+			// grow with the points actually read, not the count claimed
+			if (i * 2 == points.length)
+				points = copyOf(points, points.length * 2);
+
+			x += unZigZag(readVarint());
+			y += unZigZag(readVarint());
+			points[i * 2] = (float) x / StrokeDocumentWriter.SCALE;
+			points[i * 2 + 1] = (float) y / StrokeDocumentWriter.SCALE;
+		} // end for
+
+		return new StrokeRecord(points, pointCount, colorTable.get(colorIndex),
+				widthTable.get(widthIndex), cap, brush);
+	} // end method readStroke
+
+	// read the body of a TAG_VARIABLE_STROKE record
+	private StrokeRecord readVariableStroke() throws IOException {
+		int colorIndex = readCount("color", 0, colorTable.size() - 1);
+		int pointCount = readCount("point count", 1, MAX_POINTS);
+		int x = 0;
+		int y = 0;
+		int width = 0;
+
+		for (int i = 0; i < pointCount; i++) {
+			// grow with the points actually read, not the count claimed
+			if (i * 2 == points.length)
+				points = copyOf(points, points.length * 2);
+
+			if (i == widths.length)
+				widths = copyOf(widths, widths.length * 2);
+
+			x += unZigZag(readVarint());
+			y += unZigZag(readVarint());
+			width += unZigZag(readVarint());
+			points[i * 2] = (float) x / StrokeDocumentWriter.SCALE;
+			points[i * 2 + 1] = (float) y / StrokeDocumentWriter.SCALE;
+			widths[i] = (float) width / StrokeDocumentWriter.SCALE;
+		} // end for
+
+		return new StrokeRecord(points, widths, pointCount, colorTable
+				.get(colorIndex));
+	} // end method readVariableStroke
+
+	// read the body of a TAG_FILL record
+	private StrokeRecord readFill() throws IOException {
+		int colorIndex = readCount("color", 0, colorTable.size() - 1);
+		float x = (float) unZigZag(readVarint()) / StrokeDocumentWriter.SCALE;
+		float y = (float) unZigZag(readVarint()) / StrokeDocumentWriter.SCALE;
+		int spanCount = readCount("span count", 1, MAX_SPANS);
+
+		// grow with the runs actually read, not the count claimed
+		int[] spans = new int[Math.min(spanCount, 256) * 3];
+		int row = 0;
+		int first = 0;
+
+		for (int i = 0; i < spanCount * 3; i += 3) {
+			if (i == spans.length)
+				spans = copyOf(spans, spans.length * 2);
+
+			row += unZigZag(readVarint());
+			first += unZigZag(readVarint());
+			spans[i] = row;
+			spans[i + 1] = first;
+			spans[i + 2] = first + readCount("span length", 0, MAX_SIZE);
+		} // end for
+
+		return new StrokeRecord(x, y, colorTable.get(colorIndex), spans,
+				spanCount);
+	} // end method readFill
+
+	// close the source
+	public void close() throws IOException {
+		in.close();
+	} // end method close
+
+	// undo StrokeDocumentWriter.zigZag
+	private static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	} // end method unZigZag
+
+	// read one byte, failing at the end of the stream
+	private int readByte() throws IOException {
+		int b = in.read();
+
+		if (b < 0)
+			throw new EOFException("document is truncated");
+
+		return b;
+	} // end method readByte
+
+	// read an unsigned LEB128 varint of up to 32 bits; values of 2^31 and
+	// up come back negative, as zigZag expects
+	private int readVarint() throws IOException {
+		int value = 0;
+
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+
+			if (shift == 28 && (b & 0x70) != 0)
+				break; // more than 32 bits
+
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return value;
+		} // end for
+
+		throw new IOException("malformed varint");
+	} // end method readVarint
+
+	// read a varint that counts or indexes something, failing unless it is
+	// from min to max
+	private int readCount(String name, int min, int max) throws IOException {
+		int value = readVarint();
+
+		if (value < min || value > max)
+			throw new IOException(name + " out of range: "
+					+ (value & 0xFFFFFFFFL));
+
+		return value;
+	} // end method readCount
+
+	// return a copy of array with the given length
+	private static float[] copyOf(float[] array, int length) {
+		float[] copy = new float[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	} // end method copyOf
+
+	// return a copy of array with the given length
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	} // end method copyOf
+
+	// read a 4-byte big-endian int
+	private int readInt() throws IOException {
+		return (readByte() << 24) | (readByte() << 16) | (readByte() << 8)
+				| readByte();
+	} // end method readInt
+
+	// read a length-prefixed UTF-8 string
+	private String readString() throws IOException {
+		byte[] bytes = new byte[readCount("string length", 0, MAX_STRING)];
+
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) readByte();
+
+		return new String(bytes, "UTF-8");
+	} // end method readString
+} // end class StrokeDocumentReader
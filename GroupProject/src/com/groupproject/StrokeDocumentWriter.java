@@ -0,0 +1,226 @@
+// StrokeDocumentWriter.java
+// Writes a drawing as a compact stream of strokes that can be reopened
+// and edited, unlike the flattened JPEG written by DoodleView.saveImage.
+//
+// Document layout (all integers are unsigned LEB128 varints unless noted):
+//   magic "DOOD" (4 bytes), version, width, height, overlay URI string
+//   then a sequence of tagged records, ended by TAG_END:
+//     TAG_COLOR  color (4 bytes, ARGB big-endian), added to color table
+//     TAG_WIDTH  width in 1/SCALE pixels, added to width table
+//     TAG_STROKE color index, width index, cap, point count, then the
+//                points in 1/SCALE pixels: zig-zag first x and y, then
+//                zig-zag deltas from the previous point
+//     TAG_VARIABLE_STROKE  color index, point count, then x, y and line
+//                width per point, each in 1/SCALE pixels as a zig-zag
+//                delta from the previous point's (version 2)
+//     TAG_STAMP_STROKE  brush, then the fields of TAG_STROKE, for strokes
+//                stamped with a StampBrush (version 3)
+//     TAG_FILL   color index, zig-zag start x and y in 1/SCALE pixels, run
+//                count, then per run of filled pixels: zig-zag row delta
+//                from the previous run, zig-zag first x delta from the
+//                previous run's, and length (version 4)
+// Strings are a varint byte count followed by UTF-8 bytes; an empty string
+// means "none".
+package com.groupproject;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public class StrokeDocumentWriter {
+	public static final byte[] MAGIC = { 'D', 'O', 'O', 'D' };
+	public static final int VERSION = 4; // current document version
+	public static final int SCALE = 4; // fixed-point steps per pixel
+
+	// record tags
+	public static final int TAG_END = 0;
+	public static final int TAG_COLOR = 1;
+	public static final int TAG_WIDTH = 2;
+	public static final int TAG_STROKE = 3;
+	public static final int TAG_VARIABLE_STROKE = 4;
+	public static final int TAG_STAMP_STROKE = 5;
+	public static final int TAG_FILL = 6;
+
+	private final OutputStream out; // buffered destination
+	private final Map<Integer, Integer> colorTable; // color -> index
+	private final Map<Integer, Integer> widthTable; // fixed width -> index
+	private int strokeCount; // strokes written so far
+
+	// StrokeDocumentWriter constructor writes the document header;
+	// overlayUri is the photo the strokes were drawn over, or null
+	public StrokeDocumentWriter(OutputStream out, int width, int height,
+			String overlayUri) throws IOException {
+		this.out = new BufferedOutputStream(out);
+		colorTable = new HashMap<Integer, Integer>();
+		widthTable = new HashMap<Integer, Integer>();
+
+		this.out.write(MAGIC);
+		writeVarint(VERSION);
+		writeVarint(width);
+		writeVarint(height);
+		writeString(overlayUri == null ? "" : overlayUri);
+	} // end StrokeDocumentWriter constructor
+
+	// append one stroke to the document
+	public void write(StrokeRecord stroke) throws IOException {
+		// add the color and width to their tables the first time they appear
+		Integer colorIndex = colorTable.get(stroke.getColor());
+
+		if (colorIndex == null) {
+			colorIndex = colorTable.size();
+			colorTable.put(stroke.getColor(), colorIndex);
+			out.write(TAG_COLOR);
+			writeInt(stroke.getColor());
+		} // end if
+
+		if (stroke.hasWidths()) {
+			writeVariableStroke(stroke, colorIndex);
+			return;
+		} // end if
+
+		if (stroke.isFill()) {
+			writeFill(stroke, colorIndex);
+			return;
+		} // end if
+
+		int fixedWidth = Math.round(stroke.getWidth() * SCALE);
+		Integer widthIndex = widthTable.get(fixedWidth);
+
+		if (widthIndex == null) {
+			widthIndex = widthTable.size();
+			widthTable.put(fixedWidth, widthIndex);
+			out.write(TAG_WIDTH);
+			writeVarint(fixedWidth);
+		} // end if
+
+		if (StampBrush.isStamped(stroke.getBrush())) {
+			out.write(TAG_STAMP_STROKE);
+			writeVarint(stroke.getBrush());
+		} // end if
+		else
+			out.write(TAG_STROKE);
+
+		writeVarint(colorIndex);
+		writeVarint(widthIndex);
+		writeVarint(stroke.getCap());
+		writeVarint(stroke.getPointCount());
+
+		// most consecutive samples are close together, so their deltas fit
+		// in one or two bytes per coordinate
+		int lastX = 0;
+		int lastY = 0;
+
+		for (int i = 0; i < stroke.getPointCount(); i++) {
+			int x = Math.round(stroke.getX(i) * SCALE);
+			int y = Math.round(stroke.getY(i) * SCALE);
+			writeVarint(zigZag(x - lastX));
+			writeVarint(zigZag(y - lastY));
+			lastX = x;
+			lastY = y;
+		} // end for
+
+		++strokeCount;
+	} // end method write
+
+	// append a stroke whose width varies, with its width at every point
+	private void writeVariableStroke(StrokeRecord stroke, int colorIndex)
+			throws IOException {
+		out.write(TAG_VARIABLE_STROKE);
+		writeVarint(colorIndex);
+		writeVarint(stroke.getPointCount());
+
+		// the width changes a little from sample to sample, so its deltas
+		// are small too
+		int lastX = 0;
+		int lastY = 0;
+		int lastWidth = 0;
+
+		for (int i = 0; i < stroke.getPointCount(); i++) {
+			int x = Math.round(stroke.getX(i) * SCALE);
+			int y = Math.round(stroke.getY(i) * SCALE);
+			int width = Math.round(stroke.getWidth(i) * SCALE);
+			writeVarint(zigZag(x - lastX));
+			writeVarint(zigZag(y - lastY));
+			writeVarint(zigZag(width - lastWidth));
+			lastX = x;
+			lastY = y;
+			lastWidth = width;
+		} // end for
+
+		++strokeCount;
+	} // end method writeVariableStroke
+
+	// append a flood fill as the runs of pixels it filled
+	private void writeFill(StrokeRecord fill, int colorIndex)
+			throws IOException {
+		int[] spans = fill.getSpans();
+		out.write(TAG_FILL);
+		writeVarint(colorIndex);
+		writeVarint(zigZag(Math.round(fill.getX(0) * SCALE)));
+		writeVarint(zigZag(Math.round(fill.getY(0) * SCALE)));
+		writeVarint(spans.length / 3);
+
+		// runs come a row or so apart and start near each other
+		int lastY = 0;
+		int lastFirst = 0;
+
+		for (int i = 0; i < spans.length; i += 3) {
+			writeVarint(zigZag(spans[i] - lastY));
+			writeVarint(zigZag(spans[i + 1] - lastFirst));
+			writeVarint(spans[i + 2] - spans[i + 1]);
+			lastY = spans[i];
+			lastFirst = spans[i + 1];
+		} // end for
+
+		++strokeCount;
+	} // end method writeFill
+
+	// return the number of strokes written so far
+	public int getStrokeCount() {
+		return strokeCount;
+	} // end method getStrokeCount
+
+	// end the document and flush it without closing the destination
+	public void finish() throws IOException {
+		out.write(TAG_END);
+		out.flush();
+	} // end method finish
+
+	// end the document and close the destination
+	public void close() throws IOException {
+		finish();
+		out.close();
+	} // end method close
+
+	// map signed values to unsigned so small negatives stay small
+	private static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	} // end method zigZag
+
+	// write an unsigned LEB128 varint
+	private void writeVarint(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		} // end while
+
+		out.write(value);
+	} // end method writeVarint
+
+	// write a 4-byte big-endian int
+	private void writeInt(int value) throws IOException {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	} // end method writeInt
+
+	// write a length-prefixed UTF-8 string
+	private void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		writeVarint(bytes.length);
+		out.write(bytes);
+	} // end method writeString
+} // end class StrokeDocumentWriter
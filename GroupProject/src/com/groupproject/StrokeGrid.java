@@ -0,0 +1,301 @@
+// StrokeGrid.java
+// Uniform grid over the segments of recorded strokes, so the strokes near
+// a point or inside an area are found without testing every stroke.
+package com.groupproject;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class StrokeGrid {
+	public static final int CELL_SIZE = 64; // width and height of a cell
+
+	private final List<StrokeRecord> strokes; // indexed strokes, by ID
+	private final int columns; // size of the grid in cells
+	private final int rows;
+	private final int[][] cells; // (stroke ID, segment) pairs in each cell
+	private final int[] cellSizes; // ints used in each cell's array
+	private int[] found = new int[64]; // reused by query
+
+	// StrokeGrid constructor for a width x height drawing area; strokes is
+	// the list the IDs passed to add and remove refer to
+	public StrokeGrid(List<StrokeRecord> strokes, int width, int height) {
+		this.strokes = strokes;
+		columns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+		rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+		cells = new int[columns * rows][];
+		cellSizes = new int[columns * rows];
+	} // end StrokeGrid constructor
+
+	// index every segment of the stroke with the given ID
+	public void add(int id) {
+		StrokeRecord stroke = strokes.get(id);
+		float pad = stroke.getWidth() / 2;
+
+		// a fill is one segment covering every cell of its bounds
+		if (stroke.isFill()) {
+			int lastColumn = column(stroke.getRight());
+			int lastRow = row(stroke.getBottom());
+
+			for (int row = row(stroke.getTop()); row <= lastRow; row++)
+				for (int column = column(stroke.getLeft()); column <= lastColumn; column++)
+					insert(row * columns + column, id, 0);
+
+			return;
+		} // end if
+
+		for (int segment = 0; segment < segmentCount(stroke); segment++) {
+			int end = Math.min(segment + 1, stroke.getPointCount() - 1);
+			float x0 = stroke.getX(segment);
+			float y0 = stroke.getY(segment);
+			float x1 = stroke.getX(end);
+			float y1 = stroke.getY(end);
+			int firstColumn = column(Math.min(x0, x1) - pad);
+			int lastColumn = column(Math.max(x0, x1) + pad);
+			int firstRow = row(Math.min(y0, y1) - pad);
+			int lastRow = row(Math.max(y0, y1) + pad);
+
+			for (int row = firstRow; row <= lastRow; row++)
+				for (int column = firstColumn; column <= lastColumn; column++)
+					insert(row * columns + column, id, segment);
+		} // end for
+	} // end method add
+
+	// remove every segment of the stroke with the given ID
+	public void remove(int id) {
+		StrokeRecord stroke = strokes.get(id);
+		int lastColumn = column(stroke.getRight());
+		int lastRow = row(stroke.getBottom());
+
+		for (int row = row(stroke.getTop()); row <= lastRow; row++) {
+			for (int column = column(stroke.getLeft()); column <= lastColumn; column++) {
+				int index = row * columns + column;
+				int[] cell = cells[index];
+
+				// move the last pair into each removed pair's place
+				for (int i = 0; i < cellSizes[index];) {
+					if (cell[i] == id) {
+						cellSizes[index] -= 2;
+						cell[i] = cell[cellSizes[index]];
+						cell[i + 1] = cell[cellSizes[index] + 1];
+					} // end if
+					else
+						i += 2;
+				} // end for
+			} // end for
+		} // end for
+	} // end method remove
+
+	// return the IDs, in increasing order, of every visible stroke painted
+	// within radius of (x, y)
+	public int[] hitTestAll(float x, float y, float radius, BitSet visible) {
+		int count = 0;
+		int lastColumn = column(x + radius);
+		int lastRow = row(y + radius);
+
+		for (int row = row(y - radius); row <= lastRow; row++) {
+			for (int column = column(x - radius); column <= lastColumn; column++) {
+				int index = row * columns + column;
+				int[] cell = cells[index];
+
+				for (int i = 0; i < cellSizes[index]; i += 2) {
+					int id = cell[i];
+
+					if (visible.get(id)
+							&& hits(id, cell[i + 1], x, y, radius)) {
+						if (count == found.length)
+							found = copyOf(found, count * 2);
+
+						found[count++] = id;
+					} // end if
+				} // end for
+			} // end for
+		} // end for
+
+		return sortUnique(count);
+	} // end method hitTestAll
+
+	// return true if stroke id is painted within radius of (x, y) near the
+	// segment starting at point
+	private boolean hits(int id, int point, float x, float y, float radius) {
+		StrokeRecord stroke = strokes.get(id);
+		float reach = radius + stroke.getWidth() / 2;
+
+		if (stroke.isFill())
+			return fillContains(stroke, x, y);
+
+		return distanceSquared(stroke, point, x, y) <= reach * reach;
+	} // end method hits
+
+	// return the IDs, in increasing order, of the strokes with a segment
+	// whose bounds may intersect the given area
+	public int[] query(float left, float top, float right, float bottom) {
+		int count = 0;
+		int lastColumn = column(right);
+		int lastRow = row(bottom);
+
+		for (int row = row(top); row <= lastRow; row++) {
+			for (int column = column(left); column <= lastColumn; column++) {
+				int index = row * columns + column;
+
+				for (int i = 0; i < cellSizes[index]; i += 2) {
+					if (count == found.length)
+						found = copyOf(found, count * 2);
+
+					found[count++] = cells[index][i];
+				} // end for
+			} // end for
+		} // end for
+
+		return sortUnique(count);
+	} // end method query
+
+	// return the first count IDs in found sorted, each once; a stroke
+	// appears once per segment in each cell it crosses
+	private int[] sortUnique(int count) {
+		Arrays.sort(found, 0, count);
+		int unique = 0;
+
+		for (int i = 0; i < count; i++)
+			if (unique == 0 || found[i] != found[unique - 1])
+				found[unique++] = found[i];
+
+		return copyOf(found, unique);
+	} // end method sortUnique
+
+	// return the IDs, in increasing order, of the visible strokes whose
+	// points all lie inside the closed polygon of count (x, y) pairs
+	public int[] selectInside(float[] polygon, int count, BitSet visible) {
+		float left = Float.MAX_VALUE;
+		float top = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+
+		for (int i = 0; i < count; i++) {
+			left = Math.min(left, polygon[i * 2]);
+			right = Math.max(right, polygon[i * 2]);
+			top = Math.min(top, polygon[i * 2 + 1]);
+			bottom = Math.max(bottom, polygon[i * 2 + 1]);
+		} // end for
+
+		int[] candidates = query(left, top, right, bottom);
+		int selected = 0;
+
+		for (int id : candidates) {
+			if (!visible.get(id))
+				continue;
+
+			StrokeRecord stroke = strokes.get(id);
+			boolean inside = true;
+
+			if (stroke.isFill()) // the lasso must surround the whole fill
+				inside = contains(polygon, count, stroke.getLeft(), stroke
+						.getTop())
+						&& contains(polygon, count, stroke.getRight(), stroke
+								.getTop())
+						&& contains(polygon, count, stroke.getLeft(), stroke
+								.getBottom())
+						&& contains(polygon, count, stroke.getRight(), stroke
+								.getBottom());
+
+			for (int i = 0; inside && i < stroke.getPointCount(); i++)
+				inside = contains(polygon, count, stroke.getX(i),
+						stroke.getY(i));
+
+			if (inside)
+				candidates[selected++] = id;
+		} // end for
+
+		return copyOf(candidates, selected);
+	} // end method selectInside
+
+	// return true if (x, y) lies on a pixel the fill covers
+	private static boolean fillContains(StrokeRecord fill, float x, float y) {
+		int[] spans = fill.getSpans();
+		int pixelX = (int) Math.floor(x);
+		int pixelY = (int) Math.floor(y);
+
+		for (int i = 0; i < spans.length; i += 3)
+			if (spans[i] == pixelY && pixelX >= spans[i + 1]
+					&& pixelX < spans[i + 2])
+				return true;
+
+		return false;
+	} // end method fillContains
+
+	// return the number of segments indexed for a stroke; a single point
+	// is one segment of zero length
+	private static int segmentCount(StrokeRecord stroke) {
+		return Math.max(1, stroke.getPointCount() - 1);
+	} // end method segmentCount
+
+	// append a (stroke ID, segment) pair to a cell
+	private void insert(int index, int id, int segment) {
+		if (cells[index] == null)
+			cells[index] = new int[8];
+		else if (cellSizes[index] == cells[index].length)
+			cells[index] = copyOf(cells[index], cellSizes[index] * 2);
+
+		cells[index][cellSizes[index]++] = id;
+		cells[index][cellSizes[index]++] = segment;
+	} // end method insert
+
+	// return the first length ints of array in a new array; Arrays.copyOf
+	// is not available before API 9
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(length, array.length));
+		return copy;
+	} // end method copyOf
+
+	// return the cell column containing x, clamped to the grid
+	private int column(float x) {
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor(x
+				/ CELL_SIZE)));
+	} // end method column
+
+	// return the cell row containing y, clamped to the grid
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / CELL_SIZE)));
+	} // end method row
+
+	// return the squared distance from (x, y) to a segment of stroke
+	private static float distanceSquared(StrokeRecord stroke, int segment,
+			float x, float y) {
+		int end = Math.min(segment + 1, stroke.getPointCount() - 1);
+		float x0 = stroke.getX(segment);
+		float y0 = stroke.getY(segment);
+		float dx = stroke.getX(end) - x0;
+		float dy = stroke.getY(end) - y0;
+		float lengthSquared = dx * dx + dy * dy;
+		float t = 0;
+
+		// project onto the segment, staying between its ends
+		if (lengthSquared > 0)
+			t = Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy)
+					/ lengthSquared));
+
+		float nearX = x0 + t * dx - x;
+		float nearY = y0 + t * dy - y;
+		return nearX * nearX + nearY * nearY;
+	} // end method distanceSquared
+
+	// return true if (x, y) is inside the polygon, by the even-odd rule
+	private static boolean contains(float[] polygon, int count, float x,
+			float y) {
+		boolean inside = false;
+
+		for (int i = 0, j = count - 1; i < count; j = i++) {
+			float xi = polygon[i * 2];
+			float yi = polygon[i * 2 + 1];
+			float xj = polygon[j * 2];
+			float yj = polygon[j * 2 + 1];
+
+			if ((yi > y) != (yj > y)
+					&& x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+				inside = !inside;
+		} // end for
+
+		return inside;
+	} // end method contains
+} // end class StrokeGrid
@@ -0,0 +1,290 @@
+// StrokeJournal.java
+// Append-only record of every stroke drawn and every erase, with undo and
+// redo implemented by restoring the nearest canvas checkpoint and replaying
+// later changes. Checkpoints are kept compressed, sharing the tiles that did
+// not change between them, and the oldest are dropped to stay within a
+// byte budget. Strokes are indexed by a StrokeGrid for hit-testing.
+package com.groupproject;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+public class StrokeJournal {
+	// draws a recorded stroke onto a canvas during replay
+	public interface Painter {
+		// paint stroke onto canvas, inside clip if clip is not null
+		void paint(StrokeRecord stroke, TiledCanvas canvas, Rect clip);
+	} // end interface Painter
+
+	// canvas state after the first position entries were applied
+	private static class Checkpoint {
+		final int position;
+		final TiledCanvas.Packed packed;
+
+		Checkpoint(int position, TiledCanvas.Packed packed) {
+			this.position = position;
+			this.packed = packed;
+		} // end Checkpoint constructor
+	} // end class Checkpoint
+
+	// one undoable change: either a stroke was drawn or strokes were erased
+	private static class Entry {
+		final int strokeID; // ID of the stroke drawn, or -1
+		final int[] erasedIDs; // IDs of the strokes erased, or null
+
+		Entry(int strokeID, int[] erasedIDs) {
+			this.strokeID = strokeID;
+			this.erasedIDs = erasedIDs;
+		} // end Entry constructor
+	} // end class Entry
+
+	private final int checkpointInterval; // entries between checkpoints
+	private final int maxBytes; // compressed checkpoint bytes kept
+	private final List<StrokeRecord> strokes; // every drawn stroke, by ID
+	private final List<Entry> entries; // applied entries, then redo
+	private final List<Checkpoint> checkpoints; // oldest first
+	private final BitSet visible; // IDs of strokes shown at position
+	private StrokeGrid grid; // spatial index over strokes
+	private TiledCanvas.Snapshot base; // canvas before the first stroke
+	private int position; // number of entries currently applied
+	private int bytes; // compressed bytes held by checkpoints
+	private RectF area = new RectF(); // area changed by an erase
+	private Rect region = new Rect(); // area rounded out to whole pixels
+
+	// StrokeJournal constructor; undo replays at most checkpointInterval
+	// entries and keeps checkpoints of at most about maxBytes
+	public StrokeJournal(int checkpointInterval, int maxBytes) {
+		this.checkpointInterval = checkpointInterval;
+		this.maxBytes = maxBytes;
+		strokes = new ArrayList<StrokeRecord>();
+		entries = new ArrayList<Entry>();
+		checkpoints = new ArrayList<Checkpoint>();
+		visible = new BitSet();
+	} // end StrokeJournal constructor
+
+	// forget all strokes and start over from the canvas's current state
+	public void reset(TiledCanvas canvas) {
+		strokes.clear();
+		entries.clear();
+		checkpoints.clear();
+		visible.clear();
+		grid = new StrokeGrid(strokes, canvas.getWidth(), canvas.getHeight());
+		position = 0;
+		base = canvas.snapshot();
+		TiledCanvas.Packed packed = canvas.pack(null);
+		checkpoints.add(new Checkpoint(0, packed));
+		bytes = packed.getBytesNotIn(null);
+	} // end method reset
+
+	// restore canvas to how it was before the first stroke and drop every
+	// entry, including those older than the undo limit
+	public void undoAll(TiledCanvas canvas) {
+		canvas.restore(base);
+		reset(canvas);
+	} // end method undoAll
+
+	// record a stroke that has just been drawn onto canvas and return its
+	// ID; canCheckpoint is false while canvas holds parts of strokes that
+	// are not finished
+	public int add(StrokeRecord stroke, TiledCanvas canvas,
+			boolean canCheckpoint) {
+		discardRedo();
+		int id = strokes.size();
+		strokes.add(stroke);
+		grid.add(id);
+		Entry entry = new Entry(id, null);
+		apply(entry);
+		append(entry, canvas, canCheckpoint);
+		return id;
+	} // end method add
+
+	// remove the strokes with the given IDs, repainting only the area they
+	// covered
+	public void erase(int[] ids, TiledCanvas canvas, Painter painter,
+			boolean canCheckpoint) {
+		discardRedo();
+		Entry entry = new Entry(-1, ids);
+		apply(entry);
+		render(entry, canvas, painter);
+		append(entry, canvas, canCheckpoint);
+	} // end method erase
+
+	// add an applied entry, taking a checkpoint if one is due
+	private void append(Entry entry, TiledCanvas canvas, boolean canCheckpoint) {
+		entries.add(entry);
+		++position;
+
+		Checkpoint newest = checkpoints.get(checkpoints.size() - 1);
+
+		if (canCheckpoint && position - newest.position >= checkpointInterval) {
+			// only tiles changed since the newest checkpoint are compressed
+			TiledCanvas.Packed packed = canvas.pack(newest.packed);
+			checkpoints.add(new Checkpoint(position, packed));
+			bytes += packed.getBytesNotIn(newest.packed);
+
+			// dropping the oldest checkpoint makes the next the undo limit;
+			// the newest is always kept
+			while (bytes > maxBytes && checkpoints.size() > 1) {
+				Checkpoint oldest = checkpoints.remove(0);
+				bytes -= oldest.packed.getBytesNotIn(checkpoints.get(0).packed);
+			} // end while
+		} // end if
+	} // end method append
+
+	// remove entries that were undone and can no longer be redone
+	private void discardRedo() {
+		while (entries.size() > position) {
+			Entry entry = entries.remove(entries.size() - 1);
+
+			// strokes are only ever drawn at the end, so IDs stay dense
+			if (entry.strokeID >= 0) {
+				grid.remove(entry.strokeID);
+				strokes.remove(entry.strokeID);
+			} // end if
+		} // end while
+
+		while (checkpoints.get(checkpoints.size() - 1).position > position) {
+			Checkpoint newest = checkpoints.remove(checkpoints.size() - 1);
+			bytes -= newest.packed.getBytesNotIn(checkpoints.get(checkpoints
+					.size() - 1).packed);
+		} // end while
+	} // end method discardRedo
+
+	// update stroke visibility for an entry being applied
+	private void apply(Entry entry) {
+		if (entry.strokeID >= 0)
+			visible.set(entry.strokeID);
+		else
+			for (int id : entry.erasedIDs)
+				visible.clear(id);
+	} // end method apply
+
+	// update stroke visibility for an entry being taken back
+	private void revert(Entry entry) {
+		if (entry.strokeID >= 0)
+			visible.clear(entry.strokeID);
+		else
+			for (int id : entry.erasedIDs)
+				visible.set(id);
+	} // end method revert
+
+	// paint an entry that has just been applied onto canvas
+	private void render(Entry entry, TiledCanvas canvas, Painter painter) {
+		if (entry.strokeID >= 0) {
+			painter.paint(strokes.get(entry.strokeID), canvas, null);
+			return;
+		} // end if
+
+		// find the area the erased strokes covered
+		area.setEmpty();
+
+		for (int id : entry.erasedIDs) {
+			StrokeRecord stroke = strokes.get(id);
+			area.union(stroke.getLeft(), stroke.getTop(), stroke.getRight(),
+					stroke.getBottom());
+		} // end for
+
+		area.inset(-1, -1); // anti-aliasing reaches one pixel further
+		area.roundOut(region);
+
+		// rebuild that area from the base and the strokes still shown
+		canvas.restoreRegion(base, region);
+
+		for (int id : grid.query(region.left, region.top, region.right,
+				region.bottom))
+			if (visible.get(id))
+				painter.paint(strokes.get(id), canvas, region);
+	} // end method render
+
+	// return true if there is an entry after the oldest checkpoint to undo
+	public boolean canUndo() {
+		return position > checkpoints.get(0).position;
+	} // end method canUndo
+
+	// return true if an undone entry can be applied again
+	public boolean canRedo() {
+		return position < entries.size();
+	} // end method canRedo
+
+	// take back the last entry, rebuilding canvas from a checkpoint
+	public boolean undo(TiledCanvas canvas, Painter painter) {
+		if (!canUndo())
+			return false;
+
+		--position;
+		revert(entries.get(position));
+
+		// find the newest checkpoint at or before the new position
+		Checkpoint checkpoint = checkpoints.get(0);
+
+		for (Checkpoint c : checkpoints)
+			if (c.position <= position)
+				checkpoint = c;
+
+		// wind visibility back to the checkpoint, then replay the entries
+		// after it so each erase repaints with the strokes shown at its time
+		for (int i = position - 1; i >= checkpoint.position; i--)
+			revert(entries.get(i));
+
+		canvas.restore(checkpoint.packed);
+
+		for (int i = checkpoint.position; i < position; i++) {
+			apply(entries.get(i));
+			render(entries.get(i), canvas, painter);
+		} // end for
+
+		return true;
+	} // end method undo
+
+	// apply the most recently undone entry again
+	public boolean redo(TiledCanvas canvas, Painter painter) {
+		if (!canRedo())
+			return false;
+
+		Entry entry = entries.get(position);
+		apply(entry);
+		render(entry, canvas, painter);
+		++position;
+		return true;
+	} // end method redo
+
+	// return the IDs, in increasing order, of every shown stroke painted
+	// within radius of (x, y)
+	public int[] hitTestAll(float x, float y, float radius) {
+		return grid.hitTestAll(x, y, radius, visible);
+	} // end method hitTestAll
+
+	// return the IDs of the shown strokes lying entirely inside the closed
+	// polygon of count (x, y) pairs
+	public int[] selectInside(float[] polygon, int count) {
+		return grid.selectInside(polygon, count, visible);
+	} // end method selectInside
+
+	// return the size of the undo history, for its statistics
+	@Override
+	public String toString() {
+		return "undo history: " + checkpoints.size() + " checkpoints, "
+				+ bytes / 1024 + " KB, "
+				+ (position - checkpoints.get(0).position) + " undo levels";
+	} // end method toString
+
+	// return the stroke with the given ID
+	public StrokeRecord getStroke(int id) {
+		return strokes.get(id);
+	} // end method getStroke
+
+	// return the strokes currently shown, oldest first
+	public List<StrokeRecord> getStrokes() {
+		List<StrokeRecord> shown = new ArrayList<StrokeRecord>();
+
+		for (int id = visible.nextSetBit(0); id >= 0; id = visible
+				.nextSetBit(id + 1))
+			shown.add(strokes.get(id));
+
+		return shown;
+	} // end method getStrokes
+} // end class StrokeJournal
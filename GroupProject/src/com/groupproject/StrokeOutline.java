@@ -0,0 +1,129 @@
+// StrokeOutline.java
+// Builds the polygon around a line whose width varies along it: one edge
+// on each side of the line, half the width away, joined by round ends. The
+// polygon is filled in one pass instead of stroking the line piece by
+// piece with a different Paint width each time.
+package com.groupproject;
+
+public class StrokeOutline {
+	// round ends stray from a true half circle by at most this, in pixels
+	private static final float FLATNESS = 0.25f;
+
+	private float[] polygon = new float[512]; // x, y pairs
+	private int count; // points in polygon
+	private float[] normals = new float[256]; // unit normal at each point
+
+	// return the polygon around a finished stroke as x, y pairs
+	public static float[] build(StrokeRecord stroke) {
+		SoftwareRasterizer.Polyline line = new SoftwareRasterizer.Polyline();
+		SoftwareRasterizer.flatten(stroke, 1, line);
+		StrokeOutline outline = new StrokeOutline();
+		outline.build(line, 0, true, true);
+		float[] result = new float[outline.count * 2];
+		System.arraycopy(outline.polygon, 0, result, 0, result.length);
+		return result;
+	} // end method build
+
+	// replace the polygon with the outline of line's points from index from
+	// on, using the half width recorded at each point. The edges at a point
+	// are square to the piece arriving at it, so outlines of consecutive
+	// parts of one line meet exactly where they join; startCap and endCap
+	// round off the ends
+	public void build(SoftwareRasterizer.Polyline line, int from,
+			boolean startCap, boolean endCap) {
+		int last = line.count - 1;
+		count = 0;
+
+		if (last < from)
+			return;
+
+		if (normals.length < line.count * 2)
+			normals = new float[line.radii.length * 2];
+
+		float[] points = line.points;
+		float normalX = 0; // used until the line first moves
+		float normalY = 1;
+
+		for (int i = from; i <= last; i++) {
+			int a = i > 0 ? i - 1 : i; // the piece arriving at point i,
+			int b = i > 0 ? i : Math.min(i + 1, last); // or leaving point 0
+			float dx = points[b * 2] - points[a * 2];
+			float dy = points[b * 2 + 1] - points[a * 2 + 1];
+			float length = (float) Math.sqrt(dx * dx + dy * dy);
+
+			if (length > 1e-4f) {
+				normalX = -dy / length;
+				normalY = dx / length;
+			} // end if
+
+			normals[i * 2] = normalX;
+			normals[i * 2 + 1] = normalY;
+		} // end for
+
+		// left edge forward, around the end, right edge back, around the
+		// start
+		for (int i = from; i <= last; i++)
+			add(points[i * 2] + normals[i * 2] * line.radii[i], points[i * 2 + 1]
+					+ normals[i * 2 + 1] * line.radii[i]);
+
+		if (endCap)
+			addCap(points[last * 2], points[last * 2 + 1], line.radii[last],
+					normals[last * 2], normals[last * 2 + 1]);
+
+		for (int i = last; i >= from; i--)
+			add(points[i * 2] - normals[i * 2] * line.radii[i], points[i * 2 + 1]
+					- normals[i * 2 + 1] * line.radii[i]);
+
+		if (startCap)
+			addCap(points[from * 2], points[from * 2 + 1], line.radii[from],
+					-normals[from * 2], -normals[from * 2 + 1]);
+	} // end method build
+
+	// add the points strictly between the two ends of a half circle of the
+	// given radius around (x, y), running from the side the normal points
+	// to, ahead, to the other side; ahead is the normal turned clockwise
+	private void addCap(float x, float y, float radius, float normalX,
+			float normalY) {
+		int steps = 1;
+
+		if (radius > FLATNESS)
+			steps = (int) Math.ceil(Math.PI
+					/ (2 * Math.acos(1 - FLATNESS / radius)));
+
+		steps = Math.max(steps, 2);
+		float aheadX = normalY;
+		float aheadY = -normalX;
+
+		for (int step = 1; step < steps; step++) {
+			double angle = Math.PI * step / steps;
+			float cos = (float) Math.cos(angle);
+			float sin = (float) Math.sin(angle);
+			add(x + radius * (cos * normalX + sin * aheadX), y + radius
+					* (cos * normalY + sin * aheadY));
+		} // end for
+	} // end method addCap
+
+	// append a point, growing the polygon if necessary
+	private void add(float x, float y) {
+		if (count * 2 == polygon.length) {
+			float[] larger = new float[polygon.length * 2];
+			System.arraycopy(polygon, 0, larger, 0, polygon.length);
+			polygon = larger;
+		} // end if
+
+		polygon[count * 2] = x;
+		polygon[count * 2 + 1] = y;
+		++count;
+	} // end method add
+
+	// return the polygon's x, y pairs; only the first getPointCount pairs
+	// are in use
+	public float[] getPoints() {
+		return polygon;
+	} // end method getPoints
+
+	// return the number of points in the polygon
+	public int getPointCount() {
+		return count;
+	} // end method getPointCount
+} // end class StrokeOutline
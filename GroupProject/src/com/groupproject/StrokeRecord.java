@@ -0,0 +1,221 @@
+// StrokeRecord.java
+// Compact, immutable description of one finished stroke. A stroke drawn
+// with pressure or speed has a width at each point; its outline is built
+// the first time it is painted and kept for later repaints. A stroke made
+// with a StampBrush other than PEN is repainted by stamping its brush. A
+// flood fill is kept as the runs of pixels it filled, with its starting
+// point as its only point.
+package com.groupproject;
+
+public class StrokeRecord {
+	// line end styles, matching the order of android.graphics.Paint.Cap
+	public static final int CAP_BUTT = 0;
+	public static final int CAP_ROUND = 1;
+	public static final int CAP_SQUARE = 2;
+
+	private final float[] points; // x, y pairs of the accepted touch samples
+	private final int color; // ARGB line color
+	private final float width; // line width in pixels; the widest if varied
+	private final float[] widths; // width at each point, or null if constant
+	private volatile float[] outline; // polygon around a varied stroke
+	private final int[] spans; // y, first x, end x runs of a fill, or null
+	private final int cap; // one of the CAP_ constants
+	private final int brush; // one of the StampBrush constants
+	private final float left; // bounds of the painted stroke
+	private final float top;
+	private final float right;
+	private final float bottom;
+
+	// StrokeRecord constructor copies the first pointCount points of xy
+	public StrokeRecord(float[] xy, int pointCount, int color, float width,
+			int cap) {
+		this(xy, null, pointCount, color, width, cap, StampBrush.PEN);
+	} // end StrokeRecord constructor
+
+	// StrokeRecord constructor for a stroke stamped with brush, one of the
+	// StampBrush constants
+	public StrokeRecord(float[] xy, int pointCount, int color, float width,
+			int cap, int brush) {
+		this(xy, null, pointCount, color, width, cap, brush);
+	} // end StrokeRecord constructor
+
+	// StrokeRecord constructor for a stroke whose width varies; copies the
+	// first pointCount points of xy and their widths. Varied strokes always
+	// have round ends
+	public StrokeRecord(float[] xy, float[] pointWidths, int pointCount,
+			int color) {
+		this(xy, pointWidths, pointCount, color, widest(pointWidths,
+				pointCount), CAP_ROUND, StampBrush.PEN);
+	} // end StrokeRecord constructor
+
+	// copy the points and widths (if any) and find the painted bounds
+	private StrokeRecord(float[] xy, float[] pointWidths, int pointCount,
+			int color, float width, int cap, int brush) {
+		points = new float[pointCount * 2];
+		System.arraycopy(xy, 0, points, 0, points.length);
+
+		if (pointWidths != null) {
+			widths = new float[pointCount];
+			System.arraycopy(pointWidths, 0, widths, 0, pointCount);
+		} // end if
+		else
+			widths = null;
+
+		this.color = color;
+		this.width = width;
+		this.cap = cap;
+		this.brush = brush;
+		spans = null;
+
+		// the smoothed curve stays inside the points' bounding box, and the
+		// line extends half its width beyond the curve
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+
+		for (int i = 0; i < points.length; i += 2) {
+			minX = Math.min(minX, points[i]);
+			maxX = Math.max(maxX, points[i]);
+			minY = Math.min(minY, points[i + 1]);
+			maxY = Math.max(maxY, points[i + 1]);
+		} // end for
+
+		float pad = width / 2;
+		left = minX - pad;
+		top = minY - pad;
+		right = maxX + pad;
+		bottom = maxY + pad;
+	} // end StrokeRecord constructor
+
+	// StrokeRecord constructor for a flood fill started at (x, y); copies
+	// the first spanCount runs of fillSpans, y, first x, end x triples
+	public StrokeRecord(float x, float y, int color, int[] fillSpans,
+			int spanCount) {
+		points = new float[] { x, y };
+		widths = null;
+		this.color = color;
+		width = 0;
+		cap = CAP_BUTT;
+		brush = StampBrush.PEN;
+		spans = new int[spanCount * 3];
+		System.arraycopy(fillSpans, 0, spans, 0, spans.length);
+
+		// the fill covers exactly its runs
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+
+		for (int i = 0; i < spans.length; i += 3) {
+			minY = Math.min(minY, spans[i]);
+			maxY = Math.max(maxY, spans[i] + 1);
+			minX = Math.min(minX, spans[i + 1]);
+			maxX = Math.max(maxX, spans[i + 2]);
+		} // end for
+
+		left = minX;
+		top = minY;
+		right = maxX;
+		bottom = maxY;
+	} // end StrokeRecord constructor
+
+	// return the largest of the first count widths
+	private static float widest(float[] pointWidths, int count) {
+		float widest = 0;
+
+		for (int i = 0; i < count; i++)
+			widest = Math.max(widest, pointWidths[i]);
+
+		return widest;
+	} // end method widest
+
+	// return the number of points in the stroke
+	public int getPointCount() {
+		return points.length / 2;
+	} // end method getPointCount
+
+	// return the x-coordinate of point i
+	public float getX(int i) {
+		return points[i * 2];
+	} // end method getX
+
+	// return the y-coordinate of point i
+	public float getY(int i) {
+		return points[i * 2 + 1];
+	} // end method getY
+
+	// return the line color
+	public int getColor() {
+		return color;
+	} // end method getColor
+
+	// return the line width, or the widest part of a varied line
+	public float getWidth() {
+		return width;
+	} // end method getWidth
+
+	// return the line width at point i
+	public float getWidth(int i) {
+		return widths != null ? widths[i] : width;
+	} // end method getWidth
+
+	// return true if the line's width varies from point to point
+	public boolean hasWidths() {
+		return widths != null;
+	} // end method hasWidths
+
+	// return the polygon around a varied stroke as x, y pairs, building it
+	// on first use; null if the width is constant
+	public float[] getOutline() {
+		float[] result = outline;
+
+		if (result == null && widths != null) {
+			result = StrokeOutline.build(this);
+			outline = result;
+		} // end if
+
+		return result;
+	} // end method getOutline
+
+	// return the line end style
+	public int getCap() {
+		return cap;
+	} // end method getCap
+
+	// return true if the record is a flood fill rather than a line
+	public boolean isFill() {
+		return spans != null;
+	} // end method isFill
+
+	// return a fill's runs as y, first x, end x (exclusive) triples; the
+	// array must not be changed
+	public int[] getSpans() {
+		return spans;
+	} // end method getSpans
+
+	// return the brush the stroke was made with
+	public int getBrush() {
+		return brush;
+	} // end method getBrush
+
+	// return the left edge of the area the stroke paints
+	public float getLeft() {
+		return left;
+	} // end method getLeft
+
+	// return the top edge of the area the stroke paints
+	public float getTop() {
+		return top;
+	} // end method getTop
+
+	// return the right edge of the area the stroke paints
+	public float getRight() {
+		return right;
+	} // end method getRight
+
+	// return the bottom edge of the area the stroke paints
+	public float getBottom() {
+		return bottom;
+	} // end method getBottom
+} // end class StrokeRecord
@@ -0,0 +1,126 @@
+// TileCodec.java
+// Run-length codes the pixels of a tile for the undo history. A doodle is
+// mostly long runs of transparent or solid color broken by short stretches
+// of anti-aliased edges, so runs of a repeated pixel are stored once and
+// the pixels between them are copied as they are.
+package com.groupproject;
+
+public class TileCodec {
+	// shortest run of a repeated pixel worth a packet of its own
+	private static final int MIN_RUN = 3;
+
+	private byte[] buffer = new byte[4096]; // encode's output, reused
+	private int size; // bytes in use in buffer
+
+	// return pixels coded as packets; each starts with a variable-length
+	// count times two, plus one for a run of the single pixel that follows
+	// or zero for count pixels that follow, four bytes per pixel
+	public byte[] encode(int[] pixels, int count) {
+		size = 0;
+		int literalStart = 0; // first pixel not yet written
+
+		for (int i = 0; i < count;) {
+			int pixel = pixels[i];
+			int end = i + 1;
+
+			while (end < count && pixels[end] == pixel)
+				++end;
+
+			if (end - i >= MIN_RUN) {
+				writeLiteral(pixels, literalStart, i);
+				writeCount(end - i, 1);
+				writePixel(pixel);
+				literalStart = end;
+			} // end if
+
+			i = end;
+		} // end for
+
+		writeLiteral(pixels, literalStart, count);
+
+		byte[] data = new byte[size];
+		System.arraycopy(buffer, 0, data, 0, size);
+		return data;
+	} // end method encode
+
+	// fill pixels from data returned by encode
+	public static void decode(byte[] data, int[] pixels) {
+		int in = 0;
+		int out = 0;
+
+		while (in < data.length) {
+			// read the variable-length count, seven bits per byte
+			int header = 0;
+			int shift = 0;
+			int b;
+
+			do {
+				b = data[in++];
+				header |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			int count = header >>> 1;
+
+			if ((header & 1) != 0) {
+				int pixel = readPixel(data, in);
+				in += 4;
+
+				for (int end = out + count; out < end; out++)
+					pixels[out] = pixel;
+			} // end if
+			else {
+				for (int end = out + count; out < end; out++, in += 4)
+					pixels[out] = readPixel(data, in);
+			} // end else
+		} // end while
+	} // end method decode
+
+	// write the pixels from first up to end as they are
+	private void writeLiteral(int[] pixels, int first, int end) {
+		if (first == end)
+			return;
+
+		writeCount(end - first, 0);
+
+		for (int i = first; i < end; i++)
+			writePixel(pixels[i]);
+	} // end method writeLiteral
+
+	// write a packet header: count and whether it is a run
+	private void writeCount(int count, int run) {
+		int header = count << 1 | run;
+		reserve(5);
+
+		while ((header & ~0x7F) != 0) {
+			buffer[size++] = (byte) (header & 0x7F | 0x80);
+			header >>>= 7;
+		} // end while
+
+		buffer[size++] = (byte) header;
+	} // end method writeCount
+
+	// write one pixel, most significant byte first
+	private void writePixel(int pixel) {
+		reserve(4);
+		buffer[size++] = (byte) (pixel >>> 24);
+		buffer[size++] = (byte) (pixel >>> 16);
+		buffer[size++] = (byte) (pixel >>> 8);
+		buffer[size++] = (byte) pixel;
+	} // end method writePixel
+
+	// return the pixel written at data[offset]
+	private static int readPixel(byte[] data, int offset) {
+		return data[offset] << 24 | (data[offset + 1] & 0xFF) << 16
+				| (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+	} // end method readPixel
+
+	// make room in buffer for bytes more bytes
+	private void reserve(int bytes) {
+		if (size + bytes > buffer.length) {
+			byte[] larger = new byte[Math.max(buffer.length * 2, size + bytes)];
+			System.arraycopy(buffer, 0, larger, 0, size);
+			buffer = larger;
+		} // end if
+	} // end method reserve
+} // end class TileCodec
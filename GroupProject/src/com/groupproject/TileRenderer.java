@@ -0,0 +1,246 @@
+// TileRenderer.java
+// Renders a list of strokes at any size by splitting the image into tiles
+// and rasterizing the tiles on several threads at once. Each stroke is
+// flattened once, and each tile is given only the pieces that reach it.
+package com.groupproject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TileRenderer {
+	public static final int TILE_SIZE = 128; // width and height of a tile
+
+	private final List<StrokeRecord> strokes; // strokes to render, in order
+	private final int width; // size of the rendered image in pixels
+	private final int height;
+	private final float scale; // image pixels per drawing pixel
+	private final int columns; // size of the image in tiles
+	private final int rows;
+	private SoftwareRasterizer.Polyline[] lines; // flattened strokes
+	private int[][] binStrokes; // per tile: stroke of each piece reaching it
+	private int[][] binPieces; // per tile: index of each of those pieces
+	private int[] binSizes; // entries used in each tile's bins
+	private long binNanos; // time taken to flatten and bin the strokes
+	private long renderNanos; // time taken by the last render
+
+	// TileRenderer constructor for a width x height image of strokes drawn
+	// at scale times their recorded size
+	public TileRenderer(List<StrokeRecord> strokes, int width, int height,
+			float scale) {
+		this.strokes = strokes;
+		this.width = width;
+		this.height = height;
+		this.scale = scale;
+		columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+	} // end TileRenderer constructor
+
+	// flatten every stroke and record which of its pieces reach each tile;
+	// done once, before the first render
+	private void bin() {
+		long start = System.nanoTime();
+		lines = new SoftwareRasterizer.Polyline[strokes.size()];
+		binStrokes = new int[columns * rows][];
+		binPieces = new int[columns * rows][];
+		binSizes = new int[columns * rows];
+
+		for (int s = 0; s < strokes.size(); s++) {
+			StrokeRecord stroke = strokes.get(s);
+			SoftwareRasterizer.Polyline line = new SoftwareRasterizer.Polyline();
+			SoftwareRasterizer.flatten(stroke, scale, line);
+			lines[s] = line;
+
+			// a fill reaches every tile its bounds do, as one piece
+			if (stroke.isFill()) {
+				int lastColumn = tileIndex(stroke.getRight() * scale, columns);
+				int lastRow = tileIndex(stroke.getBottom() * scale, rows);
+
+				for (int row = tileIndex(stroke.getTop() * scale, rows); row <= lastRow; row++)
+					for (int column = tileIndex(stroke.getLeft() * scale,
+							columns); column <= lastColumn; column++)
+						addToBin(row * columns + column, s, 0);
+
+				continue;
+			} // end if
+
+			// anti-aliasing reaches one pixel beyond the line
+			float reach = stroke.getWidth() * scale / 2 + 1;
+
+			for (int piece = 0; piece < line.getPieceCount(); piece++) {
+				int end = Math.min(piece + 1, line.count - 1);
+				float x0 = line.points[piece * 2];
+				float y0 = line.points[piece * 2 + 1];
+				float x1 = line.points[end * 2];
+				float y1 = line.points[end * 2 + 1];
+				int firstColumn = tileIndex(Math.min(x0, x1) - reach, columns);
+				int lastColumn = tileIndex(Math.max(x0, x1) + reach, columns);
+				int firstRow = tileIndex(Math.min(y0, y1) - reach, rows);
+				int lastRow = tileIndex(Math.max(y0, y1) + reach, rows);
+
+				for (int row = firstRow; row <= lastRow; row++)
+					for (int column = firstColumn; column <= lastColumn; column++)
+						addToBin(row * columns + column, s, piece);
+			} // end for
+		} // end for
+
+		binNanos = System.nanoTime() - start;
+	} // end method bin
+
+	// return the tile column or row containing coordinate, clamped
+	private static int tileIndex(float coordinate, int count) {
+		return Math.max(0, Math.min(count - 1, (int) Math.floor(coordinate
+				/ TILE_SIZE)));
+	} // end method tileIndex
+
+	// append a piece to a tile's bins
+	private void addToBin(int tile, int stroke, int piece) {
+		if (binStrokes[tile] == null) {
+			binStrokes[tile] = new int[16];
+			binPieces[tile] = new int[16];
+		} // end if
+		else if (binSizes[tile] == binStrokes[tile].length) {
+			binStrokes[tile] = grow(binStrokes[tile]);
+			binPieces[tile] = grow(binPieces[tile]);
+		} // end else if
+
+		binStrokes[tile][binSizes[tile]] = stroke;
+		binPieces[tile][binSizes[tile]] = piece;
+		++binSizes[tile];
+	} // end method addToBin
+
+	// return a copy of array twice as long
+	private static int[] grow(int[] array) {
+		int[] larger = new int[array.length * 2];
+		System.arraycopy(array, 0, larger, 0, array.length);
+		return larger;
+	} // end method grow
+
+	// render the strokes over backgroundColor using the given number of
+	// threads and return the image's pixels, in the layout of
+	// Bitmap.getPixels; every thread count gives the same pixels
+	public int[] render(int backgroundColor, int threads)
+			throws InterruptedException {
+		if (lines == null)
+			bin();
+
+		long start = System.nanoTime();
+		final int[] image = new int[width * height];
+		final int background = backgroundColor;
+		final AtomicInteger nextTile = new AtomicInteger();
+
+		// workers take the next unrendered tile until none are left, so
+		// busy tiles don't hold up threads that finished quiet ones
+		List<Callable<Object>> workers = new ArrayList<Callable<Object>>();
+
+		for (int i = 0; i < threads; i++) {
+			workers.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					SoftwareRasterizer rasterizer = new SoftwareRasterizer(
+							TILE_SIZE, TILE_SIZE);
+					// lines are flattened at scale already; fills are not
+					rasterizer.setScale(scale);
+					int tile;
+
+					while ((tile = nextTile.getAndIncrement()) < binSizes.length)
+						renderTile(tile, rasterizer, background, image);
+
+					return null;
+				} // end method call
+			}); // end call to add
+		} // end for
+
+		if (threads == 1) {
+			try {
+				workers.get(0).call(); // no pool needed
+			} // end try
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			} // end catch
+		} // end if
+		else {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+			try {
+				// returns once every worker has finished; tiles are
+				// disjoint, so workers never write the same pixel
+				for (Future<Object> result : pool
+						.invokeAll(workers))
+					result.get();
+			} // end try
+			catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} // end catch
+			finally {
+				pool.shutdown();
+			} // end finally
+		} // end else
+
+		renderNanos = System.nanoTime() - start;
+		return image;
+	} // end method render
+
+	// rasterize one tile and copy it into image
+	private void renderTile(int tile, SoftwareRasterizer rasterizer,
+			int backgroundColor, int[] image) {
+		int left = (tile % columns) * TILE_SIZE;
+		int top = (tile / columns) * TILE_SIZE;
+		rasterizer.setOrigin(left, top);
+		rasterizer.fill(backgroundColor);
+
+		// bins are filled stroke by stroke, so each stroke's pieces are
+		// together and strokes are in drawing order
+		int[] tileStrokes = binStrokes[tile];
+
+		for (int first = 0; first < binSizes[tile];) {
+			int stroke = tileStrokes[first];
+			int end = first + 1;
+
+			while (end < binSizes[tile] && tileStrokes[end] == stroke)
+				++end;
+
+			StrokeRecord record = strokes.get(stroke);
+
+			if (record.isFill())
+				rasterizer.renderFill(record);
+			else
+				rasterizer.renderPieces(lines[stroke], binPieces[tile], first,
+						end, record.getColor());
+			first = end;
+		} // end for
+
+		int tileWidth = Math.min(TILE_SIZE, width - left);
+		int tileHeight = Math.min(TILE_SIZE, height - top);
+		int[] pixels = rasterizer.getPixels();
+
+		for (int y = 0; y < tileHeight; y++)
+			System.arraycopy(pixels, y * TILE_SIZE, image, (top + y) * width
+					+ left, tileWidth);
+	} // end method renderTile
+
+	// return the time taken to flatten and bin the strokes, in milliseconds
+	public double getBinMillis() {
+		return binNanos / 1e6;
+	} // end method getBinMillis
+
+	// return the time taken by the last render, in milliseconds
+	public double getRenderMillis() {
+		return renderNanos / 1e6;
+	} // end method getRenderMillis
+
+	// render once on one thread and once on threads threads, and return
+	// how many times faster the second render was
+	public double measureSpeedup(int backgroundColor, int threads)
+			throws InterruptedException {
+		render(backgroundColor, 1);
+		double single = getRenderMillis();
+		render(backgroundColor, threads);
+		return single / getRenderMillis();
+	} // end method measureSpeedup
+} // end class TileRenderer
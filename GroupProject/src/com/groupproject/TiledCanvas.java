@@ -0,0 +1,556 @@
+// TiledCanvas.java
+// Drawing surface made of fixed-size tiles that are allocated only when
+// something is first painted on them.
+package com.groupproject;
+
+import java.nio.IntBuffer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+public class TiledCanvas {
+	public static final int TILE_SIZE = 256; // width and height of a tile
+
+	private int width; // size of the drawing area in pixels
+	private int height;
+	private int columns; // size of the drawing area in tiles
+	private int rows;
+	private Bitmap[] tiles; // tile bitmaps, null where nothing is painted
+	private Canvas[] canvases; // per-tile Canvas translated to tile origin
+	private boolean[] dirty; // true for tiles changed since markClean
+	private boolean[] shared; // true for tiles also held by a Snapshot
+	private int[] versions; // changeCount when each tile last changed
+	private int changeCount; // changes made to tiles so far
+	private RectF bounds = new RectF(); // area touched by a draw call
+	private TileCodec codec; // packs tiles; created on first use
+	private int[] tilePixels; // one tile's pixels while packing or copying
+	private IntBuffer tileBuffer; // tilePixels wrapped for copying
+	private final BitmapPool pool = BitmapPool.getShared(); // tile memory
+
+	// TiledCanvas constructor; no tile memory is allocated yet
+	public TiledCanvas(int width, int height) {
+		tiles = new Bitmap[0];
+		canvases = new Canvas[0];
+		dirty = new boolean[0];
+		shared = new boolean[0];
+		versions = new int[0];
+		resize(width, height);
+	} // end TiledCanvas constructor
+
+	// change the size of the drawing area, keeping the painted tiles that
+	// still fall inside it
+	public void resize(int newWidth, int newHeight) {
+		int newColumns = (newWidth + TILE_SIZE - 1) / TILE_SIZE;
+		int newRows = (newHeight + TILE_SIZE - 1) / TILE_SIZE;
+
+		if (newColumns != columns || newRows != rows) {
+			Bitmap[] newTiles = new Bitmap[newColumns * newRows];
+			Canvas[] newCanvases = new Canvas[newColumns * newRows];
+			boolean[] newDirty = new boolean[newColumns * newRows];
+			boolean[] newShared = new boolean[newColumns * newRows];
+			int[] newVersions = new int[newColumns * newRows];
+
+			// move each existing tile to its index in the new grid
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					int index = row * columns + column;
+
+					if (row < newRows && column < newColumns) {
+						int newIndex = row * newColumns + column;
+						newTiles[newIndex] = tiles[index];
+						newCanvases[newIndex] = canvases[index];
+						newDirty[newIndex] = dirty[index];
+						newShared[newIndex] = shared[index];
+						newVersions[newIndex] = versions[index];
+					} // end if
+					else if (tiles[index] != null && !shared[index])
+						pool.put(tiles[index]); // tile is outside new area
+				} // end for
+			} // end for
+
+			tiles = newTiles;
+			canvases = newCanvases;
+			dirty = newDirty;
+			shared = newShared;
+			versions = newVersions;
+			columns = newColumns;
+			rows = newRows;
+		} // end if
+
+		width = newWidth;
+		height = newHeight;
+	} // end method resize
+
+	// return the width of the drawing area
+	public int getWidth() {
+		return width;
+	} // end method getWidth
+
+	// return the height of the drawing area
+	public int getHeight() {
+		return height;
+	} // end method getHeight
+
+	// return the number of tiles that hold any painting
+	public int getPaintedTileCount() {
+		int count = 0;
+
+		for (Bitmap tile : tiles)
+			if (tile != null)
+				++count;
+
+		return count;
+	} // end method getPaintedTileCount
+
+	// draw a stroked or filled path onto every tile it touches
+	public void drawPath(Path path, Paint paint) {
+		drawPath(path, paint, null);
+	} // end method drawPath
+
+	// draw a stroked or filled path, changing only the pixels inside clip
+	// (or everywhere if clip is null)
+	public void drawPath(Path path, Paint paint, Rect clip) {
+		path.computeBounds(bounds, true);
+
+		// include line width and anti-aliasing outside the path's geometry
+		float pad = paint.getStrokeWidth() / 2 + 1;
+		bounds.inset(-pad, -pad);
+
+		if (clip != null && !bounds.intersect(clip.left, clip.top, clip.right,
+				clip.bottom))
+			return; // nothing to draw inside clip
+
+		int firstColumn = Math.max(0, (int) bounds.left / TILE_SIZE);
+		int lastColumn = Math.min(columns - 1, (int) bounds.right / TILE_SIZE);
+		int firstRow = Math.max(0, (int) bounds.top / TILE_SIZE);
+		int lastRow = Math.min(rows - 1, (int) bounds.bottom / TILE_SIZE);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Canvas canvas = tileCanvas(row * columns + column);
+
+				if (clip == null)
+					canvas.drawPath(path, paint);
+				else {
+					canvas.save();
+					canvas.clipRect(clip);
+					canvas.drawPath(path, paint);
+					canvas.restore();
+				} // end else
+			} // end for
+		} // end for
+	} // end method drawPath
+
+	// draw part of a bitmap onto every tile covered by dst
+	public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+		int firstColumn = Math.max(0, (int) dst.left / TILE_SIZE);
+		int lastColumn = Math.min(columns - 1, (int) dst.right / TILE_SIZE);
+		int firstRow = Math.max(0, (int) dst.top / TILE_SIZE);
+		int lastRow = Math.min(rows - 1, (int) dst.bottom / TILE_SIZE);
+
+		for (int row = firstRow; row <= lastRow; row++)
+			for (int column = firstColumn; column <= lastColumn; column++)
+				tileCanvas(row * columns + column).drawBitmap(bitmap, src, dst,
+						paint);
+	} // end method drawBitmap
+
+	// draw a whole bitmap with its top-left corner at (left, top), changing
+	// only the pixels inside clip (or everywhere if clip is null)
+	public void drawBitmap(Bitmap bitmap, float left, float top,
+			Paint paint, Rect clip) {
+		bounds.set(left, top, left + bitmap.getWidth(), top
+				+ bitmap.getHeight());
+
+		if (clip != null && !bounds.intersect(clip.left, clip.top, clip.right,
+				clip.bottom))
+			return; // nothing to draw inside clip
+
+		int firstColumn = Math.max(0, (int) bounds.left / TILE_SIZE);
+		int lastColumn = Math.min(columns - 1, (int) bounds.right / TILE_SIZE);
+		int firstRow = Math.max(0, (int) bounds.top / TILE_SIZE);
+		int lastRow = Math.min(rows - 1, (int) bounds.bottom / TILE_SIZE);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Canvas canvas = tileCanvas(row * columns + column);
+
+				if (clip == null)
+					canvas.drawBitmap(bitmap, left, top, paint);
+				else {
+					canvas.save();
+					canvas.clipRect(clip);
+					canvas.drawBitmap(bitmap, left, top, paint);
+					canvas.restore();
+				} // end else
+			} // end for
+		} // end for
+	} // end method drawBitmap
+
+	// return the Canvas for a tile, allocating the tile on first use and
+	// copying it first if a Snapshot still refers to its pixels
+	private Canvas tileCanvas(int index) {
+		if (tiles[index] == null) {
+			tiles[index] = pool.get(TILE_SIZE, TILE_SIZE,
+					Bitmap.Config.ARGB_8888); // starts fully transparent
+			canvases[index] = null;
+		} // end if
+		else if (shared[index]) {
+			// the Snapshot keeps the old bitmap; draw on a copy of it
+			Bitmap copy = pool.get(TILE_SIZE, TILE_SIZE,
+					Bitmap.Config.ARGB_8888);
+			prepareTileBuffer();
+			tiles[index].copyPixelsToBuffer(tileBuffer);
+			tileBuffer.rewind();
+			copy.copyPixelsFromBuffer(tileBuffer);
+			tiles[index] = copy;
+			canvases[index] = null;
+			shared[index] = false;
+		} // end else if
+
+		if (canvases[index] == null) {
+			// translate so callers can draw in drawing-area coordinates
+			canvases[index] = new Canvas(tiles[index]);
+			canvases[index].translate(-(index % columns) * TILE_SIZE,
+					-(index / columns) * TILE_SIZE);
+		} // end if
+
+		dirty[index] = true;
+		versions[index] = ++changeCount; // a Packed copy is now out of date
+		return canvases[index];
+	} // end method tileCanvas
+
+	// draw the painted tiles that intersect clip onto canvas
+	public void draw(Canvas canvas, Rect clip, Paint paint) {
+		int firstColumn = Math.max(0, clip.left / TILE_SIZE);
+		int lastColumn = Math.min(columns - 1, (clip.right - 1) / TILE_SIZE);
+		int firstRow = Math.max(0, clip.top / TILE_SIZE);
+		int lastRow = Math.min(rows - 1, (clip.bottom - 1) / TILE_SIZE);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Bitmap tile = tiles[row * columns + column];
+
+				if (tile != null)
+					canvas.drawBitmap(tile, column * TILE_SIZE,
+							row * TILE_SIZE, paint);
+			} // end for
+		} // end for
+	} // end method draw
+
+	// release every painted tile, leaving the drawing area transparent
+	public void clear() {
+		for (int i = 0; i < tiles.length; i++)
+			release(i);
+	} // end method clear
+
+	// make a tile empty, releasing its bitmap
+	private void release(int index) {
+		if (tiles[index] != null) {
+			if (!shared[index])
+				pool.put(tiles[index]); // no Snapshot needs the pixels
+
+			tiles[index] = null;
+			canvases[index] = null;
+			dirty[index] = true; // tile changed from painted to empty
+			shared[index] = false;
+			versions[index] = 0;
+		} // end if
+	} // end method release
+
+	// make the pixels inside region look like they do in snapshot again,
+	// leaving the rest of the drawing area alone
+	public void restoreRegion(Snapshot snapshot, Rect region) {
+		int firstColumn = Math.max(0, region.left / TILE_SIZE);
+		int lastColumn = Math.min(columns - 1, (region.right - 1) / TILE_SIZE);
+		int firstRow = Math.max(0, region.top / TILE_SIZE);
+		int lastRow = Math.min(rows - 1, (region.bottom - 1) / TILE_SIZE);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int index = row * columns + column;
+				Bitmap source = snapshot.getTile(column, row);
+
+				if (tiles[index] == null && source == null)
+					continue; // empty in both
+
+				Canvas canvas = tileCanvas(index);
+				canvas.save();
+				canvas.clipRect(region);
+				canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+				if (source != null)
+					canvas.drawBitmap(source, column * TILE_SIZE, row
+							* TILE_SIZE, null);
+
+				canvas.restore();
+			} // end for
+		} // end for
+	} // end method restoreRegion
+
+	// return a copy-on-write picture of the drawing area; taking one costs
+	// nothing per pixel, and a tile is copied only when it is next painted
+	public Snapshot snapshot() {
+		Bitmap[] snapshotTiles = new Bitmap[tiles.length];
+
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != null) {
+				snapshotTiles[i] = tiles[i];
+				shared[i] = true;
+			} // end if
+		} // end for
+
+		return new Snapshot(width, height, columns, snapshotTiles);
+	} // end method snapshot
+
+	// make the drawing area look exactly like snapshot again
+	public void restore(Snapshot snapshot) {
+		clear();
+		resize(snapshot.width, snapshot.height);
+
+		for (int i = 0; i < tiles.length; i++) {
+			int column = i % columns;
+			int row = i / columns;
+			dirty[i] = true; // contents may differ from before
+
+			// snapshot may have been taken with a different grid
+			if (column < snapshot.columns) {
+				int index = row * snapshot.columns + column;
+
+				if (index < snapshot.tiles.length
+						&& snapshot.tiles[index] != null) {
+					tiles[i] = snapshot.tiles[index];
+					shared[i] = true; // copy before painting on it
+					versions[i] = ++changeCount;
+				} // end if
+			} // end if
+		} // end for
+	} // end method restore
+
+	// return a compressed copy of the drawing area. Tiles unchanged since
+	// previous was packed share its data, so only the tiles painted since
+	// then are read and compressed; previous may be null
+	public Packed pack(Packed previous) {
+		int[] packedVersions = new int[tiles.length];
+		byte[][] data = new byte[tiles.length][];
+		boolean sameGrid = previous != null && previous.columns == columns
+				&& previous.data.length == tiles.length;
+
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] == null)
+				continue; // stays empty
+
+			packedVersions[i] = versions[i];
+
+			if (sameGrid && previous.versions[i] == versions[i])
+				data[i] = previous.data[i];
+			else {
+				prepareTileBuffer();
+				tiles[i].copyPixelsToBuffer(tileBuffer);
+				data[i] = codec.encode(tilePixels, tilePixels.length);
+			} // end else
+		} // end for
+
+		return new Packed(width, height, columns, packedVersions, data);
+	} // end method pack
+
+	// make the drawing area look exactly like packed again, decoding only
+	// the tiles that differ from it; the others are left alone and stay
+	// clean
+	public void restore(Packed packed) {
+		resize(packed.width, packed.height);
+
+		for (int i = 0; i < tiles.length; i++) {
+			int column = i % columns;
+			int row = i / columns;
+			int index = row * packed.columns + column;
+			int version = 0; // the tile is empty in packed
+			byte[] source = null;
+
+			// packed may have been taken with a different grid
+			if (column < packed.columns && index < packed.data.length) {
+				version = packed.versions[index];
+				source = packed.data[index];
+			} // end if
+
+			if (versions[i] == version)
+				continue; // this tile already shows that state
+
+			if (source == null) {
+				release(i);
+				continue;
+			} // end if
+
+			if (tiles[i] == null || shared[i]) {
+				tiles[i] = pool.get(TILE_SIZE, TILE_SIZE,
+						Bitmap.Config.ARGB_8888);
+				canvases[i] = null;
+				shared[i] = false;
+			} // end if
+
+			prepareTileBuffer();
+			TileCodec.decode(source, tilePixels);
+			tiles[i].copyPixelsFromBuffer(tileBuffer);
+			dirty[i] = true;
+			versions[i] = version; // packing again can share source
+		} // end for
+	} // end method restore
+
+	// ready tileBuffer to copy a whole tile to or from tilePixels
+	private void prepareTileBuffer() {
+		if (codec == null) {
+			codec = new TileCodec();
+			tilePixels = new int[TILE_SIZE * TILE_SIZE];
+			tileBuffer = IntBuffer.wrap(tilePixels);
+		} // end if
+
+		tileBuffer.rewind();
+	} // end method prepareTileBuffer
+
+	// return a single bitmap of the whole drawing area over a solid color
+	public Bitmap toBitmap(int backgroundColor) {
+		Bitmap bitmap = Bitmap.createBitmap(width, height,
+				Bitmap.Config.ARGB_8888);
+		bitmap.eraseColor(backgroundColor);
+		Canvas canvas = new Canvas(bitmap);
+
+		// only painted tiles contribute anything over the background
+		for (int i = 0; i < tiles.length; i++)
+			if (tiles[i] != null)
+				canvas.drawBitmap(tiles[i], (i % columns) * TILE_SIZE,
+						(i / columns) * TILE_SIZE, null);
+
+		return bitmap;
+	} // end method toBitmap
+
+	// return true if the tile at (column, row) changed since markClean
+	public boolean isDirty(int column, int row) {
+		return dirty[row * columns + column];
+	} // end method isDirty
+
+	// reset every tile's dirty flag
+	public void markClean() {
+		for (int i = 0; i < dirty.length; i++)
+			dirty[i] = false;
+	} // end method markClean
+
+	// return the painted tile at (column, row), or null if it is empty;
+	// the caller must not paint on the returned bitmap
+	public Bitmap getTile(int column, int row) {
+		return tiles[row * columns + column];
+	} // end method getTile
+
+	// return the number of tile columns
+	public int getColumns() {
+		return columns;
+	} // end method getColumns
+
+	// return the number of tile rows
+	public int getRows() {
+		return rows;
+	} // end method getRows
+
+	// read-only picture of a TiledCanvas, sharing its tile bitmaps
+	public static class Snapshot {
+		private final int width; // size of the drawing area in pixels
+		private final int height;
+		private final int columns; // tiles per row
+		private final Bitmap[] tiles; // null where nothing was painted
+
+		private Snapshot(int width, int height, int columns, Bitmap[] tiles) {
+			this.width = width;
+			this.height = height;
+			this.columns = columns;
+			this.tiles = tiles;
+		} // end Snapshot constructor
+
+		// return the width of the pictured drawing area
+		public int getWidth() {
+			return width;
+		} // end method getWidth
+
+		// return the height of the pictured drawing area
+		public int getHeight() {
+			return height;
+		} // end method getHeight
+
+		// return the tile at (column, row), or null if nothing was painted
+		// there or it lies outside the picture
+		Bitmap getTile(int column, int row) {
+			int index = row * this.columns + column;
+
+			if (column >= this.columns || index >= tiles.length)
+				return null;
+
+			return tiles[index];
+		} // end method getTile
+
+		// return a single bitmap of the picture over a solid color
+		public Bitmap toBitmap(int backgroundColor) {
+			Bitmap bitmap = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+			bitmap.eraseColor(backgroundColor);
+			drawTo(new Canvas(bitmap));
+			return bitmap;
+		} // end method toBitmap
+
+		// copy the tile at (column, row) into pixels, TILE_SIZE ints per
+		// row, and return true; return false, leaving pixels alone, if
+		// nothing was painted there. The tiles never change, so any thread
+		// may call this
+		public boolean getTilePixels(int column, int row, int[] pixels) {
+			Bitmap tile = getTile(column, row);
+
+			if (tile == null)
+				return false;
+
+			tile.getPixels(pixels, 0, TILE_SIZE, 0, 0, TILE_SIZE, TILE_SIZE);
+			return true;
+		} // end method getTilePixels
+
+		// draw the painted tiles of the picture onto canvas
+		public void drawTo(Canvas canvas) {
+			for (int i = 0; i < tiles.length; i++)
+				if (tiles[i] != null)
+					canvas.drawBitmap(tiles[i], (i % columns) * TILE_SIZE,
+							(i / columns) * TILE_SIZE, null);
+		} // end method drawTo
+	} // end class Snapshot
+
+	// compressed picture of a TiledCanvas; tiles that did not change
+	// between two pictures packed one after the other share their data
+	public static class Packed {
+		private final int width; // size of the drawing area in pixels
+		private final int height;
+		private final int columns; // tiles per row
+		private final int[] versions; // each tile's version when packed
+		private final byte[][] data; // TileCodec data, null where empty
+
+		private Packed(int width, int height, int columns, int[] versions,
+				byte[][] data) {
+			this.width = width;
+			this.height = height;
+			this.columns = columns;
+			this.versions = versions;
+			this.data = data;
+		} // end Packed constructor
+
+		// return the bytes of tile data held by this picture and not shared
+		// with other, which may be null
+		public int getBytesNotIn(Packed other) {
+			int bytes = 0;
+
+			for (int i = 0; i < data.length; i++)
+				if (data[i] != null && (other == null
+						|| i >= other.data.length || other.data[i] != data[i]))
+					bytes += data[i].length;
+
+			return bytes;
+		} // end method getBytesNotIn
+	} // end class Packed
+} // end class TiledCanvas
@@ -0,0 +1,273 @@
+// TouchQueue.java
+// Fixed-size ring of touch samples, stored as primitives, passed from the
+// thread that receives touches to the thread that turns them into strokes.
+// One thread may offer and one thread may drain; neither locks, and
+// offering never allocates.
+package com.groupproject;
+
+import android.view.MotionEvent;
+
+public class TouchQueue {
+	// what a sample records
+	public static final int DOWN = 0; // a finger touched
+	public static final int MOVE = 1; // a finger moved
+	public static final int UP = 2; // a finger lifted
+	public static final int CANCEL = 3; // the gesture was taken away
+
+	// slots only DOWN, UP and CANCEL samples may fill, so a burst of moves
+	// cannot crowd out the samples that start and end strokes
+	private static final int RESERVED = 32;
+
+	// pointer IDs tracked by the bit masks below
+	private static final int MAX_POINTER_ID = 31;
+
+	private final int mask; // capacity - 1; capacity is a power of two
+	private final int[] kinds; // one of the constants above, per sample
+	private final int[] pointers; // pointer ID per sample
+	private final float[] xs; // position per sample
+	private final float[] ys;
+	private final float[] pressures; // pressure per sample, usually 0 to 1
+	private final long[] times; // uptime in milliseconds per sample
+
+	// samples are numbered from 0; head is the next one to drain and tail
+	// the next one to offer. Each is written by one thread only, and the
+	// volatile write publishes the array slots before it
+	private volatile long head;
+	private volatile long tail;
+	private volatile long dropped; // samples lost because the ring was full
+	private volatile int maxDepth; // most samples ever waiting at once
+
+	// touches whose lift did not fit, with that lift's sample, waiting to
+	// be offered ahead of anything newer; offering thread only
+	private int deferredLifts; // bit per pointer ID
+	private final int[] liftKinds = new int[MAX_POINTER_ID + 1];
+	private final float[] liftXs = new float[MAX_POINTER_ID + 1];
+	private final float[] liftYs = new float[MAX_POINTER_ID + 1];
+	private final float[] liftPressures = new float[MAX_POINTER_ID + 1];
+	private final long[] liftTimes = new long[MAX_POINTER_ID + 1];
+
+	// touches whose DOWN did not fit; the rest of each is dropped, so the
+	// drawing thread never sees half a stroke. Offering thread only
+	private int ignored; // bit per pointer ID
+
+	// TouchQueue constructor; capacity is rounded up to a power of two
+	public TouchQueue(int capacity) {
+		int size = 1;
+
+		while (size < Math.max(capacity, RESERVED * 2))
+			size *= 2;
+
+		mask = size - 1;
+		kinds = new int[size];
+		pointers = new int[size];
+		xs = new float[size];
+		ys = new float[size];
+		pressures = new float[size];
+		times = new long[size];
+	} // end TouchQueue constructor
+
+	// add every sample in event, batched history first, and make them
+	// visible to the draining thread together. Moves that don't fit are
+	// dropped and counted; a lift that doesn't fit is held back and
+	// offered ahead of the next event, and a touch whose DOWN doesn't fit
+	// is dropped whole. Returns the number of samples added. Called on the
+	// offering thread only
+	public int offer(MotionEvent event) {
+		long first = tail;
+		long limit = head + kinds.length; // samples that fit right now
+		long moveLimit = limit - RESERVED; // moves leave room for the rest
+		long end = offerDeferredLifts(first, limit);
+		int action = event.getActionMasked();
+		int actionIndex = event.getActionIndex();
+		int historySize = event.getHistorySize();
+		int lost = 0;
+
+		if (action == MotionEvent.ACTION_DOWN
+				|| action == MotionEvent.ACTION_POINTER_DOWN
+				|| action == MotionEvent.ACTION_UP
+				|| action == MotionEvent.ACTION_POINTER_UP) {
+			// only the pointer that went down or up changed
+			int kind = action == MotionEvent.ACTION_DOWN
+					|| action == MotionEvent.ACTION_POINTER_DOWN ? DOWN : UP;
+
+			end = offerChange(end, limit, kind, event
+					.getPointerId(actionIndex), event.getX(actionIndex), event
+					.getY(actionIndex), event.getPressure(actionIndex), event
+					.getEventTime());
+		} // end if
+		else {
+			// every pointer moved: each one's older samples, then its
+			// current position
+			boolean cancel = action == MotionEvent.ACTION_CANCEL;
+
+			for (int i = 0; i < event.getPointerCount(); i++) {
+				int id = event.getPointerId(i);
+
+				for (int h = 0; h < historySize; h++) {
+					if (end < moveLimit && isTracked(id))
+						put(end++, MOVE, id, event.getHistoricalX(i, h), event
+								.getHistoricalY(i, h), event
+								.getHistoricalPressure(i, h), event
+								.getHistoricalEventTime(h));
+					else
+						++lost;
+				} // end for
+
+				if (cancel)
+					end = offerChange(end, limit, CANCEL, id, event.getX(i),
+							event.getY(i), event.getPressure(i), event
+									.getEventTime());
+				else if (end < moveLimit && isTracked(id))
+					put(end++, MOVE, id, event.getX(i), event.getY(i), event
+							.getPressure(i), event.getEventTime());
+				else
+					++lost;
+			} // end for
+		} // end else
+
+		if (lost > 0)
+			dropped += lost; // only this thread writes dropped
+
+		tail = end; // publish the batch
+
+		int depth = (int) (end - head);
+
+		if (depth > maxDepth)
+			maxDepth = depth;
+
+		return (int) (end - first);
+	} // end method offer
+
+	// store a DOWN, UP or CANCEL sample at end if it fits, or hold back or
+	// drop its touch as offer describes; returns the new end
+	private long offerChange(long end, long limit, int kind, int pointer,
+			float x, float y, float pressure, long time) {
+		if (pointer > MAX_POINTER_ID) {
+			// not tracked; store it if it fits, as a move would be
+			if (end < limit)
+				put(end++, kind, pointer, x, y, pressure, time);
+			else
+				++dropped;
+
+			return end;
+		} // end if
+
+		int bit = 1 << pointer;
+
+		if (kind == DOWN) {
+			ignored &= ~bit; // a new touch
+
+			if (end < limit)
+				put(end++, kind, pointer, x, y, pressure, time);
+			else {
+				ignored |= bit; // drop the touch whole
+				++dropped;
+			} // end else
+		} // end if
+		else if ((ignored & bit) != 0) {
+			ignored &= ~bit; // the dropped touch is over
+			++dropped;
+		} // end else if
+		else if (end < limit)
+			put(end++, kind, pointer, x, y, pressure, time);
+		else {
+			// the stroke must still end; offer the lift later
+			deferredLifts |= bit;
+			liftKinds[pointer] = kind;
+			liftXs[pointer] = x;
+			liftYs[pointer] = y;
+			liftPressures[pointer] = pressure;
+			liftTimes[pointer] = time;
+		} // end else
+
+		return end;
+	} // end method offerChange
+
+	// store as many held-back lifts from end as fit; returns the new end
+	private long offerDeferredLifts(long end, long limit) {
+		while (deferredLifts != 0 && end < limit) {
+			int pointer = Integer.numberOfTrailingZeros(deferredLifts);
+			put(end++, liftKinds[pointer], pointer, liftXs[pointer],
+					liftYs[pointer], liftPressures[pointer],
+					liftTimes[pointer]);
+			deferredLifts &= ~(1 << pointer);
+		} // end while
+
+		return end;
+	} // end method offerDeferredLifts
+
+	// return true unless pointer's touch is being dropped whole
+	private boolean isTracked(int pointer) {
+		return pointer > MAX_POINTER_ID || (ignored & 1 << pointer) == 0;
+	} // end method isTracked
+
+	// store one sample in the slot for sequence number n
+	private void put(long n, int kind, int pointer, float x, float y,
+			float pressure, long time) {
+		int slot = (int) n & mask;
+		kinds[slot] = kind;
+		pointers[slot] = pointer;
+		xs[slot] = x;
+		ys[slot] = y;
+		pressures[slot] = pressure;
+		times[slot] = time;
+	} // end method put
+
+	// return the number of samples ready to drain; the samples stay in
+	// place, readable with the getters, until release. Called on the
+	// draining thread only
+	public int available() {
+		return (int) (tail - head);
+	} // end method available
+
+	// return what the index-th waiting sample records
+	public int getKind(int index) {
+		return kinds[(int) (head + index) & mask];
+	} // end method getKind
+
+	// return the pointer ID of the index-th waiting sample
+	public int getPointer(int index) {
+		return pointers[(int) (head + index) & mask];
+	} // end method getPointer
+
+	// return the x coordinate of the index-th waiting sample
+	public float getX(int index) {
+		return xs[(int) (head + index) & mask];
+	} // end method getX
+
+	// return the y coordinate of the index-th waiting sample
+	public float getY(int index) {
+		return ys[(int) (head + index) & mask];
+	} // end method getY
+
+	// return the pressure of the index-th waiting sample
+	public float getPressure(int index) {
+		return pressures[(int) (head + index) & mask];
+	} // end method getPressure
+
+	// return the time, in uptime milliseconds, of the index-th sample
+	public long getTime(int index) {
+		return times[(int) (head + index) & mask];
+	} // end method getTime
+
+	// hand the first count waiting samples' slots back to the offering
+	// thread
+	public void release(int count) {
+		head += count; // only this thread writes head
+	} // end method release
+
+	// return the number of samples waiting to be drained
+	public int getDepth() {
+		return (int) (tail - head);
+	} // end method getDepth
+
+	// return the most samples that have waited at once
+	public int getMaxDepth() {
+		return maxDepth;
+	} // end method getMaxDepth
+
+	// return the number of samples dropped because the ring was full
+	public long getDroppedCount() {
+		return dropped;
+	} // end method getDroppedCount
+} // end class TouchQueue
@@ -0,0 +1,202 @@
+// TouchResampler.java
+// Turns the touch samples waiting in a TouchQueue into one stroke update
+// per display frame. Moves are held back and each finger's position is
+// interpolated at a fixed time before the frame, so strokes advance evenly
+// however fast the digitizer reports; touches and lifts pass straight
+// through so no stroke starts or ends late.
+package com.groupproject;
+
+public class TouchResampler {
+	// positions are resampled this long before the frame, so there is
+	// nearly always a real sample on both sides to interpolate between
+	public static final long RESAMPLE_LATENCY_MS = 5;
+
+	// samples kept per finger, newest last
+	private static final int HISTORY = 4;
+
+	private static final int MAX_POINTERS = PointerSlots.MAX_POINTERS;
+
+	private final int[] ids = new int[MAX_POINTERS]; // pointer ID per finger
+	private final boolean[] down = new boolean[MAX_POINTERS]; // in use
+	private final boolean[] pending = new boolean[MAX_POINTERS]; // unsent
+	private final int[] counts = new int[MAX_POINTERS]; // samples held
+	private final float[][] xs = new float[MAX_POINTERS][HISTORY];
+	private final float[][] ys = new float[MAX_POINTERS][HISTORY];
+	private final float[][] pressures = new float[MAX_POINTERS][HISTORY];
+	private final long[][] times = new long[MAX_POINTERS][HISTORY];
+	private final long[] sentTimes = new long[MAX_POINTERS]; // last sent
+	private boolean changed; // true if samples arrived since the last frame
+
+	// take every sample waiting in queue; touches, lifts and every sample
+	// of the eraser and lasso are applied to engine now, moves of a drawing
+	// finger are kept for the next frame
+	public void read(TouchQueue queue, DoodleEngine engine) {
+		int count = queue.available();
+		boolean coalesce = engine.getTool() == DrawingSurface.TOOL_DRAW;
+
+		for (int i = 0; i < count; i++) {
+			int kind = queue.getKind(i);
+			int id = queue.getPointer(i);
+			float x = queue.getX(i);
+			float y = queue.getY(i);
+			float pressure = queue.getPressure(i);
+			long time = queue.getTime(i);
+
+			if (kind == TouchQueue.DOWN) {
+				int finger = start(id);
+
+				if (finger >= 0) {
+					addSample(finger, x, y, pressure, time);
+					sentTimes[finger] = times[finger][0]; // sent below
+				} // end if
+
+				engine.addTouch(kind, id, x, y, pressure, time);
+			} // end if
+			else if (kind == TouchQueue.MOVE && coalesce) {
+				int finger = find(id);
+
+				if (finger >= 0) {
+					addSample(finger, x, y, pressure, time);
+					pending[finger] = true;
+				} // end if
+			} // end else if
+			else if (kind == TouchQueue.MOVE)
+				engine.addTouch(kind, id, x, y, pressure, time); // no smoothing
+			else { // UP or CANCEL
+				int finger = find(id);
+
+				// the stroke ends where the finger really left the screen
+				if (finger >= 0 && pending[finger])
+					engine.addTouch(TouchQueue.MOVE, id, x, y, pressure, Math
+							.max(time, sentTimes[finger] + 1));
+
+				if (finger >= 0)
+					down[finger] = false;
+
+				engine.addTouch(kind, id, x, y, pressure, time);
+			} // end else
+		} // end for
+
+		queue.release(count); // the slots can be offered again
+
+		if (count > 0)
+			changed = true;
+	} // end method read
+
+	// send engine one move per finger, resampled for a frame shown at
+	// frameTime uptime milliseconds, and end the batch. Returns true if
+	// there may be more to do next frame
+	public boolean frame(DoodleEngine engine, long frameTime) {
+		long sampleTime = frameTime - RESAMPLE_LATENCY_MS;
+		boolean moved = false; // true once a move has been sent
+		boolean waiting = false; // true if a finger has unsent samples
+
+		for (int finger = 0; finger < MAX_POINTERS; finger++) {
+			if (!down[finger] || !pending[finger])
+				continue;
+
+			int count = counts[finger];
+			long newest = times[finger][count - 1];
+			long time = Math.min(sampleTime, newest);
+
+			if (time > sentTimes[finger]) {
+				engine.addTouch(TouchQueue.MOVE, ids[finger], resample(
+						xs[finger], times[finger], count, time), resample(
+						ys[finger], times[finger], count, time), resample(
+						pressures[finger], times[finger], count, time), time);
+				sentTimes[finger] = time;
+				moved = true;
+			} // end if
+
+			// a sample newer than the frame is sent with a later frame
+			pending[finger] = sentTimes[finger] < newest;
+			waiting |= pending[finger];
+		} // end for
+
+		if (changed || moved)
+			engine.endTouches();
+
+		boolean more = changed || waiting;
+		changed = false;
+		return more;
+	} // end method frame
+
+	// return values (count of them, at increasing stamps) interpolated at
+	// time; times outside the samples get the nearest sample's value
+	private static float resample(float[] values, long[] stamps, int count,
+			long time) {
+		if (time <= stamps[0])
+			return values[0];
+
+		for (int i = 1; i < count; i++) {
+			if (time <= stamps[i]) {
+				float t = (float) (time - stamps[i - 1])
+						/ (stamps[i] - stamps[i - 1]);
+				return values[i - 1] + (values[i] - values[i - 1]) * t;
+			} // end if
+		} // end for
+
+		return values[count - 1];
+	} // end method resample
+
+	// forget every finger, e.g. when the engine changes hands
+	public void reset() {
+		for (int finger = 0; finger < MAX_POINTERS; finger++) {
+			down[finger] = false;
+			pending[finger] = false;
+		} // end for
+
+		changed = false;
+	} // end method reset
+
+	// claim a finger for pointer id and return it, or -1 if all are in use
+	private int start(int id) {
+		int finger = find(id);
+
+		for (int i = 0; finger < 0 && i < MAX_POINTERS; i++)
+			if (!down[i])
+				finger = i;
+
+		if (finger >= 0) {
+			ids[finger] = id;
+			down[finger] = true;
+			pending[finger] = false;
+			counts[finger] = 0;
+		} // end if
+
+		return finger;
+	} // end method start
+
+	// return the finger tracking pointer id, or -1
+	private int find(int id) {
+		for (int finger = 0; finger < MAX_POINTERS; finger++)
+			if (down[finger] && ids[finger] == id)
+				return finger;
+
+		return -1;
+	} // end method find
+
+	// add a sample to a finger's history, dropping the oldest if it's full
+	private void addSample(int finger, float x, float y, float pressure,
+			long time) {
+		int count = counts[finger];
+
+		if (count > 0 && time <= times[finger][count - 1])
+			time = times[finger][count - 1] + 1; // keep times increasing
+
+		if (count == HISTORY) {
+			System.arraycopy(xs[finger], 1, xs[finger], 0, HISTORY - 1);
+			System.arraycopy(ys[finger], 1, ys[finger], 0, HISTORY - 1);
+			System.arraycopy(pressures[finger], 1, pressures[finger], 0,
+					HISTORY - 1);
+			System.arraycopy(times[finger], 1, times[finger], 0, HISTORY - 1);
+			count = HISTORY - 1;
+		} // end if
+
+		xs[finger][count] = x;
+		ys[finger][count] = y;
+		pressures[finger][count] = pressure;
+		times[finger][count] = time;
+		counts[finger] = count + 1;
+	} // end method addSample
+} // end class TouchResampler
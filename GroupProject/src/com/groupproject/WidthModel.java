@@ -0,0 +1,68 @@
+// WidthModel.java
+// Turns one finger's touch samples into line widths: pressing harder
+// widens the line and moving faster thins it, like ink from a nib. Widths
+// are smoothed so one noisy sample doesn't put a bulge in the stroke.
+package com.groupproject;
+
+public class WidthModel {
+	// the chosen width is scaled by this at no pressure and at full pressure
+	public static final float MIN_PRESSURE_SCALE = 0.5f;
+	public static final float MAX_PRESSURE_SCALE = 1.5f;
+
+	// at this speed, in pixels per millisecond, the line is half as wide
+	private static final float HALVING_SPEED = 2;
+
+	// share of each new width taken into the smoothed width
+	private static final float SMOOTHING = 0.4f;
+
+	private static final float MIN_WIDTH = 1; // thinnest line, in pixels
+
+	private float lastX; // the previous sample
+	private float lastY;
+	private long lastTime;
+	private float speed; // smoothed speed, pixels per millisecond
+	private float width; // smoothed width; 0 before the first sample
+
+	// forget the previous stroke
+	public void reset() {
+		width = 0;
+		speed = 0;
+	} // end method reset
+
+	// return the width for a sample at (x, y) with the given pressure, for
+	// a line whose chosen width is baseWidth
+	public float next(float baseWidth, float x, float y, float pressure,
+			long time) {
+		if (width > 0 && time > lastTime) {
+			float dx = x - lastX;
+			float dy = y - lastY;
+			float instant = (float) Math.sqrt(dx * dx + dy * dy)
+					/ (time - lastTime);
+			speed += (instant - speed) * SMOOTHING;
+		} // end if
+
+		lastX = x;
+		lastY = y;
+		lastTime = time;
+
+		// screens without pressure sensing report 1 or another constant;
+		// then only speed changes the width
+		pressure = Math.max(0, Math.min(1, pressure));
+		float target = baseWidth
+				* (MIN_PRESSURE_SCALE + (MAX_PRESSURE_SCALE - MIN_PRESSURE_SCALE)
+						* pressure) / (1 + speed / HALVING_SPEED);
+		target = Math.max(MIN_WIDTH, target);
+
+		if (width == 0)
+			width = target; // the first sample sets the width directly
+		else
+			width += (target - width) * SMOOTHING;
+
+		return width;
+	} // end method next
+
+	// return the widest line next can return for baseWidth
+	public static float getMaxWidth(float baseWidth) {
+		return Math.max(MIN_WIDTH, baseWidth * MAX_PRESSURE_SCALE);
+	} // end method getMaxWidth
+} // end class WidthModel